@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.infiniteautomation.mango.benchmarks.BenchmarkRunner;
+import com.infiniteautomation.mango.benchmarks.MockMango;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataType;
+import com.serotonin.m2m2.db.dao.PointValueDao;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
+import com.serotonin.m2m2.vo.dataSource.mock.MockDataSourceVO;
+
+/**
+ * Measures the point value ingest pipeline on H2, from {@link DataPointRT#updatePointValue(PointValueTime)} through the
+ * logging type evaluation and the point value cache to {@link PointValueDao#savePointValueAsync}. The batch writer
+ * threads flush to the database concurrently with the benchmark threads, each iteration waits for the queue to drain
+ * so that iterations do not pile up on each other.
+ *
+ * <p>Reports throughput and sampled latency (including p99) with the allocation rate from the GC profiler. Thread
+ * counts are run one after another as JMH does not allow {@link org.openjdk.jmh.annotations.Threads} to be a
+ * parameter, set the system property {@code benchmark.ingest.threads} to a comma separated list to change them.</p>
+ */
+public class PointValueIngestBenchmark extends BenchmarkRunner {
+
+    @Test
+    @Override
+    public void runBenchmark() throws RunnerException {
+        for (String threads : System.getProperty("benchmark.ingest.threads", "1,4").split(",")) {
+            Options opts = new OptionsBuilder()
+                    .include(getClass().getName())
+                    .threads(Integer.parseInt(threads.trim()))
+                    .addProfiler(GCProfiler.class)
+                    .build();
+            new Runner(opts).run();
+        }
+    }
+
+    public static class IngestMockMango extends MockMango {
+
+        public List<DataPointRT> createRunningPoints(int count, DataType dataType, int loggingType, int cacheSize) {
+            MockDataSourceVO ds = createMockDataSource(true);
+            List<DataPointRT> runtimes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                DataPointVO dp = createMockDataPoint(ds, vo -> {
+                    vo.setPointLocator(new MockPointLocatorVO(dataType, true));
+                    vo.setLoggingType(loggingType);
+                    vo.setDefaultCacheSize(cacheSize);
+                    vo.setEnabled(true);
+                });
+                DataPointRT rt = Common.runtimeManager.getDataPoint(dp.getId());
+                if (rt == null) {
+                    throw new IllegalStateException("Data point " + dp.getXid() + " is not running");
+                }
+                runtimes.add(rt);
+            }
+            return runtimes;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class IngestParams {
+
+        /**
+         * Number of points, raised to the number of threads if lower so that every thread has its own points
+         */
+        @Param({"1", "100", "1000"})
+        public int points;
+
+        @Param({"ALL", "ON_CHANGE", "NONE"})
+        public String loggingType;
+
+        @Param({"1", "100"})
+        public int cacheSize;
+
+        @Param({"NUMERIC", "BINARY", "MULTISTATE", "ALPHANUMERIC"})
+        public DataType dataType;
+
+        public List<DataPointRT> runtimes;
+        public PointValueDao pointValueDao;
+        /**
+         * Shared so that values are always newer than the point's current value and are never backdates
+         */
+        public final AtomicLong clock = new AtomicLong();
+
+        @Setup(Level.Trial)
+        public void setupTrial(IngestMockMango mango, BenchmarkParams benchmarkParams) {
+            int count = Math.max(points, benchmarkParams.getThreads());
+            this.runtimes = mango.createRunningPoints(count, dataType, DataPointVO.LOGGING_TYPE_CODES.getId(loggingType), cacheSize);
+            this.pointValueDao = Common.getBean(PointValueDao.class);
+            this.clock.set(Common.timer.currentTimeMillis());
+        }
+
+        @TearDown(Level.Iteration)
+        public void drainQueue() throws InterruptedException {
+            long start = System.nanoTime();
+            while (pointValueDao.queueSize() > 0) {
+                Thread.sleep(10);
+            }
+            long duration = System.nanoTime() - start;
+            System.out.printf("Drained point value queue in %d ms.%n", TimeUnit.NANOSECONDS.toMillis(duration));
+        }
+    }
+
+    /**
+     * Each thread updates its own share of the points so that threads do not compete for the same point
+     */
+    @State(Scope.Thread)
+    public static class ThreadPoints {
+        private List<DataPointRT> runtimes;
+        private int next;
+        private int counter;
+
+        @Setup(Level.Trial)
+        public void setup(IngestParams params, ThreadParams threadParams) {
+            int threads = threadParams.getThreadCount();
+            int index = threadParams.getThreadIndex();
+            runtimes = new ArrayList<>();
+            for (int i = index; i < params.runtimes.size(); i += threads) {
+                runtimes.add(params.runtimes.get(i));
+            }
+        }
+
+        private DataPointRT nextPoint() {
+            DataPointRT rt = runtimes.get(next);
+            if (++next == runtimes.size()) {
+                next = 0;
+            }
+            return rt;
+        }
+
+        /**
+         * Each point's value changes on every update so that ON_CHANGE logs them
+         */
+        private PointValueTime nextValue(DataType dataType, long time) {
+            int i = counter++ / runtimes.size();
+            switch (dataType) {
+                case BINARY:
+                    return new PointValueTime((i & 1) == 0, time);
+                case MULTISTATE:
+                    return new PointValueTime(i & 0xf, time);
+                case ALPHANUMERIC:
+                    return new PointValueTime("value " + (i & 0xff), time);
+                case NUMERIC:
+                default:
+                    return new PointValueTime((double) i, time);
+            }
+        }
+    }
+
+    @Benchmark
+    @Fork(1)
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    @Warmup(iterations = 1, time = 10)
+    @Measurement(iterations = 3, time = 10)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void updatePointValue(IngestParams params, ThreadPoints threadPoints) {
+        long time = params.clock.incrementAndGet();
+        threadPoints.nextPoint().updatePointValue(threadPoints.nextValue(params.dataType, time));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataType;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.db.DatabaseProxy;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.dataImage.IAnnotated;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
+import com.serotonin.m2m2.vo.dataSource.mock.MockDataSourceVO;
+
+public class AnnotatedPointValueLoaderTest extends MangoTestBase {
+
+    private AnnotatedPointValueLoader loader;
+    private PointValueDao pointValueDao;
+    private DataPointVO numeric;
+    private DataPointVO alphanumeric;
+
+    @Before
+    public void setupLoader() {
+        loader = new AnnotatedPointValueLoader(Common.getBean(DatabaseProxy.class));
+        pointValueDao = Common.getBean(PointValueDao.class);
+        MockDataSourceVO ds = createMockDataSource();
+        numeric = createMockDataPoint(ds, new MockPointLocatorVO(DataType.NUMERIC, true));
+        alphanumeric = createMockDataPoint(ds, new MockPointLocatorVO(DataType.ALPHANUMERIC, true));
+    }
+
+    @Test
+    public void annotationsAttachToTheirValues() {
+        TranslatableMessage first = new TranslatableMessage("common.default", "first");
+        TranslatableMessage second = new TranslatableMessage("common.default", "second");
+        String longText = "X".repeat(200);
+
+        PointValueBatch batch = new PointValueBatch(10);
+        batch.add(numeric.getSeriesId(), DataType.NUMERIC.getId(), 1, 1000L);
+        batch.add(alphanumeric.getSeriesId(), DataType.ALPHANUMERIC.getId(), 0, 1000L, "short", null);
+        batch.add(numeric.getSeriesId(), DataType.NUMERIC.getId(), 2, 1001L, null, first);
+        batch.add(numeric.getSeriesId(), DataType.NUMERIC.getId(), 3, 1002L);
+        batch.add(alphanumeric.getSeriesId(), DataType.ALPHANUMERIC.getId(), 0, 1001L, longText, second);
+        batch.add(numeric.getSeriesId(), DataType.NUMERIC.getId(), 4, 1003L);
+        assertTrue(batch.hasAnnotations());
+        assertEquals(6, loader.load(batch));
+
+        List<PointValueTime> numericValues = pointValueDao.getPointValuesBetween(numeric, 0, 2000L);
+        assertEquals(4, numericValues.size());
+        for (int i = 0; i < 4; i++) {
+            PointValueTime value = numericValues.get(i);
+            assertEquals(1000L + i, value.getTime());
+            assertEquals(i + 1, value.getDoubleValue(), 0);
+            if (i == 1) {
+                assertTrue(value instanceof IAnnotated);
+                assertEquals(first, ((IAnnotated) value).getSourceMessage());
+            } else {
+                assertFalse(value instanceof IAnnotated);
+            }
+        }
+
+        List<PointValueTime> textValues = pointValueDao.getPointValuesBetween(alphanumeric, 0, 2000L);
+        assertEquals(2, textValues.size());
+        assertEquals(1000L, textValues.get(0).getTime());
+        assertEquals("short", textValues.get(0).getStringValue());
+        assertFalse(textValues.get(0) instanceof IAnnotated);
+
+        assertEquals(1001L, textValues.get(1).getTime());
+        assertEquals(longText, textValues.get(1).getStringValue());
+        assertTrue(textValues.get(1) instanceof IAnnotated);
+        assertEquals(second, ((IAnnotated) textValues.get(1)).getSourceMessage());
+    }
+
+    @Test
+    public void reusedBatchAttachesAnnotationsToNewRows() {
+        TranslatableMessage first = new TranslatableMessage("common.default", "first");
+        TranslatableMessage second = new TranslatableMessage("common.default", "second");
+
+        PointValueBatch batch = new PointValueBatch(10);
+        batch.add(numeric.getSeriesId(), DataType.NUMERIC.getId(), 1, 1000L, null, first);
+        batch.add(numeric.getSeriesId(), DataType.NUMERIC.getId(), 2, 1001L);
+        assertEquals(2, loader.load(batch));
+
+        // the batch is reused by the writers, the annotation must go to the row inserted by this load
+        batch.clear();
+        batch.add(numeric.getSeriesId(), DataType.NUMERIC.getId(), 3, 1002L);
+        batch.add(numeric.getSeriesId(), DataType.NUMERIC.getId(), 4, 1003L, null, second);
+        assertEquals(2, loader.load(batch));
+
+        List<PointValueTime> values = pointValueDao.getPointValuesBetween(numeric, 0, 2000L);
+        assertEquals(4, values.size());
+        assertEquals(first, ((IAnnotated) values.get(0)).getSourceMessage());
+        assertFalse(values.get(1) instanceof IAnnotated);
+        assertFalse(values.get(2) instanceof IAnnotated);
+        assertEquals(4, values.get(3).getDoubleValue(), 0);
+        assertEquals(second, ((IAnnotated) values.get(3)).getSourceMessage());
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class BatchWriteControllerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long PERIOD = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private BatchWriteController controller() {
+        return new BatchWriteController(true, 100, 1000, 5000, 4, 100, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void increasesBatchSizeWhenFullBatchesAreFast() {
+        BatchWriteController controller = controller();
+        controller.onWrite(1000, FAST, 0, 0);
+        assertEquals(1100, controller.getBatchSize());
+
+        // partial batch, nothing waiting
+        controller.onWrite(10, FAST, 0, 1);
+        assertEquals(1100, controller.getBatchSize());
+
+        for (int i = 0; i < 100; i++) {
+            controller.onWrite(controller.getBatchSize(), FAST, 0, i);
+        }
+        assertEquals(5000, controller.getBatchSize());
+    }
+
+    @Test
+    public void addsWritersWhileQueueGrows() {
+        BatchWriteController controller = controller();
+        assertEquals(1, controller.getWriterLimit());
+
+        long now = PERIOD;
+        long queue = 10_000;
+        for (int i = 0; i < 10; i++) {
+            controller.onWrite(10, FAST, queue, now);
+            queue += 10_000;
+            now += PERIOD;
+        }
+        assertEquals(4, controller.getWriterLimit());
+
+        // at most one increase per period
+        BatchWriteController limited = controller();
+        limited.onWrite(10, FAST, 10_000, PERIOD);
+        limited.onWrite(10, FAST, 20_000, PERIOD + 1);
+        assertEquals(2, limited.getWriterLimit());
+    }
+
+    @Test
+    public void halvesWhenSlow() {
+        BatchWriteController controller = controller();
+        controller.onWrite(10, FAST, 10_000, PERIOD);
+        controller.onWrite(10, FAST, 20_000, 2 * PERIOD);
+        assertEquals(3, controller.getWriterLimit());
+
+        controller.onWrite(1000, SLOW, 20_000, 3 * PERIOD);
+        assertEquals(500, controller.getBatchSize());
+        assertEquals(1, controller.getWriterLimit());
+        assertEquals(500, controller.getLastLatencyMillis());
+
+        // slow writes within the same period only count once
+        controller.onWrite(500, SLOW, 20_000, 3 * PERIOD + 1);
+        assertEquals(500, controller.getBatchSize());
+
+        // failures always count
+        controller.onFailure(3 * PERIOD + 2);
+        assertEquals(250, controller.getBatchSize());
+        controller.onFailure(3 * PERIOD + 3);
+        controller.onFailure(3 * PERIOD + 4);
+        assertEquals(100, controller.getBatchSize());
+        assertEquals(1, controller.getWriterLimit());
+    }
+
+    @Test
+    public void fixedWhenNotAdaptive() {
+        BatchWriteController controller = new BatchWriteController(false, 100, 1000, 5000, 4, 100, TimeUnit.MILLISECONDS);
+        // same as before adaptive tuning was added
+        assertEquals(1000, controller.getBatchSize());
+        assertEquals(1000, controller.getMaxBatchSize());
+        assertEquals(4, controller.getWriterLimit());
+        assertEquals(BatchWriteController.FIXED_SPAWN_THRESHOLD, controller.getSpawnThreshold());
+        controller.onWrite(1000, SLOW, 100_000, PERIOD);
+        controller.onFailure(PERIOD);
+        assertEquals(1000, controller.getBatchSize());
+        assertEquals(4, controller.getWriterLimit());
+        assertEquals(BatchWriteController.FIXED_SPAWN_THRESHOLD, controller.getSpawnThreshold());
+    }
+}
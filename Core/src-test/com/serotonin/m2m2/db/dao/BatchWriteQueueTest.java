@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.DataType;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+
+public class BatchWriteQueueTest {
+
+    @Test
+    public void drainsInOrderForSingleProducer() {
+        BatchWriteQueue queue = new BatchWriteQueue(4, 64);
+        for (int i = 0; i < 10; i++) {
+            queue.add(i, DataType.NUMERIC, i * 1.5, 1000L + i);
+        }
+        assertEquals(10, queue.size());
+
+        List<Long> times = new ArrayList<>();
+        int drained = queue.drain((seriesId, dataType, value, time, svalue, sourceMessage) -> {
+            assertEquals(DataType.NUMERIC, dataType);
+            assertEquals(seriesId * 1.5, value, 0);
+            times.add(time);
+        }, 100);
+
+        assertEquals(10, drained);
+        assertTrue(queue.isEmpty());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(1000L + i, (long) times.get(i));
+        }
+    }
+
+    @Test
+    public void drainRespectsMax() {
+        BatchWriteQueue queue = new BatchWriteQueue(1, 16);
+        for (int i = 0; i < 10; i++) {
+            queue.add(i, DataType.BINARY, 1, i);
+        }
+        assertEquals(4, queue.drain((seriesId, dataType, value, time, svalue, sourceMessage) -> {}, 4));
+        assertEquals(6, queue.size());
+        assertEquals(6, queue.drain((seriesId, dataType, value, time, svalue, sourceMessage) -> {}, 100));
+    }
+
+    @Test
+    public void overflowsWhenFull() {
+        BatchWriteQueue queue = new BatchWriteQueue(1, 8);
+        for (int i = 0; i < 20; i++) {
+            queue.add(i, DataType.MULTISTATE, i, i);
+        }
+        assertEquals(20, queue.size());
+        assertEquals(12, queue.overflowCount());
+
+        Set<Integer> seen = new HashSet<>();
+        queue.drain((seriesId, dataType, value, time, svalue, sourceMessage) -> seen.add(seriesId), 100);
+        assertEquals(20, seen.size());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void holdsTextValues() {
+        BatchWriteQueue queue = new BatchWriteQueue(1, 4);
+        queue.add(1, DataType.ALPHANUMERIC, 0, 1, "text", null);
+        queue.add(2, DataType.NUMERIC, 2, 2, null, new TranslatableMessage("common.default", "annotation"));
+        for (int i = 0; i < 4; i++) {
+            queue.add(3, DataType.ALPHANUMERIC, 0, 3, "overflow", null);
+        }
+
+        List<String> svalues = new ArrayList<>();
+        List<TranslatableMessage> messages = new ArrayList<>();
+        queue.drain((seriesId, dataType, value, time, svalue, sourceMessage) -> {
+            svalues.add(svalue);
+            messages.add(sourceMessage);
+        }, 100);
+
+        assertEquals(6, svalues.size());
+        assertEquals("text", svalues.get(0));
+        assertNull(svalues.get(1));
+        assertEquals("annotation", messages.get(1).getArgs()[0]);
+        assertEquals("overflow", svalues.get(5));
+    }
+
+    @Test
+    public void concurrentProducers() throws InterruptedException {
+        int threads = 8;
+        int perThread = 50_000;
+        BatchWriteQueue queue = new BatchWriteQueue(4, 1024);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            int seriesId = t;
+            new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    queue.add(seriesId, DataType.NUMERIC, i, i);
+                }
+                done.countDown();
+            }).start();
+        }
+
+        long[] counts = new long[threads];
+        long[] lastTime = new long[threads];
+        Arrays.fill(lastTime, -1);
+        long total = 0;
+        while (done.getCount() > 0 || !queue.isEmpty()) {
+            total += queue.drain((seriesId, dataType, value, time, svalue, sourceMessage) -> {
+                counts[seriesId]++;
+                lastTime[seriesId] = Math.max(lastTime[seriesId], time);
+            }, 1000);
+        }
+
+        assertEquals((long) threads * perThread, total);
+        for (int t = 0; t < threads; t++) {
+            assertEquals(perThread, counts[t]);
+            assertEquals(perThread - 1, lastTime[t]);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+
+import com.infiniteautomation.mango.spring.service.PermissionService;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.db.DatabaseProxy;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.event.AlarmLevels;
+import com.serotonin.m2m2.rt.event.EventInstance;
+import com.serotonin.m2m2.rt.event.ReturnCause;
+import com.serotonin.m2m2.rt.event.type.SystemEventType;
+
+public class EventBatchWriterTest extends MangoTestBase {
+
+    private ExecutorService callers;
+    /**
+     * Writes events in batches
+     */
+    private EventDao dao;
+    /**
+     * Writes events synchronously, used to check what is in the database
+     */
+    private EventDao syncDao;
+
+    @Before
+    public void setupDao() {
+        properties.setProperty("db.events.batchWrite.queueSize", "10000");
+        callers = Executors.newCachedThreadPool();
+        dao = createDao();
+        syncDao = Common.getBean(EventDao.class);
+    }
+
+    @After
+    public void tearDownDao() {
+        callers.shutdownNow();
+    }
+
+    private EventDao createDao() {
+        return new EventDao(Common.getBean(AuditEventDao.class), Common.getBean(UserCommentDao.class),
+                Common.getBean(PermissionService.class), Common.getBean(DatabaseProxy.class), true);
+    }
+
+    private EventInstance newEvent(String subType) {
+        return new EventInstance(new SystemEventType(subType), timer.currentTimeMillis(), true, AlarmLevels.URGENT,
+                new TranslatableMessage("common.default", subType), null);
+    }
+
+    @Test(timeout = 30000)
+    public void idsAreAssignedByDatabase() throws Exception {
+        List<Future<EventInstance>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            EventInstance event = newEvent("TEST_" + i);
+            results.add(callers.submit(() -> {
+                dao.saveEvent(event);
+                return event;
+            }));
+        }
+
+        Set<Integer> ids = new HashSet<>();
+        for (Future<EventInstance> result : results) {
+            EventInstance event = result.get(10, TimeUnit.SECONDS);
+            assertTrue(event.getId() > 0);
+            assertTrue(ids.add(event.getId()));
+
+            // written before saveEvent returns
+            EventInstance saved = syncDao.get(event.getId());
+            assertNotNull(saved);
+            assertEquals(event.getEventType().getEventSubtype(), saved.getEventType().getEventSubtype());
+        }
+
+        // events inserted without the batch writer do not collide
+        EventInstance other = newEvent("TEST_SYNC");
+        syncDao.saveEvent(other);
+        assertFalse(ids.contains(other.getId()));
+    }
+
+    @Test
+    public void returnToNormalAndAcknowledgeAfterInsert() {
+        EventInstance event = newEvent("TEST");
+        dao.saveEvent(event);
+        int id = event.getId();
+        assertTrue(syncDao.get(id).isActive());
+
+        long rtnTime = timer.currentTimeMillis() + 1000;
+        event.returnToNormal(rtnTime, ReturnCause.RETURN_TO_NORMAL);
+        dao.saveEvent(event);
+        // queued
+        assertTrue(syncDao.get(id).isActive());
+
+        TranslatableMessage ackSource = new TranslatableMessage("common.default", "test");
+        assertTrue(dao.ackEvent(id, rtnTime + 1000, null, ackSource));
+        assertFalse(dao.ackEvent(id, rtnTime + 2000, null, ackSource));
+
+        dao.flush();
+        EventInstance saved = syncDao.get(id);
+        assertFalse(saved.isActive());
+        assertEquals(rtnTime, (long) saved.getRtnTimestamp());
+        assertEquals(ReturnCause.RETURN_TO_NORMAL, saved.getRtnCause());
+        assertTrue(saved.isAcknowledged());
+        assertEquals(rtnTime + 1000, (long) saved.getAcknowledgedTimestamp());
+    }
+
+    @Test
+    public void flushWritesQueuedReturnsToNormal() {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            EventInstance event = newEvent("TEST_" + i);
+            dao.saveEvent(event);
+            ids.add(event.getId());
+        }
+
+        long rtnTime = timer.currentTimeMillis() + 1000;
+        dao.returnEventsToNormal(ids.subList(0, 3), rtnTime, ReturnCause.SOURCE_DISABLED);
+        dao.returnEventsToNormal(ids.subList(3, 5), rtnTime + 1, ReturnCause.RETURN_TO_NORMAL);
+        for (int id : ids) {
+            assertTrue(syncDao.get(id).isActive());
+        }
+
+        // as done by the event manager on shutdown
+        dao.flush();
+        for (int i = 0; i < ids.size(); i++) {
+            EventInstance saved = syncDao.get(ids.get(i));
+            assertFalse(saved.isActive());
+            assertEquals(i < 3 ? ReturnCause.SOURCE_DISABLED : ReturnCause.RETURN_TO_NORMAL, saved.getRtnCause());
+        }
+    }
+
+    @Test
+    public void writesDirectlyWhenQueueIsFull() {
+        properties.setProperty("db.events.batchWrite.queueSize", "1");
+        dao = createDao();
+        EventInstance first = newEvent("TEST_1");
+        EventInstance second = newEvent("TEST_2");
+        dao.saveEvent(first);
+        dao.saveEvent(second);
+
+        long rtnTime = timer.currentTimeMillis() + 1000;
+        dao.returnEventsToNormal(List.of(first.getId()), rtnTime, ReturnCause.RETURN_TO_NORMAL);
+        dao.returnEventsToNormal(List.of(second.getId()), rtnTime, ReturnCause.RETURN_TO_NORMAL);
+        assertTrue(syncDao.get(first.getId()).isActive());
+        assertFalse(syncDao.get(second.getId()).isActive());
+
+        dao.flush();
+        assertFalse(syncDao.get(first.getId()).isActive());
+    }
+
+    @Test
+    public void retriesFailedReturnsToNormalUntilWritten() {
+        AtomicBoolean unavailable = new AtomicBoolean(true);
+        AtomicInteger attempts = new AtomicInteger();
+        dao = new EventDao(Common.getBean(AuditEventDao.class), Common.getBean(UserCommentDao.class),
+                Common.getBean(PermissionService.class), Common.getBean(DatabaseProxy.class), true) {
+            @Override
+            void returnEventsToNormalNow(List<Integer> eventIds, long timestamp, ReturnCause cause) {
+                attempts.incrementAndGet();
+                if (unavailable.get()) {
+                    throw new CannotGetJdbcConnectionException("Database unavailable");
+                }
+                super.returnEventsToNormalNow(eventIds, timestamp, cause);
+            }
+        };
+
+        EventInstance event = newEvent("TEST");
+        dao.saveEvent(event);
+        event.returnToNormal(timer.currentTimeMillis(), ReturnCause.RETURN_TO_NORMAL);
+        dao.saveEvent(event);
+
+        // the first write fails after the flush delay, then retries back off
+        timer.fastForwardTo(timer.currentTimeMillis() + 100);
+        assertEquals(1, attempts.get());
+        long delay = EventBatchWriter.MIN_RETRY_DELAY;
+        for (int i = 0; i < 5; i++) {
+            timer.fastForwardTo(timer.currentTimeMillis() + delay - 1);
+            assertEquals(i + 1, attempts.get());
+            timer.fastForwardTo(timer.currentTimeMillis() + 1);
+            assertEquals(i + 2, attempts.get());
+            delay *= 2;
+        }
+        assertTrue(syncDao.get(event.getId()).isActive());
+
+        // kept until the database is available again
+        unavailable.set(false);
+        timer.fastForwardTo(timer.currentTimeMillis() + delay);
+        assertEquals(7, attempts.get());
+        assertFalse(syncDao.get(event.getId()).isActive());
+
+        // writes are no longer delayed
+        EventInstance other = newEvent("TEST_2");
+        dao.saveEvent(other);
+        other.returnToNormal(timer.currentTimeMillis(), ReturnCause.RETURN_TO_NORMAL);
+        dao.saveEvent(other);
+        timer.fastForwardTo(timer.currentTimeMillis() + 100);
+        assertFalse(syncDao.get(other.getId()).isActive());
+    }
+
+    @Test(timeout = 30000)
+    public void insertFailureIsReportedToCaller() throws Exception {
+        // sub type is too long for the column
+        EventInstance invalid = newEvent("TEST_" + "X".repeat(64));
+        assertThrows(RuntimeException.class, () -> dao.saveEvent(invalid));
+
+        // concurrent inserts are not affected by the failure
+        List<Callable<EventInstance>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            EventInstance event = i == 5 ? newEvent("TEST_" + "X".repeat(64)) : newEvent("TEST_" + i);
+            tasks.add(() -> {
+                dao.saveEvent(event);
+                return event;
+            });
+        }
+        List<Future<EventInstance>> results = callers.invokeAll(tasks);
+        for (int i = 0; i < results.size(); i++) {
+            Future<EventInstance> result = results.get(i);
+            if (i == 5) {
+                assertThrows(Exception.class, () -> result.get(10, TimeUnit.SECONDS));
+            } else {
+                EventInstance event = result.get(10, TimeUnit.SECONDS);
+                assertNotNull(syncDao.get(event.getId()));
+            }
+        }
+
+        EventInstance valid = newEvent("TEST");
+        dao.saveEvent(valid);
+        assertNotNull(syncDao.get(valid.getId()));
+    }
+}
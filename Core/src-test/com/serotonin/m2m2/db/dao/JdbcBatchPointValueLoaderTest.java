@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataType;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.db.DatabaseProxy;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+public class JdbcBatchPointValueLoaderTest extends MangoTestBase {
+
+    @Test
+    public void loadsBatchOnH2() {
+        DataPointVO point = (DataPointVO) createMockDataPoints(1).get(0);
+        PointValueBulkLoader loader = Common.getBean(DatabaseProxy.class).createPointValueBulkLoader();
+        assertTrue(loader instanceof JdbcBatchPointValueLoader);
+
+        PointValueBatch batch = new PointValueBatch(10);
+        for (int i = 0; i < 5; i++) {
+            batch.add(point.getSeriesId(), DataType.NUMERIC.getId(), i * 1.5, 1000L + i);
+        }
+        assertEquals(5, loader.load(batch));
+
+        // the batch is reused by the writers, load it again with different values
+        batch.clear();
+        batch.add(point.getSeriesId(), DataType.NUMERIC.getId(), 100, 2000L);
+        assertEquals(1, loader.load(batch));
+
+        List<PointValueTime> values = Common.getBean(PointValueDao.class).getPointValuesBetween(point, 0, 3000L);
+        assertEquals(6, values.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(1000L + i, values.get(i).getTime());
+            assertEquals(i * 1.5, values.get(i).getDoubleValue(), 0);
+        }
+        assertEquals(2000L, values.get(5).getTime());
+        assertEquals(100, values.get(5).getDoubleValue(), 0);
+    }
+}
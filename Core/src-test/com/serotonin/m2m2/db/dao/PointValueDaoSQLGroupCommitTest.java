@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoublePredicate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.infiniteautomation.mango.monitor.MonitoredValues;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataType;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.db.DatabaseProxy;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+public class PointValueDaoSQLGroupCommitTest extends MangoTestBase {
+
+    private static final Object TRANSACTION_KEY = new Object();
+
+    private ExecutorService callers;
+    private InterceptingDao dao;
+    private DataPointVO point;
+
+    @Before
+    public void setupDao() {
+        properties.setProperty("db.syncWrite.groupCommit", "true");
+        properties.setProperty("db.batchWrite.spill.enabled", "false");
+        callers = Executors.newCachedThreadPool();
+        dao = new InterceptingDao();
+        point = (DataPointVO) createMockDataPoints(1).get(0);
+    }
+
+    @After
+    public void tearDownDao() {
+        dao.close();
+        callers.shutdownNow();
+    }
+
+    @Test(timeout = 30000)
+    public void concurrentSavesShareOneCommit() throws Exception {
+        int waiting = 5;
+        dao.blockOn = v -> v == 0;
+
+        List<CompletableFuture<PointValueTime>> results = new ArrayList<>();
+        results.add(saveAsync(0, 1000));
+        assertTrue(dao.blocked.await(10, TimeUnit.SECONDS));
+
+        // these queue up behind the first save while it holds the group commit lock
+        for (int i = 1; i <= waiting; i++) {
+            results.add(saveAsync(i, 1000 + i));
+        }
+        awaitQueued(waiting);
+        dao.release.countDown();
+
+        for (int i = 0; i <= waiting; i++) {
+            PointValueTime result = results.get(i).get(10, TimeUnit.SECONDS);
+            assertNotNull(result);
+            assertEquals(i, result.getDoubleValue(), 0);
+            assertEquals(1000 + i, result.getTime());
+        }
+
+        // the first value is written on its own, the rest in one transaction
+        assertEquals(List.of(waiting), dao.committedTransactions);
+        assertEquals(waiting + 1, dao.getPointValuesBetween(point, 0, 2000).size());
+    }
+
+    @Test
+    public void writesInCallersTransaction() {
+        dao.doInTransaction(status -> {
+            dao.savePointValueSync(point, new PointValueTime(1.0, 1000));
+            assertEquals(1, dao.inTransaction.get());
+            status.setRollbackOnly();
+        });
+
+        // written as part of the rolled back transaction rather than committed by itself
+        assertTrue(dao.getPointValuesBetween(point, 0, 2000).isEmpty());
+        assertEquals(List.of(), dao.committedTransactions);
+    }
+
+    @Test(timeout = 30000)
+    public void fallsBackToIndividualWritesAfterFailure() throws Exception {
+        dao.blockOn = v -> v == 0;
+        dao.failOn = v -> v == 2;
+
+        CompletableFuture<PointValueTime> first = saveAsync(0, 1000);
+        assertTrue(dao.blocked.await(10, TimeUnit.SECONDS));
+        List<CompletableFuture<PointValueTime>> group = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            group.add(saveAsync(i, 1000 + i));
+        }
+        awaitQueued(3);
+        dao.release.countDown();
+
+        assertNotNull(first.get(10, TimeUnit.SECONDS));
+        assertEquals(1, group.get(0).get(10, TimeUnit.SECONDS).getDoubleValue(), 0);
+        assertEquals(3, group.get(2).get(10, TimeUnit.SECONDS).getDoubleValue(), 0);
+        try {
+            group.get(1).get(10, TimeUnit.SECONDS);
+            fail("Expected the failed value to be reported to its caller");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RuntimeException);
+        }
+
+        // the group transaction was rolled back and the values written individually
+        assertFalse(dao.rolledBackTransactions.isEmpty());
+        List<PointValueTime> saved = dao.getPointValuesBetween(point, 0, 2000);
+        assertEquals(3, saved.size());
+        assertEquals(0, saved.get(0).getDoubleValue(), 0);
+        assertEquals(1, saved.get(1).getDoubleValue(), 0);
+        assertEquals(3, saved.get(2).getDoubleValue(), 0);
+    }
+
+    private CompletableFuture<PointValueTime> saveAsync(double value, long time) {
+        return CompletableFuture.supplyAsync(() -> dao.savePointValueSync(point, new PointValueTime(value, time)), callers);
+    }
+
+    /**
+     * Wait until the callers are waiting for the group commit lock
+     */
+    private void awaitQueued(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (dao.queuedCallers() < count) {
+            assertTrue("Callers did not queue for the group commit lock", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static class InterceptingDao extends PointValueDaoSQL {
+        volatile DoublePredicate blockOn = v -> false;
+        volatile DoublePredicate failOn = v -> false;
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger inTransaction = new AtomicInteger();
+        final List<Integer> committedTransactions = new CopyOnWriteArrayList<>();
+        final List<Integer> rolledBackTransactions = new CopyOnWriteArrayList<>();
+
+        InterceptingDao() {
+            super(Common.getBean(DatabaseProxy.class), new MonitoredValues(), 16_384,
+                    Common.getBean(SystemSettingsDao.class), Common.getBean(DataPointDao.class),
+                    Common.getBean(ScheduledExecutorService.class), Common.getBean(ExecutorService.class));
+        }
+
+        @Override
+        long savePointValueImpl(DataPointVO vo, DataType dataType, double dvalue, long time, String svalue, TranslatableMessage sourceMessage) {
+            if (blockOn.test(dvalue)) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                inTransaction.incrementAndGet();
+                countInTransaction();
+            }
+            if (failOn.test(dvalue)) {
+                throw new IllegalStateException("Insert failed");
+            }
+            return super.savePointValueImpl(vo, dataType, dvalue, time, svalue, sourceMessage);
+        }
+
+        /**
+         * Count the values written in the current transaction, recorded when it completes
+         */
+        private void countInTransaction() {
+            AtomicInteger count = (AtomicInteger) TransactionSynchronizationManager.getResource(TRANSACTION_KEY);
+            if (count == null) {
+                AtomicInteger created = new AtomicInteger();
+                count = created;
+                TransactionSynchronizationManager.bindResource(TRANSACTION_KEY, created);
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        TransactionSynchronizationManager.unbindResource(TRANSACTION_KEY);
+                        if (status == STATUS_COMMITTED) {
+                            committedTransactions.add(created.get());
+                        } else {
+                            rolledBackTransactions.add(created.get());
+                        }
+                    }
+                });
+            }
+            count.incrementAndGet();
+        }
+
+        int queuedCallers() {
+            return getSyncWriteQueueLength();
+        }
+    }
+}
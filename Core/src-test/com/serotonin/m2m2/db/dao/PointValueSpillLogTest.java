@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+
+public class PointValueSpillLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PointValueBatch batch(int size, int seriesId) {
+        PointValueBatch batch = new PointValueBatch(size);
+        for (int i = 0; i < size; i++) {
+            batch.add(seriesId, 3, i * 0.5, 1000L + i);
+        }
+        return batch;
+    }
+
+    @Test
+    public void appendAndReplay() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("spill.log");
+        PointValueSpillLog log = new PointValueSpillLog(path, 4096);
+        log.open();
+        assertTrue(log.isEmpty());
+        assertNull(log.peek());
+
+        assertTrue(log.append(batch(3, 1)));
+        assertTrue(log.append(batch(2, 2)));
+        assertEquals(5, log.getPendingValues());
+
+        PointValueBatch first = log.peek();
+        assertNotNull(first);
+        assertEquals(3, first.size());
+        assertEquals(1, first.getSeriesId(0));
+        assertEquals(1.0, first.getValue(2), 0);
+        assertEquals(1002L, first.getTime(2));
+        log.remove();
+
+        PointValueBatch second = log.peek();
+        assertNotNull(second);
+        assertEquals(2, second.size());
+        assertEquals(2, second.getSeriesId(1));
+        log.remove();
+
+        assertTrue(log.isEmpty());
+        assertEquals(0, log.getPendingValues());
+        assertEquals(0, log.getUsedBytes());
+        log.close();
+    }
+
+    @Test
+    public void textValuesAndAnnotations() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("spill.log");
+        PointValueSpillLog log = new PointValueSpillLog(path, 4096);
+        log.open();
+
+        PointValueBatch batch = new PointValueBatch(3);
+        batch.add(1, 4, 0, 1000L, "caf\u00e9", null);
+        batch.add(2, 3, 1.5, 1001L, null, new TranslatableMessage("common.default", "annotation"));
+        batch.add(3, 3, 2.5, 1002L);
+        assertTrue(log.append(batch));
+        assertTrue(log.append(batch(2, 4)));
+        log.close();
+
+        PointValueSpillLog reopened = new PointValueSpillLog(path, 4096);
+        reopened.open();
+        assertEquals(5, reopened.getPendingValues());
+        PointValueBatch replayed = reopened.peek();
+        assertNotNull(replayed);
+        assertTrue(replayed.hasAnnotations());
+        assertEquals("caf\u00e9", replayed.getStringValue(0));
+        assertNull(replayed.getSourceMessage(0));
+        assertNotNull(replayed.getSourceMessage(1));
+        assertEquals("annotation", replayed.getSourceMessage(1).getArgs()[0]);
+        assertEquals(2.5, replayed.getValue(2), 0);
+        assertFalse(replayed.isAnnotated(2));
+        reopened.remove();
+
+        PointValueBatch second = reopened.peek();
+        assertNotNull(second);
+        assertFalse(second.hasAnnotations());
+        assertEquals(4, second.getSeriesId(1));
+        reopened.close();
+    }
+
+    @Test
+    public void survivesReopen() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("spill.log");
+        PointValueSpillLog log = new PointValueSpillLog(path, 4096);
+        log.open();
+        log.append(batch(4, 7));
+        log.append(batch(1, 8));
+        log.remove();
+        log.close();
+
+        PointValueSpillLog reopened = new PointValueSpillLog(path, 4096);
+        reopened.open();
+        assertFalse(reopened.isEmpty());
+        assertEquals(1, reopened.getPendingValues());
+        PointValueBatch batch = reopened.peek();
+        assertNotNull(batch);
+        assertEquals(8, batch.getSeriesId(0));
+        reopened.close();
+    }
+
+    @Test
+    public void rejectsWhenFull() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("spill.log");
+        int maxSize = PointValueSpillLog.HEADER_LENGTH + 2 * (PointValueSpillLog.RECORD_HEADER_LENGTH + 10 * PointValueSpillLog.ROW_LENGTH);
+        PointValueSpillLog log = new PointValueSpillLog(path, maxSize);
+        log.open();
+        assertTrue(log.append(batch(10, 1)));
+        assertTrue(log.append(batch(10, 2)));
+        assertFalse(log.append(batch(1, 3)));
+        assertEquals(1, log.getDroppedValues());
+
+        // space is reclaimed once the log has been emptied
+        log.remove();
+        log.remove();
+        assertTrue(log.append(batch(10, 4)));
+        log.close();
+    }
+
+    @Test
+    public void wrapsAround() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("spill.log");
+        int record = PointValueSpillLog.RECORD_HEADER_LENGTH + 10 * PointValueSpillLog.ROW_LENGTH;
+        PointValueSpillLog log = new PointValueSpillLog(path, PointValueSpillLog.HEADER_LENGTH + 3 * record + 10);
+        log.open();
+        assertTrue(log.append(batch(10, 1)));
+        assertTrue(log.append(batch(10, 2)));
+        assertTrue(log.append(batch(10, 3)));
+        assertFalse(log.append(batch(10, 4)));
+
+        // space freed at the start of the file is reused before the log is empty
+        log.remove();
+        assertTrue(log.append(batch(9, 4)));
+        assertEquals(29, log.getPendingValues());
+        // includes the unused space at the end of the file
+        assertEquals(3 * record + 10 - PointValueSpillLog.ROW_LENGTH, log.getUsedBytes());
+        assertFalse(log.append(batch(1, 5)));
+        log.close();
+
+        PointValueSpillLog reopened = new PointValueSpillLog(path, PointValueSpillLog.HEADER_LENGTH + 3 * record + 10);
+        reopened.open();
+        assertEquals(29, reopened.getPendingValues());
+        for (int seriesId = 2; seriesId <= 4; seriesId++) {
+            PointValueBatch batch = reopened.peek();
+            assertNotNull(batch);
+            assertEquals(seriesId, batch.getSeriesId(0));
+            assertEquals(seriesId == 4 ? 9 : 10, batch.size());
+            reopened.remove();
+        }
+        assertTrue(reopened.isEmpty());
+        assertNull(reopened.peek());
+        reopened.close();
+    }
+
+    @Test
+    public void keepsValuesWhenResized() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("spill.log");
+        PointValueSpillLog log = new PointValueSpillLog(path, 4096);
+        log.open();
+        log.append(batch(10, 1));
+        log.append(batch(10, 2));
+        log.close();
+
+        // smaller than the values already in the log
+        int smaller = PointValueSpillLog.HEADER_LENGTH + PointValueSpillLog.RECORD_HEADER_LENGTH + 10 * PointValueSpillLog.ROW_LENGTH;
+        PointValueSpillLog resized = new PointValueSpillLog(path, smaller);
+        resized.open();
+        assertEquals(20, resized.getPendingValues());
+        assertEquals(1, resized.peek().getSeriesId(0));
+        resized.remove();
+        assertEquals(2, resized.peek().getSeriesId(0));
+        resized.remove();
+        assertTrue(resized.isEmpty());
+
+        // recreated with the new size once emptied
+        assertTrue(resized.append(batch(10, 3)));
+        assertFalse(resized.append(batch(1, 4)));
+        resized.close();
+        assertEquals(smaller, Files.size(path));
+    }
+
+    @Test
+    public void rejectsAfterClose() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("spill.log");
+        PointValueSpillLog log = new PointValueSpillLog(path, 4096);
+        log.open();
+        assertTrue(log.append(batch(2, 1)));
+        log.close();
+        assertFalse(log.append(batch(2, 2)));
+        assertEquals(2, log.getDroppedValues());
+        assertNull(log.peek());
+
+        PointValueSpillLog reopened = new PointValueSpillLog(path, 4096);
+        reopened.open();
+        assertEquals(2, reopened.getPendingValues());
+        reopened.close();
+    }
+}
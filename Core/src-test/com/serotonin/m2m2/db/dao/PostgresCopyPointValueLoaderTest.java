@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class PostgresCopyPointValueLoaderTest {
+
+    @Test
+    public void encodesBinaryCopyFormat() {
+        PointValueBatch batch = new PointValueBatch(2);
+        batch.add(7, 3, 1.5, 1000L);
+        batch.add(8, 1, 0, 2000L);
+
+        ByteBuffer buffer = PostgresCopyPointValueLoader.encode(batch, null);
+        assertEquals(19 + 2 * 42 + 2, buffer.position());
+        buffer.flip();
+
+        byte[] signature = new byte[11];
+        buffer.get(signature);
+        assertArrayEquals(new byte[] {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0}, signature);
+        assertEquals(0, buffer.getInt());
+        assertEquals(0, buffer.getInt());
+
+        assertEquals(4, buffer.getShort());
+        assertEquals(4, buffer.getInt());
+        assertEquals(7, buffer.getInt());
+        assertEquals(4, buffer.getInt());
+        assertEquals(3, buffer.getInt());
+        assertEquals(8, buffer.getInt());
+        assertEquals(1.5, buffer.getDouble(), 0);
+        assertEquals(8, buffer.getInt());
+        assertEquals(1000L, buffer.getLong());
+
+        // skip second row
+        buffer.position(buffer.position() + 42);
+        assertEquals(-1, buffer.getShort());
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void reusesBufferWhenLargeEnough() {
+        PointValueBatch batch = new PointValueBatch(3);
+        batch.add(7, 3, 1.5, 1000L);
+        batch.add(8, 1, 0, 2000L);
+        ByteBuffer large = PostgresCopyPointValueLoader.encode(batch, null);
+
+        batch.clear();
+        batch.add(9, 3, 2.5, 3000L);
+        ByteBuffer reused = PostgresCopyPointValueLoader.encode(batch, large);
+        assertSame(large, reused);
+        assertEquals(19 + 42 + 2, reused.position());
+
+        batch.add(10, 3, 3.5, 4000L);
+        batch.add(11, 3, 4.5, 5000L);
+        ByteBuffer small = ByteBuffer.allocate(19 + 42 + 2);
+        ByteBuffer grown = PostgresCopyPointValueLoader.encode(batch, small);
+        assertNotSame(small, grown);
+        assertEquals(19 + 3 * 42 + 2, grown.position());
+    }
+}
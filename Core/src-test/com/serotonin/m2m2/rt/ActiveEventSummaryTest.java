@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.infiniteautomation.mango.permission.MangoPermission;
+import com.serotonin.m2m2.rt.event.AlarmLevels;
+import com.serotonin.m2m2.rt.event.EventInstance;
+import com.serotonin.m2m2.rt.event.UserEventLevelSummary;
+import com.serotonin.m2m2.rt.event.type.DataPointEventType;
+import com.serotonin.m2m2.rt.event.type.DuplicateHandling;
+import com.serotonin.m2m2.vo.role.Role;
+
+public class ActiveEventSummaryTest {
+
+    private final MangoPermission permission = MangoPermission.requireAnyRole(new Role(10, "role"));
+    private final MangoPermission other = MangoPermission.superadminOnly();
+
+    private static EventInstance event(int dataPointId, long time, AlarmLevels level, MangoPermission permission) {
+        EventInstance evt = new EventInstance(new DataPointEventType(1, dataPointId, 100, DuplicateHandling.ALLOW),
+                time, true, level, null, null);
+        evt.setReadPermission(permission);
+        return evt;
+    }
+
+    private static UserEventLevelSummary summary(List<UserEventLevelSummary> summaries, AlarmLevels level) {
+        for (UserEventLevelSummary summary : summaries) {
+            if (summary.getAlarmLevel() == level) {
+                return summary;
+            }
+        }
+        throw new AssertionError("No summary for " + level);
+    }
+
+    @Test
+    public void mergesReadablePartitions() {
+        ActiveEventSummary summary = new ActiveEventSummary();
+        EventInstance first = event(1, 10, AlarmLevels.URGENT, permission);
+        EventInstance second = event(1, 30, AlarmLevels.URGENT, other);
+        EventInstance third = event(2, 20, AlarmLevels.URGENT, permission);
+        summary.add(first);
+        summary.add(second);
+        summary.add(third);
+        summary.add(event(2, 5, AlarmLevels.WARNING, permission));
+
+        List<UserEventLevelSummary> all = summary.getLevelSummaries(p -> true);
+        assertEquals(AlarmLevels.values().length - 1, all.size());
+        assertEquals(3, summary(all, AlarmLevels.URGENT).getCount());
+        assertSame(second, summary(all, AlarmLevels.URGENT).getLatest());
+        assertEquals(1, summary(all, AlarmLevels.WARNING).getCount());
+        assertEquals(0, summary(all, AlarmLevels.CRITICAL).getCount());
+
+        List<UserEventLevelSummary> readable = summary.getLevelSummaries(permission::equals);
+        assertEquals(2, summary(readable, AlarmLevels.URGENT).getCount());
+        assertSame(third, summary(readable, AlarmLevels.URGENT).getLatest());
+
+        assertEquals(Map.of(AlarmLevels.URGENT, 2), summary.getDataPointCounts(1, p -> true));
+        assertEquals(Map.of(AlarmLevels.URGENT, 1), summary.getDataPointCounts(1, permission::equals));
+        assertEquals(Map.of(AlarmLevels.URGENT, 1, AlarmLevels.WARNING, 1), summary.getDataPointCounts(2, p -> true));
+        assertEquals(Map.of(), summary.getDataPointCounts(3, p -> true));
+    }
+
+    @Test
+    public void updatesOnRemove() {
+        ActiveEventSummary summary = new ActiveEventSummary();
+        EventInstance first = event(1, 10, AlarmLevels.CRITICAL, permission);
+        EventInstance second = event(2, 20, AlarmLevels.CRITICAL, permission);
+        EventInstance warning = event(2, 5, AlarmLevels.WARNING, permission);
+        summary.add(first);
+        summary.add(second);
+        summary.add(warning);
+        assertEquals(AlarmLevels.CRITICAL.value(), summary.getHighestAlarmLevel());
+
+        summary.remove(second);
+        UserEventLevelSummary critical = summary(summary.getLevelSummaries(p -> true), AlarmLevels.CRITICAL);
+        assertEquals(1, critical.getCount());
+        assertSame(first, critical.getLatest());
+        assertEquals(Map.of(AlarmLevels.WARNING, 1), summary.getDataPointCounts(2, p -> true));
+
+        summary.remove(first);
+        // removing twice has no effect
+        summary.remove(first);
+        critical = summary(summary.getLevelSummaries(p -> true), AlarmLevels.CRITICAL);
+        assertEquals(0, critical.getCount());
+        assertNull(critical.getLatest());
+        assertEquals(AlarmLevels.WARNING.value(), summary.getHighestAlarmLevel());
+
+        summary.clear();
+        assertEquals(0, summary.getHighestAlarmLevel());
+        assertEquals(0, summary(summary.getLevelSummaries(p -> true), AlarmLevels.WARNING).getCount());
+    }
+}
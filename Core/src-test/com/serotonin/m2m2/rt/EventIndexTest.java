@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.rt.event.AlarmLevels;
+import com.serotonin.m2m2.rt.event.EventInstance;
+import com.serotonin.m2m2.rt.event.type.DataPointEventType;
+import com.serotonin.m2m2.rt.event.type.DataSourceEventType;
+import com.serotonin.m2m2.rt.event.type.DuplicateHandling;
+import com.serotonin.m2m2.rt.event.type.EventType;
+
+public class EventIndexTest {
+
+    private static EventInstance event(EventType type, long time, int id) {
+        EventInstance evt = new EventInstance(type, time, true, AlarmLevels.URGENT, null, null);
+        evt.setId(id);
+        return evt;
+    }
+
+    @Test
+    public void findsEventsByType() {
+        EventIndex index = new EventIndex(false);
+        EventInstance first = event(new DataPointEventType(1, 10, 100, DuplicateHandling.ALLOW), 0, 1);
+        EventInstance second = event(new DataPointEventType(1, 10, 100, DuplicateHandling.ALLOW), 1, 2);
+        EventInstance other = event(new DataPointEventType(1, 10, 101, DuplicateHandling.ALLOW), 2, 3);
+        index.add(first);
+        index.add(second);
+        index.add(other);
+
+        EventType type = new DataPointEventType(1, 10, 100, DuplicateHandling.ALLOW);
+        assertSame(first, index.get(type));
+        assertEquals(List.of(first, second), index.getAll(type));
+        assertSame(other, index.getById(3));
+
+        assertSame(first, index.remove(type));
+        assertSame(second, index.remove(type));
+        assertNull(index.remove(type));
+        assertNull(index.getById(1));
+        assertEquals(List.of(other), List.copyOf(index.values()));
+    }
+
+    @Test
+    public void removesEventsBySource() {
+        EventIndex index = new EventIndex(false);
+        EventInstance point1 = event(new DataPointEventType(1, 10, 100, DuplicateHandling.ALLOW), 0, 1);
+        EventInstance point2 = event(new DataPointEventType(1, 11, 101, DuplicateHandling.ALLOW), 0, 2);
+        EventInstance point3 = event(new DataPointEventType(2, 12, 102, DuplicateHandling.ALLOW), 0, 3);
+        EventInstance dataSource = event(new DataSourceEventType(1, 1), 0, 4);
+        index.add(point1);
+        index.add(point2);
+        index.add(point3);
+        index.add(dataSource);
+
+        assertEquals(List.of(point1), index.removeForDataPoint(10));
+        assertTrue(index.removeForDataPoint(10).isEmpty());
+        assertEquals(List.of(point2, dataSource), index.removeForDataSource(1));
+        assertEquals(List.of(point3), index.removeForDataPoints(Set.of(12, 13)));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void removesExpiredEvents() {
+        EventIndex index = new EventIndex(true);
+        EventInstance late = event(new DataSourceEventType(1, 1), 30, 1);
+        EventInstance early = event(new DataSourceEventType(1, 2), 10, 2);
+        EventInstance cancelled = event(new DataSourceEventType(2, 1), 20, 3);
+        index.add(late);
+        index.add(early);
+        index.add(cancelled);
+        index.removeForDataSource(2);
+
+        index.removeExpired(25);
+        assertEquals(List.of(late), List.copyOf(index.values()));
+        index.removeExpired(31);
+        assertEquals(0, index.size());
+    }
+}
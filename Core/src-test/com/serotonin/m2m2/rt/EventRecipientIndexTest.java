@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.infiniteautomation.mango.permission.MangoPermission;
+import com.infiniteautomation.mango.spring.service.PermissionService;
+import com.infiniteautomation.mango.spring.service.RoleService;
+import com.infiniteautomation.mango.spring.service.SystemPermissionService;
+import com.infiniteautomation.mango.spring.service.UsersService;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.MockMangoLifecycle;
+import com.serotonin.m2m2.MockRuntimeManager;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.module.ModuleRegistry;
+import com.serotonin.m2m2.module.PermissionDefinition;
+import com.serotonin.m2m2.module.definitions.permissions.EventsSuperadminViewPermissionDefinition;
+import com.serotonin.m2m2.rt.event.AlarmLevels;
+import com.serotonin.m2m2.rt.event.EventInstance;
+import com.serotonin.m2m2.rt.event.UserEventListener;
+import com.serotonin.m2m2.rt.event.type.DataPointEventType;
+import com.serotonin.m2m2.rt.event.type.EventType;
+import com.serotonin.m2m2.rt.event.type.SystemEventType;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.User;
+import com.serotonin.m2m2.vo.permission.PermissionHolder;
+import com.serotonin.m2m2.vo.role.Role;
+import com.serotonin.m2m2.vo.role.RoleVO;
+
+public class EventRecipientIndexTest extends MangoTestBase {
+
+    private PermissionService permissionService;
+    private UsersService usersService;
+    private final List<UserEventListener> listeners = new ArrayList<>();
+
+    @Override
+    protected MockMangoLifecycle getLifecycle() {
+        MockMangoLifecycle lifecycle = super.getLifecycle();
+        lifecycle.setRuntimeManager(new MockRuntimeManager(true));
+        lifecycle.setEventManager(new EventManagerImpl());
+        return lifecycle;
+    }
+
+    @Before
+    public void setupServices() {
+        permissionService = Common.getBean(PermissionService.class);
+        usersService = Common.getBean(UsersService.class);
+    }
+
+    @After
+    public void removeListeners() {
+        for (UserEventListener listener : listeners) {
+            Common.eventManager.removeUserEventListener(listener);
+        }
+        listeners.clear();
+    }
+
+    @Test
+    public void recipientsMatchFullScan() {
+        Role r1 = createRole("r1", "r1").getRole();
+        Role r2 = createRole("r2", "r2").getRole();
+        createUser("u1", "u1", "password", "u1@test.com", r1);
+        createUser("u2", "u2", "password", "u2@test.com", r2);
+        createUser("u3", "u3", "password", "u3@test.com", r1, r2);
+        createUser("u4", "u4", "password", "u4@test.com");
+        createUser("admin2", "admin2", "password", "admin2@test.com", PermissionHolder.SUPERADMIN_ROLE);
+        User disabled = createUser("disabled", "disabled", "password", "disabled@test.com", r1);
+        disabled.setDisabled(true);
+        usersService.update(disabled.getUsername(), disabled);
+
+        List<EventType> types = new ArrayList<>();
+        types.add(pointEventType(MangoPermission.requireAnyRole(r1)));
+        types.add(pointEventType(MangoPermission.requireAnyRole(r1, r2)));
+        types.add(pointEventType(MangoPermission.requireAllRoles(r1, r2)));
+        types.add(pointEventType(new MangoPermission()));
+        types.add(new SystemEventType(SystemEventType.TYPE_SYSTEM_STARTUP));
+
+        EventRecipientIndex index = new EventRecipientIndex(() -> usersService.getEnabledUsers());
+        for (EventType type : types) {
+            // the full scan that the index replaced
+            Set<Integer> expected = usersService.getEnabledUsers().stream()
+                    .filter(user -> type.hasPermission(user, permissionService))
+                    .map(User::getId)
+                    .collect(Collectors.toSet());
+            assertEquals(type.toString(), expected, ids(index.getRecipients(type, permissionService)));
+            // and again from the cached permission
+            assertEquals(type.toString(), expected, ids(index.getRecipients(type, permissionService)));
+        }
+        assertFalse(ids(index.getRecipients(types.get(0), permissionService)).contains(disabled.getId()));
+    }
+
+    @Test
+    public void loadsUsersOnceUntilInvalidated() {
+        Role r1 = createRole("r1", "r1").getRole();
+        User u1 = createUser("u1", "u1", "password", "u1@test.com", r1);
+        EventType type = pointEventType(MangoPermission.requireAnyRole(r1));
+
+        AtomicInteger loads = new AtomicInteger();
+        EventRecipientIndex index = new EventRecipientIndex(() -> {
+            loads.incrementAndGet();
+            return usersService.getEnabledUsers();
+        });
+        assertEquals(Set.of(u1.getId()), ids(index.getRecipients(type, permissionService)));
+        index.getRecipients(type, permissionService);
+        index.getRecipients(new SystemEventType(SystemEventType.TYPE_SYSTEM_STARTUP), permissionService);
+        assertEquals(1, loads.get());
+
+        User u2 = createUser("u2", "u2", "password", "u2@test.com", r1);
+        assertEquals(Set.of(u1.getId()), ids(index.getRecipients(type, permissionService)));
+        index.invalidate();
+        assertEquals(Set.of(u1.getId(), u2.getId()), ids(index.getRecipients(type, permissionService)));
+        assertEquals(2, loads.get());
+    }
+
+    @Test(timeout = 30000)
+    public void userChangeUpdatesRecipients() throws InterruptedException {
+        Role r1 = createRole("r1", "r1").getRole();
+        User user = createUser("u1", "u1", "password", "u1@test.com");
+        EventType type = pointEventType(MangoPermission.requireAnyRole(r1));
+        Recipients recipients = listen(user);
+        assertFalse(recipients.notified(type));
+
+        user.setRoles(Set.of(r1));
+        usersService.update(user.getUsername(), user);
+        assertTrue(recipients.notified(type));
+
+        user.setDisabled(true);
+        usersService.update(user.getUsername(), user);
+        assertFalse(recipients.notified(type));
+    }
+
+    @Test(timeout = 30000)
+    public void roleChangeUpdatesRecipients() throws InterruptedException {
+        RoleVO r1 = createRole("r1", "r1");
+        User user = createUser("u1", "u1", "password", "u1@test.com", r1.getRole());
+        DataPointVO point = (DataPointVO) createMockDataPoints(1, false,
+                MangoPermission.requireAnyRole(r1.getRole()), new MangoPermission()).get(0);
+        Recipients recipients = listen(user);
+        assertTrue(recipients.notified(new DataPointEventType(point.getId(), 0)));
+
+        Common.getBean(RoleService.class).delete(r1.getId());
+        assertFalse(recipients.notified(new DataPointEventType(point.getId(), 0)));
+    }
+
+    @Test(timeout = 30000)
+    public void systemPermissionChangeUpdatesRecipients() throws InterruptedException {
+        Role r1 = createRole("r1", "r1").getRole();
+        User user = createUser("u1", "u1", "password", "u1@test.com", r1);
+        EventType type = new SystemEventType(SystemEventType.TYPE_SYSTEM_STARTUP);
+        Recipients recipients = listen(user);
+        assertFalse(recipients.notified(type));
+
+        PermissionDefinition def = ModuleRegistry.getPermissionDefinition(EventsSuperadminViewPermissionDefinition.PERMISSION);
+        MangoPermission existing = def.getPermission();
+        SystemPermissionService systemPermissionService = Common.getBean(SystemPermissionService.class);
+        systemPermissionService.update(MangoPermission.requireAnyRole(r1), def);
+        try {
+            assertTrue(recipients.notified(type));
+        } finally {
+            systemPermissionService.update(existing, def);
+        }
+        assertFalse(recipients.notified(type));
+    }
+
+    private EventType pointEventType(MangoPermission readPermission) {
+        DataPointVO point = (DataPointVO) createMockDataPoints(1, false, readPermission, new MangoPermission()).get(0);
+        return new DataPointEventType(point.getId(), 0);
+    }
+
+    private Set<Integer> ids(List<User> users) {
+        return users.stream().map(User::getId).collect(Collectors.toSet());
+    }
+
+    /**
+     * Listens for events raised to a user, and to an administrator who is notified of every event
+     */
+    private Recipients listen(User user) {
+        User admin = createUser("admin_" + user.getUsername(), "admin_" + user.getUsername(), "password",
+                "admin_" + user.getEmail(), PermissionHolder.SUPERADMIN_ROLE);
+        Recipients recipients = new Recipients(new RecordingListener(user.getId()), new RecordingListener(admin.getId()));
+        // the multicaster calls listeners in the order they were added, so the user hears of an event first
+        for (UserEventListener listener : List.of(recipients.user, recipients.admin)) {
+            Common.eventManager.addUserEventListener(listener);
+            listeners.add(listener);
+        }
+        return recipients;
+    }
+
+    private class Recipients {
+        private final RecordingListener user;
+        private final RecordingListener admin;
+
+        private Recipients(RecordingListener user, RecordingListener admin) {
+            this.user = user;
+            this.admin = admin;
+        }
+
+        /**
+         * Raise an event and wait until the listeners have been notified of it
+         *
+         * @return true if the user was notified
+         */
+        private boolean notified(EventType type) throws InterruptedException {
+            TranslatableMessage message = new TranslatableMessage("common.default", UUID.randomUUID().toString());
+            Common.eventManager.raiseEvent(type, timer.currentTimeMillis(), false, AlarmLevels.URGENT, message,
+                    Collections.emptyMap());
+
+            EventInstance event;
+            do {
+                event = admin.raised.poll(10, TimeUnit.SECONDS);
+                assertNotNull("Administrator was not notified", event);
+            } while (!message.equals(event.getMessage()));
+
+            boolean notified = false;
+            EventInstance userEvent;
+            while ((userEvent = user.raised.poll()) != null) {
+                notified |= message.equals(userEvent.getMessage());
+            }
+            return notified;
+        }
+    }
+
+    private static class RecordingListener implements UserEventListener {
+        private final int userId;
+        private final BlockingQueue<EventInstance> raised = new LinkedBlockingQueue<>();
+
+        private RecordingListener(int userId) {
+            this.userId = userId;
+        }
+
+        @Override
+        public int getUserId() {
+            return userId;
+        }
+
+        @Override
+        public void raised(EventInstance evt) {
+            raised.add(evt);
+        }
+
+        @Override
+        public void returnToNormal(EventInstance evt) {
+        }
+
+        @Override
+        public void deactivated(EventInstance evt) {
+        }
+
+        @Override
+        public void acknowledged(EventInstance evt) {
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.rt.event.type.DataPointEventType;
+import com.serotonin.m2m2.rt.event.type.DataSourceEventType;
+import com.serotonin.m2m2.rt.event.type.DuplicateHandling;
+
+public class EventStormControlTest {
+
+    @Test
+    public void limitsEachSource() {
+        EventStormControl control = new EventStormControl(1000, 1000, 1, 3);
+        // data point events share the bucket of their data source
+        assertTrue(control.tryAcquire(new DataSourceEventType(1, 1), 0));
+        assertTrue(control.tryAcquire(new DataPointEventType(1, 10, 100, DuplicateHandling.ALLOW), 0));
+        assertTrue(control.tryAcquire(new DataPointEventType(1, 11, 100, DuplicateHandling.ALLOW), 0));
+        assertFalse(control.tryAcquire(new DataPointEventType(1, 12, 100, DuplicateHandling.ALLOW), 0));
+        assertFalse(control.tryAcquire(new DataSourceEventType(1, 2), 0));
+
+        // other sources are not affected
+        assertTrue(control.tryAcquire(new DataSourceEventType(2, 1), 0));
+
+        // refills at the source rate
+        assertFalse(control.tryAcquire(new DataSourceEventType(1, 1), 999));
+        assertTrue(control.tryAcquire(new DataSourceEventType(1, 1), 1999));
+        assertFalse(control.tryAcquire(new DataSourceEventType(1, 1), 1999));
+        assertEquals(4, control.getSuppressedCount());
+    }
+
+    @Test
+    public void limitsEachType() {
+        EventStormControl control = new EventStormControl(1, 2, 1000, 1000);
+        assertTrue(control.tryAcquire(new DataSourceEventType(1, 1), 0));
+        assertTrue(control.tryAcquire(new DataSourceEventType(2, 1), 0));
+        assertFalse(control.tryAcquire(new DataSourceEventType(3, 1), 0));
+        assertTrue(control.tryAcquire(new DataPointEventType(1, 10, 100, DuplicateHandling.ALLOW), 0));
+        assertEquals(1, control.getSuppressedCount("DATA_SOURCE"));
+        assertEquals(0, control.getSuppressedCount("DATA_POINT"));
+    }
+
+    @Test
+    public void summarizesSuppressedEvents() {
+        EventStormControl control = new EventStormControl(1000, 1000, 1, 1);
+        for (int ds = 1; ds <= 3; ds++) {
+            for (int i = 0; i < 5; i++) {
+                control.tryAcquire(new DataPointEventType(ds, i, 100, DuplicateHandling.ALLOW), 0);
+            }
+        }
+
+        List<EventStormControl.Suppressed> suppressed = control.drainSuppressed(0);
+        assertEquals(1, suppressed.size());
+        assertEquals("DATA_POINT", suppressed.get(0).getTypeName());
+        assertEquals(12, suppressed.get(0).getCount());
+        assertEquals(3, suppressed.get(0).getSources());
+        assertTrue(control.drainSuppressed(0).isEmpty());
+        assertEquals(12, control.getSuppressedCount());
+    }
+}
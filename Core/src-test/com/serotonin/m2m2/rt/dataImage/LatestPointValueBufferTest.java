@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.rt.dataImage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LatestPointValueBufferTest {
+
+    private static List<Long> times(List<PointValueTime> values) {
+        List<Long> times = new ArrayList<>(values.size());
+        for (PointValueTime value : values) {
+            times.add(value.getTime());
+        }
+        return times;
+    }
+
+    @Test
+    public void appendsAndDiscardsOldest() {
+        LatestPointValueBuffer buffer = new LatestPointValueBuffer(3);
+        for (long i = 1; i <= 10; i++) {
+            assertTrue(buffer.add(new PointValueTime(i, i)));
+        }
+        assertEquals(3, buffer.size());
+        assertEquals(List.of(10L, 9L, 8L), times(buffer.snapshot()));
+    }
+
+    @Test
+    public void insertsBackdatedValues() {
+        LatestPointValueBuffer buffer = new LatestPointValueBuffer(4);
+        buffer.add(new PointValueTime(1, 10));
+        buffer.add(new PointValueTime(2, 30));
+        buffer.add(new PointValueTime(3, 20));
+        assertEquals(List.of(30L, 20L, 10L), times(buffer.snapshot()));
+
+        buffer.add(new PointValueTime(4, 40));
+        buffer.add(new PointValueTime(5, 25));
+        assertEquals(List.of(40L, 30L, 25L, 20L), times(buffer.snapshot()));
+
+        // older than everything in a full buffer
+        assertFalse(buffer.add(new PointValueTime(6, 5)));
+        assertEquals(List.of(40L, 30L, 25L, 20L), times(buffer.snapshot()));
+    }
+
+    @Test
+    public void sameTimeIsTreatedAsLatest() {
+        LatestPointValueBuffer buffer = new LatestPointValueBuffer(3);
+        buffer.add(new PointValueTime(1, 10));
+        buffer.add(new PointValueTime(2, 20));
+        buffer.add(new PointValueTime(3, 10));
+        List<PointValueTime> snapshot = buffer.snapshot();
+        assertEquals(List.of(20L, 10L, 10L), times(snapshot));
+        assertEquals(3, snapshot.get(1).getDoubleValue(), 0);
+    }
+
+    @Test
+    public void snapshotsAreNotModified() {
+        LatestPointValueBuffer buffer = new LatestPointValueBuffer(2);
+        buffer.add(new PointValueTime(1, 1));
+        buffer.add(new PointValueTime(2, 2));
+        List<PointValueTime> first = buffer.snapshot();
+
+        for (long i = 3; i <= 10; i++) {
+            buffer.add(new PointValueTime(i, i));
+        }
+        buffer.add(new PointValueTime(0, 9));
+
+        assertEquals(List.of(2L, 1L), times(first));
+        assertEquals(List.of(10L, 9L), times(buffer.snapshot()));
+    }
+
+    @Test
+    public void resetUsesLatestValues() {
+        LatestPointValueBuffer buffer = new LatestPointValueBuffer(2);
+        buffer.reset(List.of(new PointValueTime(3, 3), new PointValueTime(2, 2), new PointValueTime(1, 1)));
+        assertEquals(List.of(3L, 2L), times(buffer.snapshot()));
+        buffer.reset(List.of());
+        assertTrue(buffer.snapshot().isEmpty());
+    }
+
+    @Test
+    public void tracksCoveredRange() {
+        LatestPointValueBuffer buffer = new LatestPointValueBuffer(3);
+        assertEquals(Long.MAX_VALUE, buffer.snapshot().getCoveredFrom());
+
+        // older values with the same time as the oldest value may have been discarded
+        buffer.reset(List.of(new PointValueTime(2, 20), new PointValueTime(1, 10)));
+        assertEquals(11, buffer.snapshot().getCoveredFrom());
+        buffer.add(new PointValueTime(3, 30));
+        assertEquals(11, buffer.snapshot().getCoveredFrom());
+
+        // discarding the oldest value
+        buffer.add(new PointValueTime(4, 40));
+        assertEquals(11, buffer.snapshot().getCoveredFrom());
+        buffer.add(new PointValueTime(5, 50));
+        assertEquals(21, buffer.snapshot().getCoveredFrom());
+
+        // backdated value discards the oldest value
+        buffer.add(new PointValueTime(6, 35));
+        assertEquals(31, buffer.snapshot().getCoveredFrom());
+
+        // rejected value
+        assertFalse(buffer.add(new PointValueTime(7, 33)));
+        assertEquals(34, buffer.snapshot().getCoveredFrom());
+
+        // truncated list
+        buffer.reset(List.of(new PointValueTime(3, 3), new PointValueTime(2, 2), new PointValueTime(1, 1), new PointValueTime(0, 0)));
+        assertEquals(2, buffer.snapshot().getCoveredFrom());
+        buffer.reset(List.of());
+        assertEquals(Long.MAX_VALUE, buffer.snapshot().getCoveredFrom());
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.rt.dataImage;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.rt.maint.work.WorkItem;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+public class LatestValueNotifierTest {
+
+    private static class RecordingListener implements DataPointListener {
+        private final List<PointValueTime> updated = new ArrayList<>();
+        private final List<PointValueTime[]> changed = new ArrayList<>();
+        private final List<PointValueTime> logged = new ArrayList<>();
+
+        @Override
+        public String getListenerName() {
+            return "test";
+        }
+
+        @Override
+        public void pointInitialized() {
+        }
+
+        @Override
+        public void pointUpdated(PointValueTime newValue) {
+            updated.add(newValue);
+        }
+
+        @Override
+        public void pointChanged(PointValueTime oldValue, PointValueTime newValue) {
+            changed.add(new PointValueTime[] {oldValue, newValue});
+        }
+
+        @Override
+        public void pointSet(PointValueTime oldValue, PointValueTime newValue) {
+        }
+
+        @Override
+        public void pointBackdated(PointValueTime value) {
+        }
+
+        @Override
+        public void pointTerminated(DataPointVO vo) {
+        }
+
+        @Override
+        public void pointLogged(PointValueTime value) {
+            logged.add(value);
+        }
+
+        @Override
+        public boolean latestValueOnly() {
+            return true;
+        }
+    }
+
+    @Test
+    public void deliversLatestValue() {
+        List<WorkItem> queued = new ArrayList<>();
+        LatestValueNotifier notifier = new LatestValueNotifier("DP_1", queued::add);
+        RecordingListener listener = new RecordingListener();
+        PointValueTime v0 = new PointValueTime(0.0, 0);
+        PointValueTime v1 = new PointValueTime(1.0, 1);
+        PointValueTime v2 = new PointValueTime(2.0, 2);
+        PointValueTime v3 = new PointValueTime(3.0, 3);
+
+        long elided = LatestValueNotifier.getElidedCount();
+        notifier.update(listener, v0, v1, false);
+        notifier.update(listener, v1, v2, false);
+        notifier.update(listener, v2, v3, false);
+        assertEquals(1, queued.size());
+        assertEquals(2, LatestValueNotifier.getElidedCount() - elided);
+
+        queued.get(0).execute();
+        assertEquals(List.of(v3), listener.updated);
+        assertEquals(1, listener.changed.size());
+        assertEquals(v0, listener.changed.get(0)[0]);
+        assertEquals(v3, listener.changed.get(0)[1]);
+        assertEquals(0, listener.logged.size());
+
+        // once delivered the next update is queued again
+        notifier.update(listener, v3, v1, true);
+        assertEquals(2, queued.size());
+        queued.get(1).execute();
+        assertEquals(List.of(v3, v1), listener.updated);
+        assertEquals(List.of(v1), listener.logged);
+    }
+
+    @Test
+    public void flushStartsNewUpdate() {
+        List<WorkItem> queued = new ArrayList<>();
+        LatestValueNotifier notifier = new LatestValueNotifier("DP_1", queued::add);
+        RecordingListener listener = new RecordingListener();
+        PointValueTime v0 = new PointValueTime(0.0, 0);
+        PointValueTime v1 = new PointValueTime(1.0, 1);
+        PointValueTime v2 = new PointValueTime(2.0, 2);
+
+        notifier.update(listener, v0, v1, false);
+        notifier.flush();
+        notifier.update(listener, v1, v2, false);
+        assertEquals(2, queued.size());
+        queued.forEach(WorkItem::execute);
+        assertEquals(List.of(v1, v2), listener.updated);
+    }
+
+    @Test
+    public void unloggedUpdateDoesNotReplaceLogged() {
+        List<WorkItem> queued = new ArrayList<>();
+        LatestValueNotifier notifier = new LatestValueNotifier("DP_1", queued::add);
+        RecordingListener listener = new RecordingListener();
+        PointValueTime v0 = new PointValueTime(0.0, 0);
+        PointValueTime v1 = new PointValueTime(1.0, 1);
+        PointValueTime v2 = new PointValueTime(2.0, 2);
+        PointValueTime v3 = new PointValueTime(3.0, 3);
+        PointValueTime v4 = new PointValueTime(4.0, 4);
+
+        notifier.update(listener, v0, v1, false);
+        // a logged update replaces an unlogged one
+        notifier.update(listener, v1, v2, true);
+        notifier.update(listener, v2, v3, false);
+        // merged with the unlogged update
+        notifier.update(listener, v3, v4, false);
+        assertEquals(2, queued.size());
+
+        queued.forEach(WorkItem::execute);
+        assertEquals(List.of(v2, v4), listener.updated);
+        assertEquals(List.of(v2), listener.logged);
+        assertEquals(v2, listener.changed.get(1)[0]);
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.rt.dataSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PollingDataSourcePhaseTest {
+
+    @Test
+    public void offsetIsDeterministicAndBounded() {
+        for (int i = 0; i < 1000; i++) {
+            String xid = "DS_" + i;
+            long offset = PollingDataSource.pollPhaseOffset(xid, 1000, 5000);
+            assertTrue(offset >= 0 && offset < 1000);
+            assertEquals(offset, PollingDataSource.pollPhaseOffset(xid, 1000, 5000));
+            // never a full period
+            assertTrue(PollingDataSource.pollPhaseOffset(xid, 10000, 500) < 500);
+        }
+    }
+
+    @Test
+    public void disabledWithoutWindow() {
+        assertEquals(0, PollingDataSource.pollPhaseOffset("DS_1", 0, 5000));
+    }
+
+    @Test
+    public void spreadsSequentialXids() {
+        int buckets = 10;
+        int[] counts = new int[buckets];
+        for (int i = 0; i < 1000; i++) {
+            counts[(int) (PollingDataSource.pollPhaseOffset("DS_" + i, 1000, 1000) / 100)]++;
+        }
+        for (int count : counts) {
+            assertTrue("uneven spread " + count, count > 50 && count < 150);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.rt.event.detectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TimeWindowBufferTest {
+
+    @Test
+    public void growsAcrossWrap() {
+        TimeWindowBuffer buffer = new TimeWindowBuffer(4);
+        for (int i = 0; i < 3; i++) {
+            buffer.add(i, i * 10);
+        }
+        assertEquals(2, buffer.expireBefore(2));
+        // wraps around the end of the arrays, then grows
+        for (int i = 3; i < 10; i++) {
+            buffer.add(i, i * 10);
+        }
+        assertEquals(8, buffer.size());
+        for (int i = 0; i < buffer.size(); i++) {
+            assertEquals(i + 2, buffer.getTime(i));
+            assertEquals((i + 2) * 10, buffer.getValue(i), 0);
+        }
+        assertEquals(9, buffer.getLatestTime());
+        assertEquals(90, buffer.getLatestValue(), 0);
+
+        buffer.removeOldest();
+        assertArrayEquals(new long[] {3, 4, 5, 6, 7, 8, 9}, buffer.getTimes());
+        assertArrayEquals(new double[] {30, 40, 50, 60, 70, 80, 90}, buffer.getValues(), 0);
+    }
+
+    @Test
+    public void expiresToValueAt() {
+        TimeWindowBuffer buffer = new TimeWindowBuffer(2);
+        assertFalse(buffer.expireToValueAt(0));
+        buffer.add(100, 1);
+        buffer.add(200, 2);
+        buffer.add(300, 3);
+
+        assertFalse(buffer.expireToValueAt(50));
+        assertEquals(3, buffer.size());
+
+        assertTrue(buffer.expireToValueAt(250));
+        assertEquals(200, buffer.getTime(0));
+        assertEquals(2, buffer.getValue(0), 0);
+
+        // the latest value is kept even when it is older than the time
+        assertTrue(buffer.expireToValueAt(1000));
+        assertEquals(1, buffer.size());
+        assertEquals(300, buffer.getTime(0));
+
+        buffer.clear();
+        assertTrue(buffer.isEmpty());
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.rt.maint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.rt.maint.work.WorkItem;
+import com.serotonin.timer.RejectedTaskReason;
+
+public class DataPointListenerDispatcherTest {
+
+    private static WorkItem item(Runnable runnable) {
+        return new WorkItem() {
+            @Override
+            public void execute() {
+                runnable.run();
+            }
+
+            @Override
+            public int getPriority() {
+                return WorkItem.PRIORITY_MEDIUM;
+            }
+
+            @Override
+            public String getDescription() {
+                return "test";
+            }
+
+            @Override
+            public String getTaskId() {
+                return null;
+            }
+
+            @Override
+            public int getQueueSize() {
+                return 0;
+            }
+
+            @Override
+            public void rejected(RejectedTaskReason reason) {
+            }
+        };
+    }
+
+    @Test
+    public void preservesOrderPerKey() throws InterruptedException {
+        int keys = 10;
+        int count = 1000;
+        DataPointListenerDispatcher dispatcher = new DataPointListenerDispatcher(3, 100, 4, Thread::new);
+        Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+        List<Thread> producers = new ArrayList<>();
+        for (int k = 0; k < keys; k++) {
+            String key = "DP_" + k;
+            received.put(key, Collections.synchronizedList(new ArrayList<>()));
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < count; i++) {
+                    int value = i;
+                    assertTrue(dispatcher.dispatch(key, item(() -> received.get(key).add(value))));
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        dispatcher.terminate();
+        assertTrue(dispatcher.joinTermination(10, TimeUnit.SECONDS));
+
+        for (List<Integer> values : received.values()) {
+            assertEquals(count, values.size());
+            for (int i = 0; i < count; i++) {
+                assertEquals(i, (int) values.get(i));
+            }
+        }
+        for (int i = 0; i < dispatcher.getShardCount(); i++) {
+            assertEquals(0, dispatcher.getQueueSize(i));
+        }
+    }
+
+    @Test
+    public void shardThreadsCanDispatch() throws InterruptedException {
+        DataPointListenerDispatcher dispatcher = new DataPointListenerDispatcher(1, 1, 1, Thread::new);
+        CountDownLatch done = new CountDownLatch(1);
+        // a listener dispatching to its own shard beyond the high water mark must not wait on itself
+        dispatcher.dispatch("DP_1", item(() -> {
+            for (int i = 0; i < 10; i++) {
+                dispatcher.dispatch("DP_2", item(() -> {}));
+            }
+            dispatcher.dispatch("DP_2", item(done::countDown));
+        }));
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        dispatcher.terminate();
+        assertFalse(dispatcher.dispatch("DP_1", item(() -> {})));
+        assertTrue(dispatcher.joinTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void queuesBeyondHighWaterMark() throws InterruptedException {
+        DataPointListenerDispatcher dispatcher = new DataPointListenerDispatcher(1, 2, 1, Thread::new);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        assertTrue(dispatcher.dispatch("DP_1", item(() -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        })));
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+        // the caller is never made to wait for the shard and no notification is dropped
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 10; i++) {
+            int value = i;
+            assertTrue(dispatcher.dispatch("DP_1", item(() -> received.add(value))));
+        }
+        assertEquals(10, dispatcher.getQueueSize(0));
+        // reported once until the shard catches up
+        assertEquals(1, dispatcher.getHighWaterCount());
+
+        release.countDown();
+        dispatcher.terminate();
+        assertTrue(dispatcher.isTerminated());
+        assertTrue(dispatcher.joinTermination(10, TimeUnit.SECONDS));
+        assertEquals(0, dispatcher.getQueueSize(0));
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), received);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.serotonin.util.queue.ByteQueue;
+
+public class MessageControlPipelineTest {
+
+    private RecordingTransport transport;
+    private MessageControl control;
+
+    @Before
+    public void setup() throws IOException {
+        transport = new RecordingTransport();
+        control = new MessageControl();
+        control.start(transport, new ResponseParser(), null, new IdKeyFactory());
+        control.setTimeout(5000);
+        control.setRetries(0);
+    }
+
+    @Test
+    public void sendsUpToTheWindow() throws Exception {
+        control.setPipelineWindow(3);
+        CompletableFuture<IncomingResponseMessage> r1 = control.sendAsync(new Request(1));
+        CompletableFuture<IncomingResponseMessage> r2 = control.sendAsync(new Request(2));
+        CompletableFuture<IncomingResponseMessage> r3 = control.sendAsync(new Request(3));
+        CompletableFuture<IncomingResponseMessage> r4 = control.sendAsync(new Request(4));
+        assertEquals(3, transport.writes.size());
+
+        // out of order responses
+        respond(2, 20);
+        assertEquals(20, ((Response) r2.get(1, TimeUnit.SECONDS)).value);
+        assertFalse(r1.isDone());
+        assertEquals(4, transport.writes.size());
+        assertEquals(4, transport.writes.get(3)[0]);
+
+        respond(4, 40);
+        respond(1, 10);
+        respond(3, 30);
+        assertEquals(10, ((Response) r1.get(1, TimeUnit.SECONDS)).value);
+        assertEquals(30, ((Response) r3.get(1, TimeUnit.SECONDS)).value);
+        assertEquals(40, ((Response) r4.get(1, TimeUnit.SECONDS)).value);
+        assertEquals(4, transport.writes.size());
+    }
+
+    @Test
+    public void holdsBackDuplicateKeys() throws Exception {
+        control.setPipelineWindow(4);
+        CompletableFuture<IncomingResponseMessage> first = control.sendAsync(new Request(1));
+        CompletableFuture<IncomingResponseMessage> second = control.sendAsync(new Request(1));
+        control.sendAsync(new Request(2));
+        assertEquals(2, transport.writes.size());
+        assertEquals(2, transport.writes.get(1)[0]);
+
+        respond(1, 10);
+        assertEquals(10, ((Response) first.get(1, TimeUnit.SECONDS)).value);
+        assertFalse(second.isDone());
+        assertEquals(3, transport.writes.size());
+
+        respond(1, 11);
+        assertEquals(11, ((Response) second.get(1, TimeUnit.SECONDS)).value);
+    }
+
+    @Test
+    public void retriesThenTimesOut() throws Exception {
+        CompletableFuture<IncomingResponseMessage> result = control.sendAsync(new Request(1), 20, 2);
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            fail("Expected a timeout");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertEquals(3, transport.writes.size());
+
+        // the window is free again
+        CompletableFuture<IncomingResponseMessage> next = control.sendAsync(new Request(2));
+        respond(2, 20);
+        assertEquals(20, ((Response) next.get(1, TimeUnit.SECONDS)).value);
+    }
+
+    @Test
+    public void requestWithoutResponse() throws Exception {
+        Request request = new Request(1);
+        request.expectsResponse = false;
+        assertNull(control.sendAsync(request).get(1, TimeUnit.SECONDS));
+        assertEquals(1, transport.writes.size());
+    }
+
+    @Test
+    public void closeFailsPendingRequests() throws Exception {
+        CompletableFuture<IncomingResponseMessage> sent = control.sendAsync(new Request(1));
+        CompletableFuture<IncomingResponseMessage> queued = control.sendAsync(new Request(2));
+        control.close();
+        assertTrue(sent.isCompletedExceptionally());
+        assertTrue(queued.isCompletedExceptionally());
+        assertEquals(1, transport.writes.size());
+    }
+
+    private void respond(int id, int value) {
+        control.data(new byte[] {(byte) id, (byte) value}, 2);
+    }
+
+    private static class RecordingTransport implements Transport {
+        final List<byte[]> writes = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void setConsumer(DataConsumer consumer) {
+        }
+
+        @Override
+        public void removeConsumer() {
+        }
+
+        @Override
+        public void write(byte[] data) {
+            writes.add(data);
+        }
+
+        @Override
+        public void write(byte[] data, int len) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class Request implements OutgoingRequestMessage {
+        final int id;
+        boolean expectsResponse = true;
+
+        Request(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public byte[] getMessageData() {
+            return new byte[] {(byte) id};
+        }
+
+        @Override
+        public boolean expectsResponse() {
+            return expectsResponse;
+        }
+    }
+
+    private static class Response implements IncomingResponseMessage {
+        final int id;
+        final int value;
+
+        Response(int id, int value) {
+            this.id = id;
+            this.value = value;
+        }
+    }
+
+    private static class ResponseParser implements MessageParser {
+        @Override
+        public IncomingMessage parseMessage(ByteQueue queue) {
+            if (queue.size() < 2)
+                return null;
+            return new Response(queue.pop(), queue.pop());
+        }
+    }
+
+    private static class IdKeyFactory implements WaitingRoomKeyFactory {
+        @Override
+        public WaitingRoomKey createWaitingRoomKey(OutgoingRequestMessage request) {
+            return new IdKey(((Request) request).id);
+        }
+
+        @Override
+        public WaitingRoomKey createWaitingRoomKey(IncomingResponseMessage response) {
+            return new IdKey(((Response) response).id);
+        }
+    }
+
+    private static class IdKey implements WaitingRoomKey {
+        final int id;
+
+        IdKey(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof IdKey && ((IdKey) obj).id == id;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.messaging;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SelectorTransportTest {
+
+    private ServerSocket server;
+    private SelectorEventLoopGroup group;
+    private final List<Socket> accepted = new ArrayList<>();
+
+    @Before
+    public void setup() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        group = new SelectorEventLoopGroup("selector-test", 2);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        group.close();
+        for (Socket socket : accepted) {
+            socket.close();
+        }
+        server.close();
+    }
+
+    @Test(timeout = 10000)
+    public void multiplexesConnections() throws Exception {
+        int connections = 5;
+        List<SelectorTransport> transports = new ArrayList<>();
+        List<Collector> collectors = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            SelectorTransport transport = group.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort()), 1000);
+            accepted.add(server.accept());
+            Collector collector = new Collector();
+            transport.setConsumer(collector);
+            transports.add(transport);
+            collectors.add(collector);
+        }
+
+        // server to client
+        for (int i = 0; i < connections; i++) {
+            OutputStream out = accepted.get(i).getOutputStream();
+            out.write(new byte[] {(byte) i, 1, 2});
+            out.flush();
+        }
+        for (int i = 0; i < connections; i++) {
+            assertArrayEquals(new byte[] {(byte) i, 1, 2}, collectors.get(i).read(3));
+        }
+
+        // client to server
+        for (int i = 0; i < connections; i++) {
+            transports.get(i).write(new byte[] {9, (byte) i});
+        }
+        for (int i = 0; i < connections; i++) {
+            InputStream in = accepted.get(i).getInputStream();
+            assertEquals(9, in.read());
+            assertEquals(i, in.read());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void queuesWritesTheSocketCannotTake() throws Exception {
+        SelectorTransport transport = group.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort()), 1000);
+        Socket socket = server.accept();
+        accepted.add(socket);
+        transport.setConsumer(new Collector());
+
+        // larger than the socket buffers so that some of it has to wait for the server to read
+        byte[] data = new byte[8 * 1024 * 1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        transport.write(data);
+        transport.write(new byte[] {42});
+
+        InputStream in = socket.getInputStream();
+        byte[] received = new byte[data.length + 1];
+        int offset = 0;
+        while (offset < received.length) {
+            int count = in.read(received, offset, received.length - offset);
+            if (count < 0) {
+                break;
+            }
+            offset += count;
+        }
+        assertEquals(received.length, offset);
+        assertEquals(42, received[data.length]);
+        for (int i = 0; i < data.length; i++) {
+            if (received[i] != data[i]) {
+                assertEquals("byte " + i, data[i], received[i]);
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void reportsClosedStream() throws Exception {
+        SelectorTransport transport = group.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort()), 1000);
+        Socket socket = server.accept();
+        Collector collector = new Collector();
+        transport.setConsumer(collector);
+        socket.close();
+
+        IOException e = collector.exceptions.poll(5, TimeUnit.SECONDS);
+        assertEquals("Stream closed.", e.getMessage());
+    }
+
+    private static class Collector implements DataConsumer {
+        private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        private final BlockingQueue<IOException> exceptions = new LinkedBlockingQueue<>();
+
+        @Override
+        public synchronized void data(byte[] b, int len) {
+            received.write(b, 0, len);
+            notifyAll();
+        }
+
+        @Override
+        public void handleIOException(IOException e) {
+            exceptions.add(e);
+        }
+
+        synchronized byte[] read(int count) throws InterruptedException {
+            while (received.size() < count) {
+                wait();
+            }
+            return received.toByteArray();
+        }
+    }
+}
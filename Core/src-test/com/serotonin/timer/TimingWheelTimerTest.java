@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.timer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.serotonin.m2m2.MockMangoProperties;
+import com.serotonin.provider.Providers;
+import com.serotonin.util.properties.MangoProperties;
+
+public class TimingWheelTimerTest {
+
+    private static final long START = 1_000_000_000L;
+
+    private final AtomicLong time = new AtomicLong(START);
+    private final Map<String, Long> executed = new ConcurrentHashMap<>();
+    private ExecutorService executor;
+    private TimingWheelTimer timer;
+
+    @BeforeClass
+    public static void staticSetup() {
+        //Setup Mango properties Provider as we indirectly access Common
+        Providers.add(MangoProperties.class, new MockMangoProperties());
+    }
+
+    @Before
+    public void setup() {
+        executor = Executors.newSingleThreadExecutor();
+        timer = new TimingWheelTimer();
+        timer.setTimeSource(time::get);
+        timer.init(executor);
+    }
+
+    @After
+    public void tearDown() {
+        timer.cancel();
+        executor.shutdownNow();
+    }
+
+    @Test(timeout = 30000)
+    public void runsTasksInOrderAtTheirTime() throws InterruptedException {
+        // spread over every level of the wheel and the overflow bucket
+        long[] delays = {5, 30, 700, 45_000, 3_000_000, 200_000_000, 2_000_000_000};
+        for (long delay : delays) {
+            timer.schedule(task("task" + delay, new OneTimeTrigger(delay)));
+        }
+        assertEquals(delays.length, timer.size());
+        assertEquals(delays.length, timer.getTasks().size());
+
+        for (int i = 0; i < delays.length; i++) {
+            setTime(START + delays[i] - 1);
+            // give the wheel time to run anything that is wrongly due
+            Thread.sleep(30);
+            assertFalse("task" + delays[i] + " ran early", executed.containsKey("task" + delays[i]));
+
+            // runs on the first tick at or after its execution time
+            setTime(START + delays[i] + timer.getTickMillis() - 1);
+            awaitExecuted("task" + delays[i]);
+            assertEquals(i + 1, executed.size());
+            assertEquals(START + delays[i], (long) executed.get("task" + delays[i]));
+        }
+        awaitSize(0);
+    }
+
+    @Test(timeout = 30000)
+    public void cancelledTasksAreRemoved() throws InterruptedException {
+        TimerTask cancelled = timer.schedule(task("cancelled", new OneTimeTrigger(60_000)));
+        timer.schedule(task("kept", new OneTimeTrigger(60_000)));
+        assertEquals(2, timer.size());
+
+        assertTrue(cancelled.cancel());
+        // removed before its execution time
+        awaitSize(1);
+        assertEquals(1, timer.getTasks().size());
+        assertEquals("kept", timer.getTasks().get(0).getName());
+
+        setTime(START + 60_000);
+        awaitExecuted("kept");
+        assertFalse(executed.containsKey("cancelled"));
+        assertEquals(0, timer.purge());
+    }
+
+    @Test(timeout = 30000)
+    public void repeatsFixedRateTasks() throws InterruptedException {
+        AtomicInteger count = new AtomicInteger();
+        TimerTask task = timer.schedule(new TimerTask(new FixedRateTrigger(100, 1000), "repeating") {
+            @Override
+            public void run(long runtime) {
+                count.incrementAndGet();
+            }
+        });
+        for (int i = 1; i <= 5; i++) {
+            setTime(START + 100 + (i - 1) * 1000);
+            while (count.get() < i) {
+                Thread.sleep(5);
+            }
+        }
+        assertEquals(1, timer.size());
+        task.cancel();
+        awaitSize(0);
+    }
+
+    @Test(timeout = 30000)
+    public void reschedulesWhenTheClockGoesBack() throws InterruptedException {
+        timer.schedule(task("task", new OneTimeTrigger(5000)));
+        setTime(START - 3_600_000);
+        Thread.sleep(30);
+        setTime(START + 4999);
+        Thread.sleep(30);
+        assertFalse(executed.containsKey("task"));
+        setTime(START + 5000);
+        awaitExecuted("task");
+    }
+
+    @Test
+    public void cancelReturnsScheduledTasks() {
+        timer.schedule(task("a", new OneTimeTrigger(1000)));
+        timer.schedule(task("b", new OneTimeTrigger(100_000)));
+        List<TimerTask> tasks = timer.cancel();
+        assertEquals(2, tasks.size());
+        assertEquals(0, timer.size());
+    }
+
+    private void setTime(long millis) {
+        time.set(millis);
+    }
+
+    private void awaitExecuted(String name) throws InterruptedException {
+        while (!executed.containsKey(name)) {
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+    }
+
+    private void awaitSize(int size) throws InterruptedException {
+        while (timer.size() != size) {
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+    }
+
+    private TimerTask task(String name, TimerTrigger trigger) {
+        return new TimerTask(trigger, name) {
+            @Override
+            public void run(long runtime) {
+                executed.put(name, runtime);
+            }
+        };
+    }
+}
@@ -74,6 +74,7 @@ import com.serotonin.m2m2.rt.EventManager;
 import com.serotonin.m2m2.rt.EventManagerImpl;
 import com.serotonin.m2m2.rt.RuntimeManager;
 import com.serotonin.m2m2.rt.RuntimeManagerImpl;
+import com.serotonin.m2m2.rt.dataImage.DataPointRTPointValueCache;
 import com.serotonin.m2m2.vo.permission.PermissionHolder;
 import com.serotonin.m2m2.vo.systemSettings.SystemSettingsEventDispatcher;
 import com.serotonin.m2m2.web.mvc.spring.MangoRootWebContextConfiguration;
@@ -379,9 +380,10 @@ public class MangoRuntimeContextConfiguration implements ApplicationContextAware
     }
 
     @Bean
-    public PointValueCache latestPointValueDao(List<PointValueCacheDefinition> definitions) {
+    public PointValueCache latestPointValueDao(List<PointValueCacheDefinition> definitions, MonitoredValues monitoredValues) {
         PointValueCacheDefinition highestPriority = definitions.stream().findFirst().orElseThrow();
         highestPriority.initialize();
+        DataPointRTPointValueCache.registerMonitors(monitoredValues);
         return highestPriority.getPointValueCache();
     }
 
@@ -38,6 +38,7 @@ import com.serotonin.m2m2.ServerStatus;
 import com.serotonin.m2m2.db.DatabaseProxy;
 import com.serotonin.m2m2.db.dao.PointValueDao;
 import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.dataImage.LatestValueNotifier;
 import com.serotonin.m2m2.web.mvc.spring.security.MangoSessionRegistry;
 
 /**
@@ -112,6 +113,10 @@ public class ServerMonitoringService extends PollingService {
      * Write speed (point values per second) from {@link PointValueDao#writeSpeed()}. Legacy ID.
      */
     public static final String BATCH_WRITE_SPEED_MONITOR_ID = "com.serotonin.m2m2.db.dao.PointValueDao$BatchWriteBehind.BATCH_WRITE_SPEED_MONITOR";
+    /**
+     * Number of data point updates replaced before being delivered from {@link LatestValueNotifier#getElidedCount()}
+     */
+    public static final String DATA_POINT_LISTENER_ELIDED_MONITOR_ID = "com.serotonin.m2m2.rt.dataImage.LatestValueNotifier.ELIDED";
 
     private final ValueMonitor<Integer> threads;
     private final ValueMonitor<Integer> idleThreads;
@@ -251,6 +256,10 @@ public class ServerMonitoringService extends PollingService {
                 .name(new TranslatableMessage("internal.monitor.BATCH_WRITE_SPEED_MONITOR"))
                 .supplier(pointValueDao::writeSpeed)
                 .buildReadThrough();
+        mv.<Long>create(DATA_POINT_LISTENER_ELIDED_MONITOR_ID)
+                .name(new TranslatableMessage("internal.monitor.DATA_POINT_LISTENER_ELIDED"))
+                .supplier(LatestValueNotifier::getElidedCount)
+                .buildReadThrough();
     }
 
     @PostConstruct
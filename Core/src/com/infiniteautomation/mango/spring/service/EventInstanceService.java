@@ -41,7 +41,6 @@ import com.serotonin.m2m2.rt.event.AlarmLevels;
 import com.serotonin.m2m2.rt.event.DataPointEventLevelSummary;
 import com.serotonin.m2m2.rt.event.EventInstance;
 import com.serotonin.m2m2.rt.event.UserEventLevelSummary;
-import com.serotonin.m2m2.rt.event.type.EventType;
 import com.serotonin.m2m2.vo.User;
 import com.serotonin.m2m2.vo.event.EventInstanceVO;
 import com.serotonin.m2m2.vo.permission.PermissionException;
@@ -102,21 +101,7 @@ public class EventInstanceService extends AbstractVOService<EventInstanceVO, Eve
     public List<UserEventLevelSummary> getActiveSummary() throws PermissionException {
         PermissionHolder user = Common.getUser();
         this.permissionService.ensurePermission(user, eventsViewPermission.getPermission());
-
-        Map<AlarmLevels, UserEventLevelSummary> summaries = new EnumMap<>(AlarmLevels.class);
-        for (AlarmLevels level : AlarmLevels.values()) {
-            if(level == AlarmLevels.IGNORE) {
-                continue;
-            }
-            summaries.put(level, new UserEventLevelSummary(level));
-        }
-
-        for (EventInstance event : this.getAllActiveUserEvents()) {
-            UserEventLevelSummary summary = summaries.get(event.getAlarmLevel());
-            summary.increment(event);
-        }
-
-        return new ArrayList<>(summaries.values());
+        return Common.eventManager.getActiveSummary(user);
     }
 
     /**
@@ -125,13 +110,14 @@ public class EventInstanceService extends AbstractVOService<EventInstanceVO, Eve
         PermissionHolder user = Common.getUser();
         this.permissionService.ensurePermission(user, eventsViewPermission.getPermission());
 
+        Map<AlarmLevels, Integer> counts = dao.countUnacknowledgedAlarms(user);
         Map<AlarmLevels, UserEventLevelSummary> summaries = new EnumMap<>(AlarmLevels.class);
         for (AlarmLevels level : AlarmLevels.values()) {
             if(level == AlarmLevels.IGNORE) {
                 continue;
             }
-            int count = dao.countUnacknowledgedAlarms(level, user);
-            EventInstanceVO latest = dao.getLatestUnacknowledgedAlarm(level, user);
+            int count = counts.getOrDefault(level, 0);
+            EventInstanceVO latest = count > 0 ? dao.getLatestUnacknowledgedAlarm(level, user) : null;
             summaries.put(level, new UserEventLevelSummary(level, count, latest));
         }
 
@@ -149,16 +135,9 @@ public class EventInstanceService extends AbstractVOService<EventInstanceVO, Eve
         for(String xid : dataPointXids) {
             Integer point = dataPointDao.getIdByXid(xid);
             if(point != null) {
-                map.put(point, new DataPointEventLevelSummary(xid));
-            }
-        }
-
-        for(EventInstance event : this.getAllActiveUserEvents()) {
-            if(EventType.EventTypeNames.DATA_POINT.equals(event.getEventType().getEventType())) {
-                DataPointEventLevelSummary model = map.get(event.getEventType().getReferenceId1());
-                if(model != null) {
-                    model.update(event);
-                }
+                DataPointEventLevelSummary summary = new DataPointEventLevelSummary(xid);
+                summary.getCounts().putAll(Common.eventManager.getDataPointEventCounts(user, point));
+                map.put(point, summary);
             }
         }
         return map.values();
@@ -244,14 +244,21 @@ public class PermissionService implements CachingService {
      */
     public boolean hasDataSourceReadPermission(PermissionHolder user, int dataSourceId) {
         if (!isValidPermissionHolder(user)) return false;
+        return hasPermission(user, getDataSourceReadPermission(dataSourceId));
+    }
 
+    /**
+     * Get the read permission for a data source
+     * @param dataSourceId
+     * @return the read permission, superadmin only if the data source has none (e.g. it does not exist)
+     */
+    public MangoPermission getDataSourceReadPermission(int dataSourceId) {
         //TODO Mango 4.0 after removing the getInstance() method we can use @Lazy to inject this dao
         Integer permissionId = DataSourceDao.getInstance().getReadPermissionId(dataSourceId);
         if(permissionId == null) {
-            return hasAdminRole(user);
+            return MangoPermission.superadminOnly();
         }else {
-            MangoPermission permission = permissionCache.computeIfAbsent(permissionId, this::loadPermission);
-            return hasPermission(user, permission);
+            return permissionCache.computeIfAbsent(permissionId, this::loadPermission);
         }
     }
 
@@ -20,6 +20,7 @@ import java.text.MessageFormat;
 import java.text.ParseException;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.ZoneId;
 import java.time.format.DateTimeParseException;
 import java.time.temporal.TemporalAmount;
 import java.util.ArrayList;
@@ -104,6 +105,7 @@ import com.serotonin.provider.Providers;
 import com.serotonin.timer.AbstractTimer;
 import com.serotonin.timer.CronTimerTrigger;
 import com.serotonin.timer.OrderedRealTimeTimer;
+import com.serotonin.timer.TimingWheelTimer;
 import com.serotonin.util.properties.MangoProperties;
 
 import freemarker.cache.FileTemplateLoader;
@@ -161,7 +163,9 @@ public class Common {
     private static volatile Locale LOCALE = Locale.getDefault();
     private static final Object TRANSLATIONS_LOCK = new Object();
 
-    public static AbstractTimer timer = new OrderedRealTimeTimer();
+    public static AbstractTimer timer = envProps.getBoolean("runtime.realTimeTimer.timingWheel", false) ?
+            new TimingWheelTimer(ZoneId.systemDefault(), envProps.getLong("runtime.realTimeTimer.timingWheel.tickMillis", TimingWheelTimer.DEFAULT_TICK_MILLIS)) :
+            new OrderedRealTimeTimer();
     public static final MonitoredValues MONITORED_VALUES = new MonitoredValues();
     public static final JsonContext JSON_CONTEXT = new JsonContext();
 
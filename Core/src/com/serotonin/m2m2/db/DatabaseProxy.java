@@ -34,6 +34,8 @@ import com.serotonin.db.TransactionCapable;
 import com.serotonin.db.spring.ExtendedJdbcTemplate;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.db.dao.BaseDao;
+import com.serotonin.m2m2.db.dao.JdbcBatchPointValueLoader;
+import com.serotonin.m2m2.db.dao.PointValueBulkLoader;
 import com.serotonin.m2m2.db.dao.SystemSettingsDao;
 import com.serotonin.m2m2.i18n.Translations;
 import com.serotonin.m2m2.rt.event.AlarmLevels;
@@ -292,6 +294,14 @@ public interface DatabaseProxy extends TransactionCapable {
         return 1000;
     }
 
+    /**
+     * Creates the loader used to bulk insert point values into the pointValues table (e.g. by the batch writer)
+     * @return bulk loader appropriate for this database
+     */
+    default PointValueBulkLoader createPointValueBulkLoader() {
+        return new JdbcBatchPointValueLoader(getContext(), getJdbcTemplate());
+    }
+
     /**
      * Number of rows to delete at once when doing batch deletes (e.g. data point deletion)
      * @return number of rows to delete at once
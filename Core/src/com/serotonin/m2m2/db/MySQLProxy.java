@@ -31,6 +31,10 @@ public class MySQLProxy extends BasePooledProxy {
         else
             url += "?";
         url += "useUnicode=yes&characterEncoding=" + StandardCharsets.UTF_8.name();
+        // send JDBC batches (e.g. point value batch inserts) as multi-row statements
+        if (!url.contains("rewriteBatchedStatements=")) {
+            url += "&rewriteBatchedStatements=true";
+        }
         return url;
     }
 
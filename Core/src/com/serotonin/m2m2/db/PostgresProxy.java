@@ -9,6 +9,8 @@ import org.postgresql.util.PSQLException;
 import org.springframework.jdbc.BadSqlGrammarException;
 
 import com.infiniteautomation.mango.spring.DatabaseProxyConfiguration;
+import com.serotonin.m2m2.db.dao.PointValueBulkLoader;
+import com.serotonin.m2m2.db.dao.PostgresCopyPointValueLoader;
 
 public class PostgresProxy extends BasePooledProxy {
     public PostgresProxy(DatabaseProxyFactory factory, DatabaseProxyConfiguration configuration, String propertyPrefix) {
@@ -52,6 +54,14 @@ public class PostgresProxy extends BasePooledProxy {
         return true;
     }
 
+    @Override
+    public PointValueBulkLoader createPointValueBulkLoader() {
+        if (env.getProperty("db.postgres.copyPointValues", boolean.class, true)) {
+            return new PostgresCopyPointValueLoader(getJdbcTemplate());
+        }
+        return super.createPointValueBulkLoader();
+    }
+
     @Override
     public String getTableListQuery() {
         return "SELECT table_name FROM information_schema.tables "
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+
+import com.infiniteautomation.mango.db.tables.PointValueAnnotations;
+import com.infiniteautomation.mango.db.tables.PointValues;
+import com.serotonin.m2m2.db.DatabaseProxy;
+import com.serotonin.m2m2.db.DatabaseType;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+
+/**
+ * Inserts batches containing alphanumeric and/or annotated point values. The pointValues rows are inserted using a
+ * JDBC batch and the generated ids are read back to insert the pointValueAnnotations rows as a second JDBC batch,
+ * both in a single transaction.
+ *
+ * <p>Not all drivers return generated keys from a batch (e.g. MSSQL), for those databases the pointValues rows
+ * are inserted one at a time. If a driver unexpectedly does not return a key for every row the transaction is rolled
+ * back and the batch is written again one row at a time.</p>
+ */
+public class AnnotatedPointValueLoader implements PointValueBulkLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AnnotatedPointValueLoader.class);
+    private static final int SHORT_TEXT_LENGTH = 128;
+
+    private final DatabaseProxy databaseProxy;
+    private final String insertValueSql;
+    private final String insertAnnotationSql;
+    private final String[] keyColumns;
+    private volatile boolean batchGeneratedKeys;
+
+    public AnnotatedPointValueLoader(DatabaseProxy databaseProxy) {
+        this.databaseProxy = databaseProxy;
+
+        DSLContext context = databaseProxy.getContext();
+        PointValues pv = PointValues.POINT_VALUES;
+        PointValueAnnotations pva = PointValueAnnotations.POINT_VALUE_ANNOTATIONS;
+        this.insertValueSql = context.insertInto(pv)
+                .columns(pv.dataPointId, pv.dataType, pv.pointValue, pv.ts)
+                .values(DSL.param(pv.dataPointId), DSL.param(pv.dataType), DSL.param(pv.pointValue), DSL.param(pv.ts))
+                .getSQL();
+        this.insertAnnotationSql = context.insertInto(pva)
+                .columns(pva.pointValueId, pva.textPointValueShort, pva.textPointValueLong, pva.sourceMessage)
+                .values(DSL.param(pva.pointValueId), DSL.param(pva.textPointValueShort), DSL.param(pva.textPointValueLong), DSL.param(pva.sourceMessage))
+                .getSQL();
+        this.keyColumns = new String[] {pv.id.getName()};
+        this.batchGeneratedKeys = databaseProxy.getType() != DatabaseType.MSSQL;
+    }
+
+    @Override
+    public int load(PointValueBatch batch) {
+        if (batchGeneratedKeys) {
+            try {
+                return databaseProxy.doInTransaction(status -> insert(batch, true));
+            } catch (MissingGeneratedKeysException e) {
+                LOG.warn("Database driver did not return generated keys for a batch insert, point values with annotations will be inserted individually");
+                batchGeneratedKeys = false;
+            }
+        }
+        return databaseProxy.doInTransaction(status -> insert(batch, false));
+    }
+
+    @Override
+    public String getName() {
+        return "JDBC batch with annotations";
+    }
+
+    private int insert(PointValueBatch batch, boolean batchValues) {
+        Integer inserted = databaseProxy.getJdbcTemplate().execute((ConnectionCallback<Integer>) connection -> {
+            long[] ids = batchValues ? insertValuesBatch(connection, batch) : insertValues(connection, batch);
+            insertAnnotations(connection, batch, ids);
+            return batch.size();
+        });
+        return inserted == null ? 0 : inserted;
+    }
+
+    private long[] insertValuesBatch(Connection connection, PointValueBatch batch) throws SQLException {
+        int size = batch.size();
+        long[] ids = new long[size];
+        try (PreparedStatement ps = connection.prepareStatement(insertValueSql, keyColumns)) {
+            for (int i = 0; i < size; i++) {
+                batch.setValues(ps, i);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+
+            int count = 0;
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                while (keys.next() && count < size) {
+                    ids[count++] = keys.getLong(1);
+                }
+            }
+            if (count != size) {
+                throw new MissingGeneratedKeysException();
+            }
+        }
+        return ids;
+    }
+
+    private long[] insertValues(Connection connection, PointValueBatch batch) throws SQLException {
+        int size = batch.size();
+        long[] ids = new long[size];
+        try (PreparedStatement ps = connection.prepareStatement(insertValueSql, keyColumns)) {
+            for (int i = 0; i < size; i++) {
+                batch.setValues(ps, i);
+                ps.executeUpdate();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    if (!keys.next()) {
+                        throw new SQLException("No generated key returned for point value insert");
+                    }
+                    ids[i] = keys.getLong(1);
+                }
+            }
+        }
+        return ids;
+    }
+
+    private void insertAnnotations(Connection connection, PointValueBatch batch, long[] ids) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(insertAnnotationSql)) {
+            for (int i = 0; i < batch.size(); i++) {
+                if (!batch.isAnnotated(i)) {
+                    continue;
+                }
+
+                String svalue = batch.getStringValue(i);
+                TranslatableMessage sourceMessage = batch.getSourceMessage(i);
+                ps.setLong(1, ids[i]);
+                if (svalue == null) {
+                    ps.setNull(2, Types.VARCHAR);
+                    ps.setNull(3, Types.VARCHAR);
+                } else if (svalue.length() <= SHORT_TEXT_LENGTH) {
+                    ps.setString(2, svalue);
+                    ps.setNull(3, Types.VARCHAR);
+                } else {
+                    ps.setNull(2, Types.VARCHAR);
+                    ps.setString(3, svalue);
+                }
+                ps.setString(4, BaseDao.writeTranslatableMessage(sourceMessage));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Thrown inside the transaction so that it is rolled back
+     */
+    private static class MissingGeneratedKeysException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private MissingGeneratedKeysException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -409,29 +409,33 @@ public class BasicSQLPointValueDao extends BaseDao implements PointValueDao {
         DataType dataType = DataType.fromId(pvRecord.get(pv.dataType));
         if (dataType == null) return null;
 
-        switch (dataType) {
-            case NUMERIC: {
-                Double doubleValue = pvRecord.get(pv.pointValue);
-                return new NumericValue(doubleValue);
-            }
-            case BINARY: {
-                boolean booleanValue = pvRecord.get(pv.pointValue) == 1;
-                return new BinaryValue(booleanValue);
-            }
-            case MULTISTATE: {
-                int intValue = (int) Math.round(pvRecord.get(pv.pointValue));
-                return new MultistateValue(intValue);
-            }
-            case ALPHANUMERIC: {
-                String shortTextValue = pvaRecord.get(pva.textPointValueShort);
-                if (shortTextValue != null) {
-                    return new AlphanumericValue(shortTextValue);
-                }
-                String longTextValue = pvaRecord.get(pva.textPointValueLong);
-                return new AlphanumericValue(longTextValue);
+        Double pointValue = pvRecord.get(pv.pointValue);
+        String svalue = null;
+        if (dataType == DataType.ALPHANUMERIC) {
+            svalue = pvaRecord.get(pva.textPointValueShort);
+            if (svalue == null) {
+                svalue = pvaRecord.get(pva.textPointValueLong);
             }
         }
-        return null;
+        return createDataValue(dataType, pointValue == null ? 0 : pointValue, svalue);
+    }
+
+    /**
+     * Create a data value from the values stored in the pointValues/pointValueAnnotations tables
+     */
+    protected DataValue createDataValue(DataType dataType, double dvalue, @Nullable String svalue) {
+        switch (dataType) {
+            case NUMERIC:
+                return new NumericValue(dvalue);
+            case BINARY:
+                return new BinaryValue(dvalue == 1);
+            case MULTISTATE:
+                return new MultistateValue((int) Math.round(dvalue));
+            case ALPHANUMERIC:
+                return new AlphanumericValue(svalue);
+            default:
+                throw new IllegalArgumentException("Unknown data type " + dataType);
+        }
     }
 
     @Override
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tunes the point value batch writer at runtime using additive increase / multiplicative decrease (AIMD), in the
+ * same way TCP congestion control finds the capacity of a link.
+ *
+ * <ul>
+ *     <li>When a full batch is written within the target latency the batch size is increased by a fixed step.</li>
+ *     <li>When the queue keeps growing even though batches are written within the target latency another writer
+ *     is allowed, at most once per target latency period.</li>
+ *     <li>When a batch takes longer than the target latency the batch size and the number of writers are halved,
+ *     at most once per target latency period so that several slow writes in flight at once only count once.
+ *     A failed write always halves them.</li>
+ * </ul>
+ *
+ * <p>When adaptive tuning is disabled the writer behaves as it did before tuning was added: the batch size is fixed
+ * at the initial batch size, the writer limit at its maximum and another writer is started for every
+ * {@value #FIXED_SPAWN_THRESHOLD} queued values.</p>
+ */
+public class BatchWriteController {
+
+    /**
+     * Queued values per running writer above which another writer is started when adaptive tuning is disabled
+     */
+    public static final int FIXED_SPAWN_THRESHOLD = 10_000;
+
+    private final boolean adaptive;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final int maxWriters;
+    private final long targetLatencyNanos;
+
+    private volatile int batchSize;
+    private volatile int writerLimit;
+    private volatile long lastLatencyNanos;
+
+    // guarded by this
+    private long lastQueueSize;
+    private long lastIncrease;
+    private long lastDecrease;
+
+    /**
+     * @param adaptive tune the batch size and writer limit, otherwise use the initial batch size and max writers
+     * @param minBatchSize smallest batch size, also used as the additive increase step
+     * @param initialBatchSize starting batch size
+     * @param maxBatchSize ceiling for the batch size
+     * @param maxWriters ceiling for the number of concurrent writers
+     * @param targetLatency target time to write a single batch
+     * @param unit unit of targetLatency
+     */
+    public BatchWriteController(boolean adaptive, int minBatchSize, int initialBatchSize, int maxBatchSize,
+                                int maxWriters, long targetLatency, TimeUnit unit) {
+        if (minBatchSize <= 0 || maxBatchSize < minBatchSize) {
+            throw new IllegalArgumentException("Invalid batch size range " + minBatchSize + " - " + maxBatchSize);
+        }
+        if (maxWriters <= 0) {
+            throw new IllegalArgumentException("maxWriters must be greater than 0");
+        }
+        this.adaptive = adaptive;
+        this.minBatchSize = minBatchSize;
+        this.maxWriters = maxWriters;
+        this.targetLatencyNanos = unit.toNanos(targetLatency);
+
+        if (adaptive) {
+            this.maxBatchSize = maxBatchSize;
+            this.batchSize = Math.max(minBatchSize, Math.min(maxBatchSize, initialBatchSize));
+            this.writerLimit = 1;
+        } else {
+            this.maxBatchSize = initialBatchSize;
+            this.batchSize = initialBatchSize;
+            this.writerLimit = maxWriters;
+        }
+    }
+
+    /**
+     * Record a successful batch write.
+     *
+     * @param count number of values written
+     * @param elapsedNanos time taken to write the batch
+     * @param queueSize number of values waiting in the queue after the write
+     * @param now current time from {@link System#nanoTime()}
+     */
+    public synchronized void onWrite(int count, long elapsedNanos, long queueSize, long now) {
+        this.lastLatencyNanos = elapsedNanos;
+        if (!adaptive) {
+            return;
+        }
+
+        if (elapsedNanos > targetLatencyNanos) {
+            decrease(now, false);
+        } else {
+            if (count >= batchSize) {
+                // batch was full so there is more waiting, try a larger batch
+                this.batchSize = Math.min(maxBatchSize, batchSize + minBatchSize);
+            }
+            if (queueSize > lastQueueSize && queueSize > batchSize && now - lastIncrease >= targetLatencyNanos) {
+                // writers are keeping up with the target latency but falling behind the producers
+                this.writerLimit = Math.min(maxWriters, writerLimit + 1);
+                this.lastIncrease = now;
+            }
+        }
+        this.lastQueueSize = queueSize;
+    }
+
+    /**
+     * Record a failed batch write (e.g. a timeout or the database being unavailable).
+     *
+     * @param now current time from {@link System#nanoTime()}
+     */
+    public synchronized void onFailure(long now) {
+        if (adaptive) {
+            decrease(now, true);
+        }
+    }
+
+    private void decrease(long now, boolean force) {
+        if (!force && now - lastDecrease < targetLatencyNanos) {
+            return;
+        }
+        this.batchSize = Math.max(minBatchSize, batchSize / 2);
+        this.writerLimit = Math.max(1, writerLimit / 2);
+        this.lastDecrease = now;
+        this.lastIncrease = now;
+    }
+
+    /**
+     * @return number of values each writer should take from the queue at once
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return largest batch size that will ever be requested, used to size batch buffers
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * @return number of writers currently allowed to run concurrently
+     */
+    public int getWriterLimit() {
+        return writerLimit;
+    }
+
+    /**
+     * @return number of queued values per running writer above which another writer should be started
+     */
+    public int getSpawnThreshold() {
+        return adaptive ? batchSize : FIXED_SPAWN_THRESHOLD;
+    }
+
+    /**
+     * @return time taken by the last batch write in milliseconds
+     */
+    public long getLastLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastLatencyNanos);
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import com.serotonin.m2m2.DataType;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+
+/**
+ * Lock-free, striped, multi-producer queue of point values waiting to be batch written to the database.
+ *
+ * <p>Each stripe is a bounded ring buffer of primitive slots (series id, data type, value, timestamp) plus reference
+ * slots for the text value and annotation of alphanumeric/annotated values, which are null for all other values. Producers
+ * are spread over the stripes by thread and claim a slot with a single CAS, so they never block on each other.
+ * Consumers drain a stripe exclusively but skip any stripe that another consumer is already draining. If a stripe is
+ * full the value is placed in an unbounded overflow queue so that no values are ever dropped.</p>
+ *
+ * <p>The number of values in the queue is tracked by a single counter so that it can be checked on every add.</p>
+ *
+ * <p>Ordering is only preserved per producer thread, values are written in batches by several writer threads
+ * so there is no global ordering guarantee.</p>
+ */
+public class BatchWriteQueue {
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final Queue<Entry> overflow = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger overflowSize = new AtomicInteger();
+    private final LongAdder overflowCount = new LongAdder();
+    private final AtomicInteger nextStripe = new AtomicInteger();
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * @param stripeCount number of stripes, rounded up to the next power of two
+     * @param capacity total number of slots across all stripes
+     */
+    public BatchWriteQueue(int stripeCount, int capacity) {
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException("stripeCount must be greater than 0");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+
+        int count = nextPowerOfTwo(stripeCount);
+        int stripeCapacity = nextPowerOfTwo(Math.max(2, capacity / count));
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(stripeCapacity);
+        }
+        this.stripeMask = count - 1;
+    }
+
+    /**
+     * Add a value to the queue, never blocks.
+     *
+     * @return approximate number of values in the queue after adding
+     */
+    public long add(int seriesId, DataType dataType, double value, long time) {
+        return add(seriesId, dataType, value, time, null, null);
+    }
+
+    /**
+     * Add a value with an optional text value and annotation to the queue, never blocks.
+     *
+     * @return approximate number of values in the queue after adding
+     */
+    public long add(int seriesId, DataType dataType, double value, long time,
+                    @Nullable String svalue, @Nullable TranslatableMessage sourceMessage) {
+        Stripe stripe = stripes[stripeIndex()];
+        if (!stripe.offer(seriesId, dataType, value, time, svalue, sourceMessage)) {
+            overflow.add(new Entry(seriesId, dataType, value, time, svalue, sourceMessage));
+            overflowSize.incrementAndGet();
+            overflowCount.increment();
+        }
+        // counted once published, a consumer that sees the count is then able to drain the value
+        return size.incrementAndGet();
+    }
+
+    /**
+     * Remove up to {@code max} values from the queue, passing each to the consumer.
+     *
+     * @return number of values removed
+     */
+    public int drain(EntryConsumer consumer, int max) {
+        int drained = 0;
+        int start = nextStripe.getAndIncrement();
+        for (int i = 0; i < stripes.length && drained < max; i++) {
+            drained += stripes[(start + i) & stripeMask].drain(consumer, max - drained);
+        }
+
+        Entry entry;
+        while (drained < max && (entry = overflow.poll()) != null) {
+            overflowSize.decrementAndGet();
+            consumer.accept(entry.seriesId, entry.dataType, entry.value, entry.time, entry.svalue, entry.sourceMessage);
+            drained++;
+        }
+        if (drained > 0) {
+            size.addAndGet(-drained);
+        }
+        return drained;
+    }
+
+    /**
+     * @return approximate number of values in the queue, values being added may or may not be counted
+     */
+    public long size() {
+        return Math.max(0, size.get());
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return total number of values that did not fit in the ring buffers and were placed in the overflow queue
+     */
+    public long overflowCount() {
+        return overflowCount.sum();
+    }
+
+    private int stripeIndex() {
+        long id = Thread.currentThread().getId();
+        // spread the thread id bits (murmur3 finalizer step)
+        id ^= id >>> 33;
+        id *= 0xff51afd7ed558ccdL;
+        id ^= id >>> 33;
+        return (int) id & stripeMask;
+    }
+
+    private static int nextPowerOfTwo(int value) {
+        int highest = Integer.highestOneBit(value);
+        return highest == value ? value : highest << 1;
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(int seriesId, DataType dataType, double value, long time,
+                    @Nullable String svalue, @Nullable TranslatableMessage sourceMessage);
+    }
+
+    /**
+     * Bounded ring buffer using per slot sequence numbers (D. Vyukov's bounded queue algorithm). Producers claim
+     * a slot by advancing the tail with a CAS, then publish it by writing the slot's sequence number.
+     */
+    private static final class Stripe {
+        private static final DataType[] DATA_TYPES = DataType.values();
+
+        private final int mask;
+        private final int[] seriesIds;
+        private final byte[] dataTypes;
+        private final double[] values;
+        private final long[] times;
+        private final String[] svalues;
+        private final TranslatableMessage[] sourceMessages;
+        private final AtomicLongArray sequences;
+        private final AtomicLong tail = new AtomicLong();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile long head;
+
+        private Stripe(int capacity) {
+            this.mask = capacity - 1;
+            this.seriesIds = new int[capacity];
+            this.dataTypes = new byte[capacity];
+            this.values = new double[capacity];
+            this.times = new long[capacity];
+            this.svalues = new String[capacity];
+            this.sourceMessages = new TranslatableMessage[capacity];
+            this.sequences = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        private boolean offer(int seriesId, DataType dataType, double value, long time,
+                              @Nullable String svalue, @Nullable TranslatableMessage sourceMessage) {
+            long position = tail.get();
+            int index;
+            while (true) {
+                index = (int) position & mask;
+                long difference = sequences.get(index) - position;
+                if (difference == 0) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        break;
+                    }
+                    position = tail.get();
+                } else if (difference < 0) {
+                    // full
+                    return false;
+                } else {
+                    position = tail.get();
+                }
+            }
+
+            seriesIds[index] = seriesId;
+            dataTypes[index] = (byte) dataType.ordinal();
+            values[index] = value;
+            times[index] = time;
+            svalues[index] = svalue;
+            sourceMessages[index] = sourceMessage;
+            sequences.set(index, position + 1);
+            return true;
+        }
+
+        private int drain(EntryConsumer consumer, int max) {
+            if (!draining.compareAndSet(false, true)) {
+                return 0;
+            }
+
+            int drained = 0;
+            try {
+                long position = head;
+                while (drained < max) {
+                    int index = (int) position & mask;
+                    if (sequences.get(index) != position + 1) {
+                        // empty, or the producer has not yet published the slot
+                        break;
+                    }
+                    consumer.accept(seriesIds[index], DATA_TYPES[dataTypes[index]], values[index], times[index],
+                            svalues[index], sourceMessages[index]);
+                    // don't hold on to references
+                    svalues[index] = null;
+                    sourceMessages[index] = null;
+                    sequences.set(index, position + mask + 1);
+                    position++;
+                    drained++;
+                }
+                head = position;
+            } finally {
+                draining.set(false);
+            }
+            return drained;
+        }
+    }
+
+    private static final class Entry {
+        private final int seriesId;
+        private final DataType dataType;
+        private final double value;
+        private final long time;
+        private final @Nullable String svalue;
+        private final @Nullable TranslatableMessage sourceMessage;
+
+        private Entry(int seriesId, DataType dataType, double value, long time,
+                      @Nullable String svalue, @Nullable TranslatableMessage sourceMessage) {
+            this.seriesId = seriesId;
+            this.dataType = dataType;
+            this.value = value;
+            this.time = time;
+            this.svalue = svalue;
+            this.sourceMessage = sourceMessage;
+        }
+    }
+}
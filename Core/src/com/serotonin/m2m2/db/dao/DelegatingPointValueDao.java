@@ -174,6 +174,17 @@ public abstract class DelegatingPointValueDao implements PointValueDao {
         return primary.threadCount() + secondary.threadCount();
     }
 
+    @Override
+    public boolean isBackpressureActive() {
+        return primary.isBackpressureActive() || secondary.isBackpressureActive();
+    }
+
+    @Override
+    public boolean tryReserve(int count) {
+        // values may be written to either
+        return primary.tryReserve(count) && secondary.tryReserve(count);
+    }
+
     @Override
     public AggregateDao getAggregateDao() {
         return new DelegatingAggregateDao(
@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jooq.Record;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.serotonin.m2m2.rt.event.ReturnCause;
+import com.serotonin.m2m2.util.timeout.TimeoutClient;
+import com.serotonin.m2m2.util.timeout.TimeoutTask;
+import com.serotonin.timer.RejectedTaskReason;
+
+/**
+ * Batches writes to the events table.
+ *
+ * <p>Inserts are group committed, whichever thread is inserting writes the events of all threads waiting to insert as
+ * a single multi-row insert. The ids are assigned by the database and every event is in the database before its insert
+ * returns.</p>
+ *
+ * <p>Returns to normal are queued and written by a single writer, either when the batch size is reached or after the
+ * flush delay, whichever comes first. Returns to normal with the same time and cause are written as a single update.
+ * When an update fails it is kept, and the updates are retried from a scheduled task which backs off exponentially from
+ * {@link #MIN_RETRY_DELAY} to {@link #MAX_RETRY_DELAY} until the database is available again. When the queue is full
+ * (e.g. during an event storm) the caller writes its update directly.</p>
+ */
+class EventBatchWriter {
+    private static final Logger LOG = LoggerFactory.getLogger(EventBatchWriter.class);
+
+    static final long MIN_RETRY_DELAY = 1000;
+    static final long MAX_RETRY_DELAY = 60000;
+
+    private final EventDao dao;
+    private final int batchSize;
+    private final long flushDelay;
+    private final int maxQueueSize;
+
+    private final Queue<Insert> pendingInserts = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock insertLock = new ReentrantLock();
+
+    private final Queue<ReturnToNormal> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicBoolean delayedFlushScheduled = new AtomicBoolean();
+    private final AtomicBoolean immediateFlushScheduled = new AtomicBoolean();
+    private final AtomicBoolean retryScheduled = new AtomicBoolean();
+    /**
+     * Returns to normal that could not be written, guarded by writeLock
+     */
+    private final List<ReturnToNormal> failed = new ArrayList<>();
+    /**
+     * Number of consecutive failed writes, zero unless there are failed returns to normal waiting to be retried
+     */
+    private volatile int failures;
+
+    /**
+     * @param batchSize maximum number of events inserted or returned to normal at once, reaching it triggers a flush
+     * @param flushDelay maximum time in ms a return to normal waits in the queue
+     * @param maxQueueSize maximum number of returns to normal held in the queue
+     */
+    EventBatchWriter(EventDao dao, int batchSize, long flushDelay, int maxQueueSize) {
+        this.dao = dao;
+        this.batchSize = batchSize;
+        this.flushDelay = flushDelay;
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    /**
+     * Insert an event, blocks until it is written.
+     *
+     * @return the id assigned by the database
+     */
+    int insert(Record record) {
+        Insert insert = new Insert(record);
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            // write directly, an event saved inside an existing transaction must be written as part of it
+            writeInserts(List.of(insert));
+            return insert.getId();
+        }
+
+        pendingInserts.add(insert);
+        insertLock.lock();
+        try {
+            while (!insert.done) {
+                List<Insert> group = new ArrayList<>();
+                Insert pending;
+                while (group.size() < batchSize && (pending = pendingInserts.poll()) != null) {
+                    group.add(pending);
+                }
+                writeInserts(group);
+            }
+        } finally {
+            insertLock.unlock();
+        }
+        return insert.getId();
+    }
+
+    void returnToNormal(List<Integer> ids, long time, ReturnCause cause) {
+        if (queueSize.get() >= maxQueueSize) {
+            dao.returnEventsToNormalNow(ids, time, cause);
+            return;
+        }
+        enqueue(new ReturnToNormal(ids, time, cause));
+    }
+
+    boolean isEmpty() {
+        return queueSize.get() == 0;
+    }
+
+    /**
+     * Write everything queued so far, blocking until done. Returns to normal that cannot be written are kept to be
+     * retried.
+     */
+    void flush() {
+        writeLock.lock();
+        try {
+            drain();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void enqueue(ReturnToNormal operation) {
+        queue.add(operation);
+        if (queueSize.incrementAndGet() >= batchSize) {
+            schedule(immediateFlushScheduled, 0);
+        } else {
+            schedule(delayedFlushScheduled, flushDelay);
+        }
+    }
+
+    private void schedule(AtomicBoolean scheduled, long delay) {
+        if (scheduled.compareAndSet(false, true)) {
+            new TimeoutTask(delay, new FlushClient(scheduled, false));
+        }
+    }
+
+    /**
+     * @param retry true if retrying failed writes, otherwise the write is left to the scheduled retry
+     */
+    private void backgroundFlush(boolean retry) {
+        // another writer re-checks the queue after releasing the lock, so it is safe to give up if it is held
+        while (writeLock.tryLock()) {
+            try {
+                if (failures > 0 && !retry && retryScheduled.get()) {
+                    // don't hammer the database while it is unavailable, the retry writes everything queued
+                    return;
+                }
+                drain();
+            } finally {
+                writeLock.unlock();
+            }
+            if (queue.isEmpty() || failures > 0) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Write the failed returns to normal followed by the queued ones, stops writing at the first failure.
+     */
+    private void drain() {
+        List<ReturnToNormal> pending = new ArrayList<>(failed);
+        failed.clear();
+        ReturnToNormal operation;
+        while ((operation = queue.poll()) != null) {
+            pending.add(operation);
+        }
+
+        Exception error = null;
+        for (int i = 0; i < pending.size(); i += batchSize) {
+            List<ReturnToNormal> batch = pending.subList(i, Math.min(i + batchSize, pending.size()));
+            if (error == null) {
+                error = write(batch);
+            } else {
+                failed.addAll(batch);
+            }
+        }
+
+        if (error != null) {
+            scheduleRetry(error);
+        } else if (failures > 0) {
+            LOG.info("Returned events to normal after {} failed attempts", failures);
+            failures = 0;
+        }
+    }
+
+    /**
+     * @return the error if a write failed, the returns to normal which were not written are added to failed
+     */
+    private Exception write(List<ReturnToNormal> batch) {
+        Map<ReturnToNormalKey, List<ReturnToNormal>> groups = new LinkedHashMap<>();
+        for (ReturnToNormal rtn : batch) {
+            groups.computeIfAbsent(new ReturnToNormalKey(rtn.time, rtn.cause), k -> new ArrayList<>()).add(rtn);
+        }
+
+        Exception error = null;
+        for (Map.Entry<ReturnToNormalKey, List<ReturnToNormal>> entry : groups.entrySet()) {
+            if (error == null) {
+                List<Integer> ids = new ArrayList<>();
+                for (ReturnToNormal rtn : entry.getValue()) {
+                    ids.addAll(rtn.ids);
+                }
+                try {
+                    dao.returnEventsToNormalNow(ids, entry.getKey().time, entry.getKey().cause);
+                    queueSize.addAndGet(-entry.getValue().size());
+                    continue;
+                } catch (Exception e) {
+                    error = e;
+                }
+            }
+            failed.addAll(entry.getValue());
+        }
+        return error;
+    }
+
+    private void scheduleRetry(Exception e) {
+        int failures = ++this.failures;
+        long delay = Math.min(MAX_RETRY_DELAY, MIN_RETRY_DELAY << Math.min(failures - 1, 16));
+        if (failures == 1) {
+            LOG.warn("Failed to return events to normal, retrying in {} ms", delay, e);
+        } else {
+            LOG.warn("Failed to return events to normal {} times, {} updates waiting, retrying in {} ms: {}",
+                    failures, failed.size(), delay, e.getMessage());
+        }
+        if (retryScheduled.compareAndSet(false, true)) {
+            new TimeoutTask(delay, new FlushClient(retryScheduled, true));
+        }
+    }
+
+    private void writeInserts(List<Insert> inserts) {
+        if (inserts.isEmpty()) {
+            return;
+        }
+        List<Record> records = new ArrayList<>(inserts.size());
+        for (Insert insert : inserts) {
+            records.add(insert.record);
+        }
+        try {
+            List<Integer> ids = dao.insertEventRecords(records);
+            for (int i = 0; i < inserts.size(); i++) {
+                inserts.get(i).complete(ids.get(i), null);
+            }
+        } catch (RuntimeException e) {
+            if (inserts.size() == 1) {
+                inserts.get(0).complete(-1, e);
+                return;
+            }
+            // write individually so that the error is only reported to the caller whose event failed
+            LOG.warn("Failed to insert {} events at once, inserting individually", inserts.size(), e);
+            for (Insert insert : inserts) {
+                writeInserts(List.of(insert));
+            }
+        }
+    }
+
+    private class FlushClient extends TimeoutClient {
+        private final AtomicBoolean scheduled;
+        private final boolean retry;
+
+        private FlushClient(AtomicBoolean scheduled, boolean retry) {
+            this.scheduled = scheduled;
+            this.retry = retry;
+        }
+
+        @Override
+        public void scheduleTimeout(long fireTime) {
+            // clear first so that operations queued while writing schedule another flush
+            scheduled.set(false);
+            backgroundFlush(retry);
+        }
+
+        @Override
+        public String getThreadName() {
+            return "Event batch writer";
+        }
+
+        @Override
+        public void rejected(RejectedTaskReason reason) {
+            scheduled.set(false);
+            super.rejected(reason);
+        }
+    }
+
+    /**
+     * An event waiting to be inserted by {@link #insert(Record)}
+     */
+    private static final class Insert {
+        private final Record record;
+
+        // guarded by insertLock
+        private boolean done;
+        private int id;
+        private RuntimeException error;
+
+        private Insert(Record record) {
+            this.record = record;
+        }
+
+        private void complete(int id, RuntimeException error) {
+            this.id = id;
+            this.error = error;
+            this.done = true;
+        }
+
+        private int getId() {
+            if (error != null) {
+                throw error;
+            }
+            return id;
+        }
+    }
+
+    private static final class ReturnToNormal {
+        private final List<Integer> ids;
+        private final long time;
+        private final ReturnCause cause;
+
+        private ReturnToNormal(List<Integer> ids, long time, ReturnCause cause) {
+            this.ids = ids;
+            this.time = time;
+            this.cause = cause;
+        }
+    }
+
+    private static final class ReturnToNormalKey {
+        private final long time;
+        private final ReturnCause cause;
+
+        private ReturnToNormalKey(long time, ReturnCause cause) {
+            this.time = time;
+            this.cause = cause;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            ReturnToNormalKey that = (ReturnToNormalKey) o;
+            return time == that.time && cause == that.cause;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(time, cause);
+        }
+    }
+}
@@ -5,11 +5,13 @@ package com.serotonin.m2m2.db.dao;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import org.jooq.Condition;
 import org.jooq.Field;
+import org.jooq.InsertSetMoreStep;
 import org.jooq.Record;
 import org.jooq.SelectJoinStep;
 import org.jooq.Table;
@@ -35,6 +37,7 @@ import com.serotonin.ShouldNeverHappenException;
 import com.serotonin.json.JsonException;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.db.DatabaseProxy;
+import com.serotonin.m2m2.db.DatabaseType;
 import com.serotonin.m2m2.i18n.TranslatableMessage;
 import com.serotonin.m2m2.module.EventTypeDefinition;
 import com.serotonin.m2m2.module.ModuleRegistry;
@@ -74,11 +77,22 @@ public class EventDao extends BaseDao {
     private final Users userTable;
     private final UserComments userCommentTable;
     private final PermissionService permissionService;
+    /**
+     * Null if events are written synchronously
+     */
+    private final EventBatchWriter batchWriter;
 
     @Autowired
     private EventDao(AuditEventDao auditEventDao,
             UserCommentDao userCommentDao,
             PermissionService permissionService, DatabaseProxy databaseProxy) {
+        this(auditEventDao, userCommentDao, permissionService, databaseProxy,
+                Common.envProps.getBoolean("db.events.batchWrite.enabled", false));
+    }
+
+    EventDao(AuditEventDao auditEventDao,
+            UserCommentDao userCommentDao,
+            PermissionService permissionService, DatabaseProxy databaseProxy, boolean batchWrite) {
         super(databaseProxy);
         this.auditEventDao = auditEventDao;
         this.userCommentDao = userCommentDao;
@@ -86,6 +100,11 @@ public class EventDao extends BaseDao {
         this.userTable = Users.USERS;
         this.userCommentTable = UserComments.USER_COMMENTS;
         this.permissionService = permissionService;
+
+        this.batchWriter = batchWrite ? new EventBatchWriter(this,
+                Common.envProps.getInt("db.events.batchWrite.batchSize", 500),
+                Common.envProps.getLong("db.events.batchWrite.flushDelay", 100),
+                Common.envProps.getInt("db.events.batchWrite.queueSize", 10000)) : null;
     }
 
     public static EventDao getInstance() {
@@ -124,13 +143,63 @@ public class EventDao extends BaseDao {
 
     private void insertEvent(EventInstance event) {
         savePreRelationalData(event);
+        if (batchWriter != null) {
+            event.setId(batchWriter.insert(voToObjectArray(event)));
+            return;
+        }
+
+        event.setId(insertEventRecord(voToObjectArray(event)));
+    }
+
+    private int insertEventRecord(Record record) {
         EventsRecord result = create.insertInto(table)
-                .set(voToObjectArray(event))
+                .set(record)
                 .returning(table.id)
                 .fetchOne();
 
-        int id = result == null ? -1 : result.get(table.id);
-        event.setId(id);
+        return result == null ? -1 : result.get(table.id);
+    }
+
+    /**
+     * Insert events as a single statement, or one at a time in a single transaction on SQL Server.
+     *
+     * @return the ids assigned by the database, in the same order as the records
+     */
+    List<Integer> insertEventRecords(List<Record> records) {
+        if (databaseType == DatabaseType.MSSQL) {
+            // the OUTPUT clause of a multi-row insert does not return the ids in the order of the rows
+            return getTransactionTemplate().execute(status -> {
+                List<Integer> ids = new ArrayList<>(records.size());
+                for (Record record : records) {
+                    ids.add(insertEventRecord(record));
+                }
+                return ids;
+            });
+        }
+
+        InsertSetMoreStep<EventsRecord> insert = null;
+        for (Record record : records) {
+            insert = insert == null ? create.insertInto(table).set(record) : insert.newRecord().set(record);
+        }
+        if (insert == null) {
+            return Collections.emptyList();
+        }
+        return insert.returning(table.id).fetch().getValues(table.id);
+    }
+
+    /**
+     * Write all queued event changes to the database, blocking until done.
+     */
+    public void flush() {
+        if (batchWriter != null) {
+            batchWriter.flush();
+        }
+    }
+
+    private void flushIfPending() {
+        if (batchWriter != null && !batchWriter.isEmpty()) {
+            batchWriter.flush();
+        }
     }
 
     private Record voToObjectArray(EventInstance event) {
@@ -238,6 +307,10 @@ public class EventDao extends BaseDao {
      */
     private void updateEvent(EventInstance event) {
         if (event.isRtnApplicable()) {
+            if (batchWriter != null) {
+                batchWriter.returnToNormal(List.of(event.getId()), event.getRtnTimestamp(), event.getRtnCause());
+                return;
+            }
             create.update(table)
                     .set(table.rtnTs, event.getRtnTimestamp())
                     .set(table.rtnCause, event.getRtnCause().value())
@@ -255,6 +328,14 @@ public class EventDao extends BaseDao {
             throw new ShouldNeverHappenException("Not enough Ids!");
         }
 
+        if (batchWriter != null) {
+            batchWriter.returnToNormal(new ArrayList<>(eventIds), timestamp, cause);
+        } else {
+            returnEventsToNormalNow(eventIds, timestamp, cause);
+        }
+    }
+
+    void returnEventsToNormalNow(List<Integer> eventIds, long timestamp, ReturnCause cause) {
         for(List<Integer> batch : partitionInParameters(eventIds.stream())) {
             create.update(table)
                     .set(table.rtnTs, timestamp)
@@ -283,6 +364,7 @@ public class EventDao extends BaseDao {
      * Get all active events
      */
     public List<EventInstance> getActiveEvents() {
+        flushIfPending();
         List<EventInstance> events = new ArrayList<>();
         getJoinedSelectQuery()
                 .where(table.rtnApplicable.eq(boolToChar(true)))
@@ -300,6 +382,7 @@ public class EventDao extends BaseDao {
      * Get a specfic event instance
      */
     public EventInstance get(int id) {
+        flushIfPending();
         EventInstance item = getJoinedSelectQuery()
                 .where(table.id.eq(id))
                 .limit(1)
@@ -393,6 +476,7 @@ public class EventDao extends BaseDao {
      * Insert a comment and return the event commented on
      */
     public EventInstance insertEventComment(UserCommentVO comment) {
+        flushIfPending();
         userCommentDao.insert(comment);
         return get(comment.getReferenceId());
     }
@@ -401,6 +485,7 @@ public class EventDao extends BaseDao {
      * Purge all events by truncating the table
      */
     public int purgeAllEvents(){
+        flushIfPending();
         int count = getTransactionTemplate().execute(new TransactionCallback<Integer>() {
             @Override
             public Integer doInTransaction(TransactionStatus status) {
@@ -419,6 +504,7 @@ public class EventDao extends BaseDao {
      * Purge Events Before a given time with a given alarmLevel
      */
     public int purgeEventsBefore(final long time, final AlarmLevels alarmLevel) {
+        flushIfPending();
         // Find a list of event ids with no remaining acknowledgments pending.
         int count = getTransactionTemplate().execute(new TransactionCallback<Integer>() {
             @Override
@@ -440,6 +526,7 @@ public class EventDao extends BaseDao {
      * Purge Events Before a given time with a given typeName
      */
     public int purgeEventsBefore(final long time, final String typeName) {
+        flushIfPending();
         // Find a list of event ids with no remaining acknowledgments pending.
         int count = getTransactionTemplate().execute(new TransactionCallback<Integer>() {
             @Override
@@ -462,6 +549,7 @@ public class EventDao extends BaseDao {
      * Purge Events Before a given time
      */
     public int purgeEventsBefore(final long time) {
+        flushIfPending();
         // Find a list of event ids with no remaining acknowledgments pending.
         int count = getTransactionTemplate().execute(new TransactionCallback<Integer>() {
             @Override
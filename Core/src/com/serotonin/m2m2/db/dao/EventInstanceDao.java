@@ -21,6 +21,7 @@ import org.jooq.Field;
 import org.jooq.Name;
 import org.jooq.Record;
 import org.jooq.Record1;
+import org.jooq.Record2;
 import org.jooq.Record6;
 import org.jooq.Select;
 import org.jooq.SelectConditionStep;
@@ -522,6 +523,21 @@ public class EventInstanceDao extends AbstractVoDao<EventInstanceVO, EventsRecor
         return customizedCount(select, condition);
     }
 
+    /**
+     * Count all unacknowledged alarms by level using a single query, levels with no alarms are not included
+     */
+    public Map<AlarmLevels, Integer> countUnacknowledgedAlarms(PermissionHolder user) {
+        Field<Integer> count = DSL.count(table.id);
+        SelectJoinStep<Record2<Integer, Integer>> select = create.select(table.alarmLevel, count).from(table);
+        select = joinPermissions(select, user);
+        Map<AlarmLevels, Integer> counts = new HashMap<>();
+        select.where(table.ackTs.isNull())
+                .groupBy(table.alarmLevel)
+                .fetch()
+                .forEach(record -> counts.put(AlarmLevels.fromValue(record.value1()), record.value2()));
+        return counts;
+    }
+
     /**
      * Get the latest unacknowledged alarm at this level
      */
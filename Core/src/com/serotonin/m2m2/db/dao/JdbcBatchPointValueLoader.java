@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+
+import com.infiniteautomation.mango.db.tables.PointValues;
+import com.serotonin.db.spring.ExtendedJdbcTemplate;
+
+/**
+ * Inserts point values using a single prepared statement and JDBC batching ({@code addBatch/executeBatch}).
+ * The SQL is rendered once so the database only has to parse it once per connection.
+ *
+ * <p>On MySQL this relies on the {@code rewriteBatchedStatements} connection property to send the batch as
+ * multi-row inserts.</p>
+ */
+public class JdbcBatchPointValueLoader implements PointValueBulkLoader {
+
+    private final ExtendedJdbcTemplate ejt;
+    private final String insertSql;
+
+    public JdbcBatchPointValueLoader(DSLContext context, ExtendedJdbcTemplate ejt) {
+        this.ejt = ejt;
+
+        PointValues pv = PointValues.POINT_VALUES;
+        this.insertSql = context.insertInto(pv)
+                .columns(pv.dataPointId, pv.dataType, pv.pointValue, pv.ts)
+                .values(DSL.param(pv.dataPointId), DSL.param(pv.dataType), DSL.param(pv.pointValue), DSL.param(pv.ts))
+                .getSQL();
+    }
+
+    @Override
+    public int load(PointValueBatch batch) {
+        ejt.batchUpdate(insertSql, batch);
+        return batch.size();
+    }
+
+    @Override
+    public String getName() {
+        return "JDBC batch";
+    }
+}
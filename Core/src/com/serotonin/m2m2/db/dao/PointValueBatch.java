@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+
+import com.serotonin.m2m2.DataType;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+
+/**
+ * Reusable, fixed capacity batch of point values stored in primitive column arrays. A batch is filled directly from
+ * the {@link BatchWriteQueue} and bound straight to a JDBC batch insert, so no objects are allocated per value.
+ * Alphanumeric values and annotations are held in additional reference columns which are only populated for those
+ * values, see {@link #hasAnnotations()}.
+ *
+ * <p>Not thread safe, each writer owns its own batch.</p>
+ */
+public class PointValueBatch implements BatchWriteQueue.EntryConsumer, BatchPreparedStatementSetter {
+
+    private final int[] seriesIds;
+    private final int[] dataTypes;
+    private final double[] values;
+    private final long[] times;
+    private final String[] svalues;
+    private final TranslatableMessage[] sourceMessages;
+    private int size;
+    private int annotationCount;
+
+    public PointValueBatch(int capacity) {
+        this.seriesIds = new int[capacity];
+        this.dataTypes = new int[capacity];
+        this.values = new double[capacity];
+        this.times = new long[capacity];
+        this.svalues = new String[capacity];
+        this.sourceMessages = new TranslatableMessage[capacity];
+    }
+
+    @Override
+    public void accept(int seriesId, DataType dataType, double value, long time,
+                       @Nullable String svalue, @Nullable TranslatableMessage sourceMessage) {
+        add(seriesId, dataType.getId(), value, time, svalue, sourceMessage);
+    }
+
+    public void add(int seriesId, int dataTypeId, double value, long time) {
+        add(seriesId, dataTypeId, value, time, null, null);
+    }
+
+    /**
+     * @param svalue text value for alphanumeric points
+     * @param sourceMessage annotation of the value
+     */
+    public void add(int seriesId, int dataTypeId, double value, long time,
+                    @Nullable String svalue, @Nullable TranslatableMessage sourceMessage) {
+        if (size == seriesIds.length) {
+            throw new IllegalStateException("Batch is full");
+        }
+        seriesIds[size] = seriesId;
+        dataTypes[size] = dataTypeId;
+        values[size] = value;
+        times[size] = time;
+        svalues[size] = svalue;
+        sourceMessages[size] = sourceMessage;
+        if (svalue != null || sourceMessage != null) {
+            annotationCount++;
+        }
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return seriesIds.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isFull() {
+        return size == seriesIds.length;
+    }
+
+    /**
+     * @return true if any value in the batch requires a row in the pointValueAnnotations table
+     */
+    public boolean hasAnnotations() {
+        return annotationCount > 0;
+    }
+
+    public void clear() {
+        if (annotationCount > 0) {
+            for (int i = 0; i < size; i++) {
+                svalues[i] = null;
+                sourceMessages[i] = null;
+            }
+            annotationCount = 0;
+        }
+        size = 0;
+    }
+
+    public int getSeriesId(int index) {
+        return seriesIds[index];
+    }
+
+    public int getDataTypeId(int index) {
+        return dataTypes[index];
+    }
+
+    public double getValue(int index) {
+        return values[index];
+    }
+
+    public long getTime(int index) {
+        return times[index];
+    }
+
+    public @Nullable String getStringValue(int index) {
+        return svalues[index];
+    }
+
+    public @Nullable TranslatableMessage getSourceMessage(int index) {
+        return sourceMessages[index];
+    }
+
+    public boolean isAnnotated(int index) {
+        return svalues[index] != null || sourceMessages[index] != null;
+    }
+
+    /**
+     * Binds row {@code index} to an insert with parameters (dataPointId, dataType, pointValue, ts)
+     */
+    @Override
+    public void setValues(PreparedStatement ps, int index) throws SQLException {
+        ps.setInt(1, seriesIds[index]);
+        ps.setInt(2, dataTypes[index]);
+        ps.setDouble(3, values[index]);
+        ps.setLong(4, times[index]);
+    }
+
+    @Override
+    public int getBatchSize() {
+        return size;
+    }
+}
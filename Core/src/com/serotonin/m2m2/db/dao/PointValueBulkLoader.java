@@ -0,0 +1,27 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import com.serotonin.m2m2.db.DatabaseProxy;
+
+/**
+ * Inserts batches of point values into the pointValues table using the fastest mechanism available for the database.
+ * Obtained via {@link DatabaseProxy#createPointValueBulkLoader()}, implementations must be thread safe.
+ */
+public interface PointValueBulkLoader {
+
+    /**
+     * Insert all values in the batch. Errors are thrown as Spring {@link org.springframework.dao.DataAccessException}s
+     * so that the caller can decide which errors are retried.
+     *
+     * @param batch values to insert
+     * @return number of values inserted
+     */
+    int load(PointValueBatch batch);
+
+    /**
+     * @return short name of the loading mechanism, used for logging and metrics
+     */
+    String getName();
+}
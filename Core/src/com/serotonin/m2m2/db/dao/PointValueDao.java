@@ -956,4 +956,25 @@ public interface PointValueDao {
      * @return number of active batch writer threads processing the queue.
      */
     int threadCount();
+
+    /**
+     * Backpressure signal for producers of point values (e.g. polling data sources). Becomes active when the write
+     * queue grows past its high watermark and stays active until the queue drains below its low watermark.
+     *
+     * @return true if producers should slow down
+     */
+    default boolean isBackpressureActive() {
+        return false;
+    }
+
+    /**
+     * Check if there is room in the write queue for a number of point values before producing them. This is advisory,
+     * values saved after a failed reservation are still accepted.
+     *
+     * @param count number of point values the caller expects to save
+     * @return true if the values can be queued without exceeding the high watermark
+     */
+    default boolean tryReserve(int count) {
+        return !isBackpressureActive();
+    }
 }
@@ -3,15 +3,22 @@
  */
 package com.serotonin.m2m2.db.dao;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Stream;
 
-import org.apache.commons.lang3.mutable.MutableInt;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.jooq.Field;
 import org.jooq.impl.DSL;
@@ -20,37 +27,45 @@ import org.springframework.dao.RecoverableDataAccessException;
 import org.springframework.dao.TransientDataAccessException;
 import org.springframework.dao.TransientDataAccessResourceException;
 import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.codahale.metrics.Meter;
-import com.infiniteautomation.mango.db.iterators.ChunkingSpliterator;
 import com.infiniteautomation.mango.db.tables.DataPoints;
 import com.infiniteautomation.mango.db.tables.DataSources;
-import com.infiniteautomation.mango.db.tables.PointValues;
 import com.infiniteautomation.mango.monitor.MonitoredValues;
 import com.infiniteautomation.mango.monitor.ValueMonitor;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.DataType;
 import com.serotonin.m2m2.db.DatabaseProxy;
 import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.dataImage.AnnotatedIdPointValueTime;
 import com.serotonin.m2m2.rt.dataImage.IAnnotated;
+import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 import com.serotonin.m2m2.rt.dataImage.types.DataValue;
+import com.serotonin.m2m2.rt.event.type.DuplicateHandling;
+import com.serotonin.m2m2.rt.event.type.SystemEventType;
 import com.serotonin.m2m2.rt.maint.work.WorkItem;
 import com.serotonin.m2m2.vo.DataPointVO;
 import com.serotonin.m2m2.vo.bean.PointHistoryCount;
 import com.serotonin.metrics.EventHistogram;
 import com.serotonin.timer.RejectedTaskReason;
-import com.serotonin.util.queue.ObjectQueue;
 
-public class PointValueDaoSQL extends BasicSQLPointValueDao {
+public class PointValueDaoSQL extends BasicSQLPointValueDao implements AutoCloseable {
 
     private final ConcurrentLinkedQueue<UnsavedPointValue> unsavedPointValues = new ConcurrentLinkedQueue<>();
 
     public static final String SYNC_INSERTS_SPEED_COUNTER_ID = "com.serotonin.m2m2.db.dao.PointValueDaoSQL.SYNC_INSERTS_SPEED_COUNTER";
     public static final String ASYNC_INSERTS_SPEED_COUNTER_ID = "com.serotonin.m2m2.db.dao.PointValueDaoSQL.ASYNC_INSERTS_SPEED_COUNTER";
+    public static final String SPILLED_VALUES_ID = "com.serotonin.m2m2.db.dao.PointValueDaoSQL.SPILLED_VALUES";
+    public static final String SPILL_LOG_SIZE_ID = "com.serotonin.m2m2.db.dao.PointValueDaoSQL.SPILL_LOG_SIZE";
+    public static final String SPILL_DROPPED_VALUES_ID = "com.serotonin.m2m2.db.dao.PointValueDaoSQL.SPILL_DROPPED_VALUES";
 
-    private static final int SPAWN_THRESHOLD = 10000;
-    private static final int MAX_INSTANCES = 5;
+    public static final String BATCH_WRITE_SIZE_ID = "com.serotonin.m2m2.db.dao.PointValueDaoSQL.BATCH_WRITE_SIZE";
+    public static final String BATCH_WRITE_WRITER_LIMIT_ID = "com.serotonin.m2m2.db.dao.PointValueDaoSQL.BATCH_WRITE_WRITER_LIMIT";
+    public static final String BATCH_WRITE_LATENCY_ID = "com.serotonin.m2m2.db.dao.PointValueDaoSQL.BATCH_WRITE_LATENCY";
+    public static final String BULK_LOADER_WRITE_SPEED_ID = "com.serotonin.m2m2.db.dao.PointValueDaoSQL.BULK_LOADER_WRITE_SPEED";
+    public static final String ANNOTATED_LOADER_WRITE_SPEED_ID = "com.serotonin.m2m2.db.dao.PointValueDaoSQL.ANNOTATED_LOADER_WRITE_SPEED";
 
     private static final List<Class<? extends RuntimeException>> RETRIED_EXCEPTIONS = List.of(
             RecoverableDataAccessException.class,
@@ -58,29 +73,55 @@ public class PointValueDaoSQL extends BasicSQLPointValueDao {
             TransientDataAccessResourceException.class,
             CannotGetJdbcConnectionException.class
     );
+    private static final long EMPTY_DRAIN_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
 
     private final EventHistogram syncCallsCounter = new EventHistogram(5000, 2);
     private final EventHistogram asyncCallsCounter = new EventHistogram(5000, 2);
     private final Meter writeMeter = new Meter();
+    private final Meter bulkLoaderMeter = new Meter();
+    private final Meter annotatedLoaderMeter = new Meter();
 
-    private final ObjectQueue<BatchWriteEntry> entries = new ObjectQueue<>();
+    private final BatchWriteQueue entries;
     private final CopyOnWriteArrayList<BatchWriteTask> instances = new CopyOnWriteArrayList<>();
+    // column buffers are reused by writer tasks
+    private final ConcurrentLinkedQueue<PointValueBatch> batchPool = new ConcurrentLinkedQueue<>();
 
     private final ValueMonitor<Integer> syncInsertsSpeedCounter;
     private final ValueMonitor<Integer> asyncInsertsSpeedCounter;
-    private volatile long queueSize = 0;
     private volatile int threadCount = 0;
-    private final int batchInsertSize;
+    private final BatchWriteController writeController;
     private final int chunkSize;
+    private final PointValueBulkLoader bulkLoader;
+    private final PointValueBulkLoader annotatedLoader;
+    private final @Nullable PointValueSpillLog spillLog;
+    private final long spillReplayDelay;
+    private final ScheduledExecutorService scheduledExecutor;
+    private final ExecutorService executor;
+    private final Object replayMutex = new Object();
+    // guarded by replayMutex
+    private @Nullable Future<?> replayFuture;
+    // held while a spilled batch is written so that the spill log is not closed part way through
+    private final Object replayBatchMutex = new Object();
+    private volatile boolean closed;
+    private final boolean groupCommit;
+    private final ReentrantLock groupCommitLock = new ReentrantLock();
+    private final ConcurrentLinkedQueue<SyncWrite> pendingSyncWrites = new ConcurrentLinkedQueue<>();
+    private final long highWatermark;
+    private final long lowWatermark;
+    private final AtomicBoolean backpressure = new AtomicBoolean();
+    private final SystemEventType backpressureEventType = new SystemEventType(SystemEventType.TYPE_POINT_VALUE_BACKPRESSURE, 0, DuplicateHandling.IGNORE);
 
     private final SystemSettingsDao systemSettingsDao;
     private final DataPointDao dataPointDao;
 
     public PointValueDaoSQL(DatabaseProxy databaseProxy, MonitoredValues monitoredValues,
-                            int chunkSize, SystemSettingsDao systemSettingsDao, DataPointDao dataPointDao) {
+                            int chunkSize, SystemSettingsDao systemSettingsDao, DataPointDao dataPointDao,
+                            ScheduledExecutorService scheduledExecutor, ExecutorService executor) {
         super(databaseProxy);
         this.chunkSize = chunkSize;
         this.systemSettingsDao = systemSettingsDao;
+        this.scheduledExecutor = scheduledExecutor;
+        this.executor = executor;
 
         this.syncInsertsSpeedCounter = monitoredValues.<Integer>create(SYNC_INSERTS_SPEED_COUNTER_ID)
                 .name(new TranslatableMessage("internal.monitor.SYNC_INSERTS_SPEED_COUNTER_ID"))
@@ -91,61 +132,222 @@ public class PointValueDaoSQL extends BasicSQLPointValueDao {
                 .value(0)
                 .build();
 
-        this.batchInsertSize = databaseProxy.batchSize();
+        int batchSize = databaseProxy.batchSize();
+        this.writeController = new BatchWriteController(
+                Common.envProps.getBoolean("db.batchWrite.adaptive", true),
+                Common.envProps.getInt("db.batchWrite.minBatchSize", Math.min(100, batchSize)),
+                batchSize,
+                Common.envProps.getInt("db.batchWrite.maxBatchSize", batchSize * 10),
+                Common.envProps.getInt("db.batchWrite.maxWriters", 5),
+                Common.envProps.getLong("db.batchWrite.targetLatency", 250),
+                TimeUnit.MILLISECONDS);
+        monitoredValues.<Integer>create(BATCH_WRITE_SIZE_ID)
+                .name(new TranslatableMessage("internal.monitor.BATCH_WRITE_SIZE"))
+                .supplier(writeController::getBatchSize)
+                .buildReadThrough();
+        monitoredValues.<Integer>create(BATCH_WRITE_WRITER_LIMIT_ID)
+                .name(new TranslatableMessage("internal.monitor.BATCH_WRITE_WRITER_LIMIT"))
+                .supplier(writeController::getWriterLimit)
+                .buildReadThrough();
+        monitoredValues.<Long>create(BATCH_WRITE_LATENCY_ID)
+                .name(new TranslatableMessage("internal.monitor.BATCH_WRITE_LATENCY"))
+                .supplier(writeController::getLastLatencyMillis)
+                .buildReadThrough();
+
+        this.bulkLoader = databaseProxy.createPointValueBulkLoader();
+        this.annotatedLoader = new AnnotatedPointValueLoader(databaseProxy);
+        log.info("Using {} to batch insert point values", bulkLoader.getName());
+        monitoredValues.<Double>create(BULK_LOADER_WRITE_SPEED_ID)
+                .name(new TranslatableMessage("internal.monitor.POINT_VALUE_LOADER_WRITE_SPEED", bulkLoader.getName()))
+                .supplier(bulkLoaderMeter::getOneMinuteRate)
+                .buildReadThrough();
+        monitoredValues.<Double>create(ANNOTATED_LOADER_WRITE_SPEED_ID)
+                .name(new TranslatableMessage("internal.monitor.POINT_VALUE_LOADER_WRITE_SPEED", annotatedLoader.getName()))
+                .supplier(annotatedLoaderMeter::getOneMinuteRate)
+                .buildReadThrough();
         this.dataPointDao = dataPointDao;
+
+        int stripes = Common.envProps.getInt("db.batchWrite.stripes", Runtime.getRuntime().availableProcessors());
+        int capacity = Common.envProps.getInt("db.batchWrite.ringBufferSize", 65_536);
+        this.entries = new BatchWriteQueue(stripes, capacity);
+        this.groupCommit = Common.envProps.getBoolean("db.syncWrite.groupCommit", true);
+        this.highWatermark = Common.envProps.getLong("db.batchWrite.backpressure.highWatermark", 500_000);
+        this.lowWatermark = Math.min(highWatermark, Common.envProps.getLong("db.batchWrite.backpressure.lowWatermark", 250_000));
+
+        if (Common.envProps.getBoolean("db.batchWrite.spill.enabled", true)) {
+            Path spillPath = Common.MA_DATA_PATH.resolve(Common.envProps.getString("db.batchWrite.spill.location", "databases/pointValueSpill.log"));
+            long spillMaxSize = Common.envProps.getLong("db.batchWrite.spill.maxSize", 64L * 1024 * 1024);
+            this.spillLog = openSpillLog(spillPath, spillMaxSize);
+        } else {
+            this.spillLog = null;
+        }
+        this.spillReplayDelay = Common.envProps.getLong("db.batchWrite.spill.replayDelay", 10_000);
+
+        if (spillLog != null) {
+            PointValueSpillLog spillLog = this.spillLog;
+            monitoredValues.<Long>create(SPILLED_VALUES_ID)
+                    .name(new TranslatableMessage("internal.monitor.SPILLED_VALUES"))
+                    .supplier(spillLog::getPendingValues)
+                    .buildReadThrough();
+            monitoredValues.<Long>create(SPILL_LOG_SIZE_ID)
+                    .name(new TranslatableMessage("internal.monitor.SPILL_LOG_SIZE"))
+                    .supplier(spillLog::getUsedBytes)
+                    .buildReadThrough();
+            monitoredValues.<Long>create(SPILL_DROPPED_VALUES_ID)
+                    .name(new TranslatableMessage("internal.monitor.SPILL_DROPPED_VALUES"))
+                    .supplier(spillLog::getDroppedValues)
+                    .buildReadThrough();
+
+            // values spilled before a restart
+            scheduleReplay(0);
+        }
+    }
+
+    /**
+     * Stop replaying spilled values and close the spill log
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (replayMutex) {
+            if (replayFuture != null) {
+                replayFuture.cancel(false);
+                replayFuture = null;
+            }
+        }
+        synchronized (replayBatchMutex) {
+            if (spillLog != null) {
+                spillLog.close();
+            }
+        }
+    }
+
+    private @Nullable PointValueSpillLog openSpillLog(Path path, long maxSize) {
+        PointValueSpillLog spillLog = new PointValueSpillLog(path, maxSize);
+        try {
+            spillLog.open();
+            return spillLog;
+        } catch (IOException | RuntimeException e) {
+            log.error("Unable to open point value spill log {}, point values which fail to save will be lost", path, e);
+            return null;
+        }
     }
 
     @Override
     public void savePointValues(Stream<? extends BatchPointValue<? extends PointValueTime>> pointValues, int chunkSize) {
         PointValueDao.validateNotNull(pointValues);
-        var stream = pointValues.map(v -> {
-            var point = v.getPoint();
-            var pointValue = v.getValue();
-            var dataType = pointValue.getValue().getDataType();
-
-            // can't batch save annotations or ALPHANUMERIC point values
-            if (pointValue instanceof IAnnotated || dataType == DataType.ALPHANUMERIC) {
-                savePointValueImpl(point, pointValue, false);
-                syncCallsCounter.hit();
-                syncInsertsSpeedCounter.setValue(syncCallsCounter.getEventCounts()[0] / 5);
-                return null;
-            }
 
-            return v;
-        }).filter(Objects::nonNull).map(v -> {
-            var point = v.getPoint();
+        PointValueBatch batch = new PointValueBatch(chunkSize());
+        pointValues.forEach(v -> {
             var pointValue = v.getValue();
-            var dataType = pointValue.getValue().getDataType();
-            double boundedValue = databaseProxy.applyBounds(pointValue.getDoubleValue());
-            return new BatchWriteEntry(point.getSeriesId(), dataType, boundedValue, pointValue.getTime());
+            DataValue value = pointValue.getValue();
+            if (value.hasDoubleRepresentation()) {
+                batch.add(v.getPoint().getSeriesId(), value.getDataType().getId(), databaseProxy.applyBounds(value.getDoubleValue()),
+                        pointValue.getTime(), null, getAnnotation(pointValue));
+            } else {
+                batch.add(v.getPoint().getSeriesId(), value.getDataType().getId(), 0, pointValue.getTime(),
+                        value.getStringValue(), getAnnotation(pointValue));
+            }
+            if (batch.isFull()) {
+                writeSyncBatch(batch);
+            }
         });
+        if (!batch.isEmpty()) {
+            writeSyncBatch(batch);
+        }
+    }
 
-        ChunkingSpliterator.chunkStream(stream, chunkSize()).forEach(chunk -> {
-            int count = writeMultiple(chunk.stream());
-            syncCallsCounter.hitMultiple(count);
-            syncInsertsSpeedCounter.setValue(syncCallsCounter.getEventCounts()[0] / 5);
-        });
+    private void writeSyncBatch(PointValueBatch batch) {
+        int count = writeMultiple(batch);
+        batch.clear();
+        syncCallsCounter.hitMultiple(count);
+        syncInsertsSpeedCounter.setValue(syncCallsCounter.getEventCounts()[0] / 5);
     }
 
     @Override
     public PointValueTime savePointValueSync(DataPointVO vo, PointValueTime pointValue) {
         syncCallsCounter.hit();
         syncInsertsSpeedCounter.setValue(syncCallsCounter.getEventCounts()[0] / 5);
-        long id = savePointValueImpl(vo, pointValue, false);
 
-        PointValueTime savedPointValue;
+        SyncWrite write = new SyncWrite(vo, pointValue);
+        if (!groupCommit || TransactionSynchronizationManager.isActualTransactionActive()) {
+            // write directly, a value saved inside an existing transaction must be written as part of it
+            commitSyncWrites(List.of(write));
+            return write.getResult();
+        }
+
+        // Group commit, whichever thread holds the lock writes all values that are waiting in a single transaction.
+        // Threads which were waiting for the lock will usually find their value has already been written.
+        pendingSyncWrites.add(write);
+        groupCommitLock.lock();
+        try {
+            if (!write.done) {
+                List<SyncWrite> group = new ArrayList<>();
+                SyncWrite pending;
+                while ((pending = pendingSyncWrites.poll()) != null) {
+                    group.add(pending);
+                }
+                commitSyncWrites(group);
+            }
+        } finally {
+            groupCommitLock.unlock();
+        }
+        return write.getResult();
+    }
+
+    /**
+     * @return number of threads waiting to write their synchronous saves
+     */
+    int getSyncWriteQueueLength() {
+        return groupCommitLock.getQueueLength();
+    }
+
+    private void commitSyncWrites(List<SyncWrite> writes) {
         int retries = 5;
         while (true) {
             try {
-                savedPointValue = getPointValue(id);
+                if (writes.size() == 1) {
+                    insertSyncWrite(writes.get(0));
+                } else {
+                    doInTransaction(status -> {
+                        for (SyncWrite write : writes) {
+                            insertSyncWrite(write);
+                        }
+                    });
+                }
                 break;
             } catch (ConcurrencyFailureException e) {
-                if (retries <= 0)
-                    throw e;
+                if (retries <= 0) {
+                    // Still failed to insert after all of the retries. Store the data
+                    for (SyncWrite write : writes) {
+                        unsavedPointValues.add(new UnsavedPointValue(write.vo, write.pointValue));
+                        write.complete(null, null);
+                    }
+                    return;
+                }
                 retries--;
+            } catch (RuntimeException e) {
+                if (writes.size() == 1) {
+                    SyncWrite write = writes.get(0);
+                    write.complete(null, new RuntimeException("Error saving point value: dataType=" + write.dataType + ", dvalue=" + write.dvalue, e));
+                    return;
+                }
+                // write individually so that the error is only reported to the caller whose value failed
+                for (SyncWrite write : writes) {
+                    commitSyncWrites(List.of(write));
+                }
+                return;
             }
         }
-        return savedPointValue;
+
+        for (SyncWrite write : writes) {
+            write.complete(write.savedValue(), null);
+        }
+        writeUnsavedPointValues();
+    }
+
+    private void insertSyncWrite(SyncWrite write) {
+        savePointValueImpl(write.vo, write.dataType, write.dvalue, write.pointValue.getTime(), write.svalue, write.sourceMessage);
     }
 
     @Override
@@ -162,7 +364,7 @@ public class PointValueDaoSQL extends BasicSQLPointValueDao {
 
     @Override
     public long queueSize() {
-        return queueSize;
+        return entries.size();
     }
 
     @Override
@@ -170,6 +372,37 @@ public class PointValueDaoSQL extends BasicSQLPointValueDao {
         return threadCount;
     }
 
+    @Override
+    public boolean isBackpressureActive() {
+        return backpressure.get();
+    }
+
+    @Override
+    public boolean tryReserve(int count) {
+        return highWatermark <= 0 || !backpressure.get() && entries.size() + count <= highWatermark;
+    }
+
+    /**
+     * Raise/return the backpressure event when the queue size crosses the high/low watermarks
+     */
+    private void updateBackpressure(long queueSize) {
+        if (highWatermark <= 0) {
+            return;
+        }
+
+        if (queueSize > highWatermark) {
+            if (backpressure.compareAndSet(false, true)) {
+                log.warn("Point value write queue size {} exceeds high watermark of {}, data sources will skip polls until it drops below {}",
+                        queueSize, highWatermark, lowWatermark);
+                SystemEventType.raiseEvent(backpressureEventType, Common.timer.currentTimeMillis(), true,
+                        new TranslatableMessage("event.system.pointValueBackpressureMessage", queueSize, highWatermark));
+            }
+        } else if (queueSize < lowWatermark && backpressure.compareAndSet(true, false)) {
+            log.info("Point value write queue size {} is below low watermark of {}", queueSize, lowWatermark);
+            SystemEventType.returnToNormal(backpressureEventType, Common.timer.currentTimeMillis());
+        }
+    }
+
     @Override
     public boolean enablePerPointPurge() {
         return systemSettingsDao.getBooleanValue(SystemSettingsDao.ENABLE_POINT_DATA_PURGE_PER_POINT);
@@ -243,8 +476,8 @@ public class PointValueDaoSQL extends BasicSQLPointValueDao {
         // Apply database specific bounds on double values.
         dvalue = databaseProxy.applyBounds(dvalue);
 
-        if (async && svalue == null && sourceMessage == null) {
-            addBatchWriteEntry(new BatchWriteEntry(vo.getSeriesId(), dataType, dvalue, time));
+        if (async) {
+            addBatchWriteEntry(vo.getSeriesId(), dataType, dvalue, time, svalue, sourceMessage);
             return -1;
         }
 
@@ -262,7 +495,12 @@ public class PointValueDaoSQL extends BasicSQLPointValueDao {
         }
     }
 
-    private long savePointValueImpl(DataPointVO vo, DataType dataType, double dvalue, long time, String svalue, TranslatableMessage sourceMessage) {
+    /**
+     * Insert a single point value and its annotation row, package private so that tests can intercept the insert.
+     *
+     * @return the id of the inserted row
+     */
+    long savePointValueImpl(DataPointVO vo, DataType dataType, double dvalue, long time, String svalue, TranslatableMessage sourceMessage) {
         long id = this.create.insertInto(pv)
                 .set(pv.dataPointId, vo.getSeriesId())
                 .set(pv.dataType, dataType.getId())
@@ -294,6 +532,64 @@ public class PointValueDaoSQL extends BasicSQLPointValueDao {
         return id;
     }
 
+    /**
+     * A point value waiting to be written by {@link #savePointValueSync(DataPointVO, PointValueTime)}
+     */
+    private class SyncWrite {
+        private final DataPointVO vo;
+        private final PointValueTime pointValue;
+        private final DataType dataType;
+        private final double dvalue;
+        private final @Nullable String svalue;
+        private final @Nullable TranslatableMessage sourceMessage;
+
+        // guarded by groupCommitLock
+        private boolean done;
+        private @Nullable PointValueTime result;
+        private @Nullable RuntimeException error;
+
+        private SyncWrite(DataPointVO vo, PointValueTime pointValue) {
+            this.vo = vo;
+            this.pointValue = pointValue;
+
+            DataValue value = pointValue.getValue();
+            this.dataType = value.getDataType();
+            if (value.hasDoubleRepresentation()) {
+                // Apply database specific bounds on double values.
+                this.dvalue = databaseProxy.applyBounds(value.getDoubleValue());
+                this.svalue = null;
+            } else {
+                this.dvalue = 0;
+                this.svalue = value.getStringValue();
+            }
+            this.sourceMessage = getAnnotation(pointValue);
+        }
+
+        /**
+         * @return the value as it was stored, without reading it back from the database
+         */
+        private PointValueTime savedValue() {
+            DataValue value = createDataValue(dataType, dvalue, svalue);
+            if (sourceMessage != null) {
+                return new AnnotatedIdPointValueTime(vo.getSeriesId(), value, pointValue.getTime(), sourceMessage);
+            }
+            return new IdPointValueTime(vo.getSeriesId(), value, pointValue.getTime());
+        }
+
+        private void complete(@Nullable PointValueTime result, @Nullable RuntimeException error) {
+            this.result = result;
+            this.error = error;
+            this.done = true;
+        }
+
+        private @Nullable PointValueTime getResult() {
+            if (error != null) {
+                throw error;
+            }
+            return result;
+        }
+    }
+
     /**
      * Holds point value data that could not be saved to the database due to concurrency errors.
      *
@@ -309,28 +605,18 @@ public class PointValueDaoSQL extends BasicSQLPointValueDao {
         }
     }
 
-    private static class BatchWriteEntry {
-        private final int seriesId;
-        private final DataType dataType;
-        private final double dvalue;
-        private final long time;
-
-        public BatchWriteEntry(int seriesId, DataType dataType, double dvalue, long time) {
-            this.seriesId = seriesId;
-            this.dataType = dataType;
-            this.dvalue = dvalue;
-            this.time = time;
+    private void addBatchWriteEntry(int seriesId, DataType dataType, double dvalue, long time,
+                                    @Nullable String svalue, @Nullable TranslatableMessage sourceMessage) {
+        long queueSize = entries.add(seriesId, dataType, dvalue, time, svalue, sourceMessage);
+        if (!backpressure.get()) {
+            updateBackpressure(queueSize);
         }
-    }
-
-    private void addBatchWriteEntry(BatchWriteEntry e) {
-        synchronized (entries) {
-            entries.push(e);
-            queueSize = entries.size();
 
-            try {
-                if (entries.size() > instances.size() * SPAWN_THRESHOLD) {
-                    if (instances.size() < MAX_INSTANCES) {
+        // only take the lock when we might need to spawn a new writer
+        if (shouldSpawnWriter(queueSize)) {
+            synchronized (instances) {
+                if (shouldSpawnWriter(entries.size())) {
+                    try {
                         BatchWriteTask bwb = new BatchWriteTask();
                         instances.add(bwb);
                         try {
@@ -339,36 +625,79 @@ public class PointValueDaoSQL extends BasicSQLPointValueDao {
                             instances.remove(bwb);
                             throw ree;
                         }
+                    } finally {
+                        threadCount = instances.size();
                     }
                 }
-            } finally {
-                threadCount = instances.size();
             }
         }
     }
 
+    private boolean shouldSpawnWriter(long queueSize) {
+        int running = instances.size();
+        return running < writeController.getWriterLimit() && queueSize > (long) running * writeController.getSpawnThreshold();
+    }
+
     private class BatchWriteTask implements WorkItem {
 
         @Override
         public void execute() {
+            PointValueBatch batch = batchPool.poll();
+            if (batch == null) {
+                batch = new PointValueBatch(writeController.getMaxBatchSize());
+            }
+
             try {
-                BatchWriteEntry[] inserts;
                 while (true) {
-                    synchronized (entries) {
-                        if (entries.size() == 0)
-                            break;
+                    if (instances.size() > writeController.getWriterLimit()) {
+                        // the controller has reduced the number of writers
+                        synchronized (instances) {
+                            if (instances.size() > writeController.getWriterLimit()) {
+                                instances.remove(this);
+                                threadCount = instances.size();
+                                break;
+                            }
+                        }
+                    }
+
+                    entries.drain(batch, writeController.getBatchSize());
+
+                    if (batch.isEmpty()) {
+                        // Exit, unless a producer added a value after we found the queue empty and did not spawn
+                        // a new writer because it saw this one as still running
+                        synchronized (instances) {
+                            instances.remove(this);
+                            threadCount = instances.size();
+                            if (entries.isEmpty() || instances.size() >= writeController.getWriterLimit()) {
+                                break;
+                            }
+                            instances.add(this);
+                            threadCount = instances.size();
+                        }
+                        // values are still being published or drained by another writer, back off rather than spinning
+                        LockSupport.parkNanos(EMPTY_DRAIN_BACKOFF_NANOS);
+                        continue;
+                    }
 
-                        inserts = new BatchWriteEntry[Math.min(entries.size(), batchInsertSize)];
-                        entries.pop(inserts);
-                        queueSize = entries.size();
+                    long start = System.nanoTime();
+                    int count = writeMultiple(batch);
+                    long queueSize = entries.size();
+                    if (count > 0) {
+                        long end = System.nanoTime();
+                        writeController.onWrite(count, end - start, queueSize, end);
+                    }
+                    if (backpressure.get()) {
+                        updateBackpressure(queueSize);
                     }
-                    // Create the sql and parameters
-                    int count = writeMultiple(Arrays.stream(inserts));
                     writeMeter.mark(count);
+                    batch.clear();
                 }
             } finally {
-                instances.remove(this);
-                threadCount = instances.size();
+                batch.clear();
+                batchPool.offer(batch);
+                if (instances.remove(this)) {
+                    threadCount = instances.size();
+                }
             }
         }
 
@@ -399,30 +728,20 @@ public class PointValueDaoSQL extends BasicSQLPointValueDao {
         }
     }
 
-    private int writeMultiple(Stream<BatchWriteEntry> entryStream) {
-        PointValues pv = PointValues.POINT_VALUES;
-        var insert = create.insertInto(pv)
-                .columns(pv.dataPointId, pv.dataType, pv.pointValue, pv.ts);
-
-        MutableInt count = new MutableInt();
-        entryStream.forEach(entry -> {
-            insert.values(entry.seriesId, entry.dataType.getId(), entry.dvalue, entry.time);
-            count.incrementAndGet();
-        });
-        int written = 0;
+    private int writeMultiple(PointValueBatch batch) {
+        int count = batch.size();
 
         // Insert the data
         int retries = 10;
         while (true) {
             try {
-                insert.execute();
-                written = count.intValue();
-                break;
+                return load(batch);
             } catch (RuntimeException e) {
                 if (RETRIED_EXCEPTIONS.contains(e.getClass())) {
+                    writeController.onFailure(System.nanoTime());
                     if (retries <= 0) {
-                        log.error("Concurrency failure saving {} point values after 10 tries. Data lost.", count.intValue());
-                        break;
+                        spill(batch, e);
+                        return 0;
                     }
 
                     int wait = (10 - retries) * 100;
@@ -438,11 +757,128 @@ public class PointValueDaoSQL extends BasicSQLPointValueDao {
 
                     retries--;
                 } else {
-                    log.error("Error saving {} point values. Data lost.", count.intValue(), e);
-                    break;
+                    log.error("Error saving {} point values using {}. Data lost.", count, loaderFor(batch).getName(), e);
+                    return 0;
                 }
             }
         }
+    }
+
+    /**
+     * Insert the batch, marking the meter for the loader used so that the throughput of each can be compared
+     */
+    private int load(PointValueBatch batch) {
+        int written;
+        if (batch.hasAnnotations()) {
+            written = annotatedLoader.load(batch);
+            annotatedLoaderMeter.mark(written);
+        } else {
+            written = bulkLoader.load(batch);
+            bulkLoaderMeter.mark(written);
+        }
         return written;
     }
+
+    /**
+     * Batches containing alphanumeric or annotated values also require rows in the annotations table
+     */
+    private PointValueBulkLoader loaderFor(PointValueBatch batch) {
+        return batch.hasAnnotations() ? annotatedLoader : bulkLoader;
+    }
+
+    /**
+     * Store a batch that could not be written in the spill log so that it can be written later
+     */
+    private void spill(PointValueBatch batch, RuntimeException cause) {
+        if (spillLog != null) {
+            try {
+                if (spillLog.append(batch)) {
+                    log.warn("Concurrency failure saving {} point values after 10 tries, values were spilled to {}",
+                            batch.size(), spillLog.getPath(), cause);
+                    scheduleReplay(spillReplayDelay);
+                    return;
+                }
+                log.error("Point value spill log {} is full or closed", spillLog.getPath());
+            } catch (IOException | RuntimeException e) {
+                log.error("Failed to write to point value spill log {}", spillLog.getPath(), e);
+            }
+        }
+        log.error("Concurrency failure saving {} point values after 10 tries. Data lost.", batch.size(), cause);
+    }
+
+    /**
+     * Schedule a task to write the values in the spill log back into the database, unless one is already scheduled
+     */
+    private void scheduleReplay(long delay) {
+        if (spillLog == null || spillLog.isEmpty() || closed) {
+            return;
+        }
+        synchronized (replayMutex) {
+            if (closed || replayFuture != null) {
+                return;
+            }
+            try {
+                replayFuture = scheduledExecutor.schedule(() -> {
+                    try {
+                        executor.execute(this::replaySpilledValues);
+                    } catch (RejectedExecutionException e) {
+                        synchronized (replayMutex) {
+                            replayFuture = null;
+                        }
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                log.warn("Unable to schedule replay of spilled point values from {}", spillLog.getPath(), e);
+            }
+        }
+    }
+
+    /**
+     * Write values from the spill log back into the database on a background thread. Stops at the first failure and
+     * is scheduled again after db.batchWrite.spill.replayDelay while the log contains values.
+     */
+    private void replaySpilledValues() {
+        PointValueSpillLog spillLog = this.spillLog;
+        if (spillLog == null) {
+            return;
+        }
+
+        long delay = 0;
+        long replayed = 0;
+        try {
+            while (true) {
+                // the log is not closed while a batch is being replayed, otherwise it could be replayed again after a restart
+                synchronized (replayBatchMutex) {
+                    PointValueBatch batch = closed ? null : spillLog.peek();
+                    if (batch == null) {
+                        break;
+                    }
+                    try {
+                        writeMeter.mark(load(batch));
+                    } catch (RuntimeException e) {
+                        if (RETRIED_EXCEPTIONS.contains(e.getClass())) {
+                            // database is unavailable again, try again later
+                            delay = spillReplayDelay;
+                            return;
+                        }
+                        log.error("Error replaying {} spilled point values using {}. Data lost.", batch.size(), loaderFor(batch).getName(), e);
+                    }
+                    spillLog.remove();
+                    replayed += batch.size();
+                }
+            }
+            if (replayed > 0 && !closed) {
+                log.info("Finished writing {} spilled point values from {}", replayed, spillLog.getPath());
+            }
+        } catch (RuntimeException e) {
+            log.error("Error replaying spilled point values from {}", spillLog.getPath(), e);
+            delay = spillReplayDelay;
+        } finally {
+            synchronized (replayMutex) {
+                replayFuture = null;
+            }
+            // values may have been spilled while replaying
+            scheduleReplay(delay);
+        }
+    }
 }
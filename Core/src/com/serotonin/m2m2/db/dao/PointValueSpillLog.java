@@ -0,0 +1,428 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+
+/**
+ * Memory mapped circular log of point value batches which could not be written to the database. Batches are
+ * appended when the database is unavailable and are replayed (oldest first) once writes succeed again, the log
+ * survives a restart of Mango.
+ *
+ * <p>File layout is a header (magic, read position, write position) followed by records of
+ * (length, count, count x (series id, data type id, value, timestamp, text value, annotation)), the text value and
+ * the serialized annotation are written as a UTF-8 byte length (-1 for null) followed by the bytes. The write position is only updated once a record has
+ * been completely written so a partially written record is ignored after a crash. A record which does not fit before
+ * the end of the file is written at the start of the file if the oldest records have been replayed, a wrap marker
+ * is left in place of its length. Batches which do not fit in the free space are rejected.</p>
+ *
+ * <p>An existing file is opened with its own size, if the maximum size has changed the file is recreated with the new
+ * size once all of its values have been replayed.</p>
+ */
+public class PointValueSpillLog implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PointValueSpillLog.class);
+
+    private static final int MAGIC = 0x4d505653;
+    private static final int READ_POSITION_OFFSET = 4;
+    private static final int WRITE_POSITION_OFFSET = 8;
+    static final int HEADER_LENGTH = 12;
+    static final int RECORD_HEADER_LENGTH = 4 + 4;
+    /**
+     * Length of a row without a text value or annotation
+     */
+    static final int ROW_LENGTH = 4 + 4 + 8 + 8 + 4 + 4;
+    /**
+     * Written in place of a record length when the next record is at the start of the file
+     */
+    private static final int WRAP_MARKER = -1;
+
+    private final Path path;
+    private final int maxSize;
+    private final AtomicLong droppedValues = new AtomicLong();
+
+    private @Nullable MappedByteBuffer buffer;
+    private volatile int capacity;
+    private volatile int readPosition = HEADER_LENGTH;
+    private volatile int writePosition = HEADER_LENGTH;
+    private volatile long pendingValues;
+    private boolean opened;
+    private boolean closed;
+
+    /**
+     * @param path location of the log file, it is created when the first batch is spilled
+     * @param maxSize maximum size of the log file in bytes
+     */
+    public PointValueSpillLog(Path path, long maxSize) {
+        if (maxSize <= HEADER_LENGTH + RECORD_HEADER_LENGTH + ROW_LENGTH) {
+            throw new IllegalArgumentException("maxSize is too small");
+        }
+        this.path = path;
+        this.maxSize = (int) Math.min(maxSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Open an existing log file so that any values spilled before a restart can be replayed.
+     */
+    public synchronized void open() throws IOException {
+        if (opened) {
+            return;
+        }
+        opened = true;
+
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        long fileSize = Files.size(path);
+        MappedByteBuffer existing = fileSize < HEADER_LENGTH ? null : map(fileSize);
+        int read = existing == null ? 0 : existing.getInt(READ_POSITION_OFFSET);
+        int write = existing == null ? 0 : existing.getInt(WRITE_POSITION_OFFSET);
+        long values = -1;
+        if (existing != null && existing.getInt(0) == MAGIC && read >= HEADER_LENGTH && read <= existing.capacity()
+                && write >= HEADER_LENGTH && write <= existing.capacity()) {
+            values = countValues(existing, read, write);
+        }
+
+        if (values < 0) {
+            Path corrupt = path.resolveSibling(path.getFileName() + ".corrupt");
+            LOG.error("Point value spill log {} is corrupt, moving it to {}", path, corrupt);
+            if (existing != null) {
+                unmap(existing);
+            }
+            Files.move(path, corrupt, StandardCopyOption.REPLACE_EXISTING);
+            return;
+        }
+
+        if (values == 0) {
+            // nothing to replay, the file is created again when needed, with the new size if it has changed
+            unmap(existing);
+            Files.delete(path);
+            return;
+        }
+
+        this.buffer = existing;
+        this.capacity = existing.capacity();
+        this.readPosition = read;
+        this.writePosition = write;
+        this.pendingValues = values;
+        LOG.warn("Point value spill log {} contains {} values which will be written once the database is available", path, pendingValues);
+        if (capacity != maxSize) {
+            LOG.info("Point value spill log {} will be resized from {} to {} bytes once its values have been written", path, capacity, maxSize);
+        }
+    }
+
+    /**
+     * Append a batch to the log.
+     *
+     * @return true if the batch was written, false if the log is full or closed
+     */
+    public synchronized boolean append(PointValueBatch batch) throws IOException {
+        int size = batch.size();
+        if (size == 0) {
+            return true;
+        }
+        if (closed) {
+            droppedValues.addAndGet(size);
+            return false;
+        }
+
+        byte[][] svalues = null;
+        byte[][] sourceMessages = null;
+        int length = RECORD_HEADER_LENGTH + size * ROW_LENGTH;
+        if (batch.hasAnnotations()) {
+            svalues = new byte[size][];
+            sourceMessages = new byte[size][];
+            for (int i = 0; i < size; i++) {
+                svalues[i] = encode(batch.getStringValue(i));
+                sourceMessages[i] = encode(BaseDao.writeTranslatableMessage(batch.getSourceMessage(i)));
+                length += (svalues[i] == null ? 0 : svalues[i].length) + (sourceMessages[i] == null ? 0 : sourceMessages[i].length);
+            }
+        }
+
+        MappedByteBuffer buffer = ensureMapped();
+        int read = readPosition;
+        int write = writePosition;
+        int position;
+        boolean wrapped = false;
+        if (write >= read) {
+            if ((long) write + length <= capacity) {
+                position = write;
+            } else if ((long) HEADER_LENGTH + length < read) {
+                // wrap around to the space freed at the start of the file
+                position = HEADER_LENGTH;
+                wrapped = true;
+            } else {
+                droppedValues.addAndGet(size);
+                return false;
+            }
+        } else if ((long) write + length < read) {
+            position = write;
+        } else {
+            droppedValues.addAndGet(size);
+            return false;
+        }
+
+        buffer.putInt(position, length);
+        buffer.putInt(position + 4, size);
+        position += RECORD_HEADER_LENGTH;
+        for (int i = 0; i < size; i++) {
+            buffer.putInt(position, batch.getSeriesId(i));
+            buffer.putInt(position + 4, batch.getDataTypeId(i));
+            buffer.putDouble(position + 8, batch.getValue(i));
+            buffer.putLong(position + 16, batch.getTime(i));
+            position += 24;
+            position = putBytes(buffer, position, svalues == null ? null : svalues[i]);
+            position = putBytes(buffer, position, sourceMessages == null ? null : sourceMessages[i]);
+        }
+        if (wrapped && capacity - write >= RECORD_HEADER_LENGTH) {
+            buffer.putInt(write, WRAP_MARKER);
+        }
+        buffer.force();
+
+        // commit the record
+        buffer.putInt(WRITE_POSITION_OFFSET, position);
+        buffer.force();
+        this.writePosition = position;
+        this.pendingValues += size;
+        return true;
+    }
+
+    /**
+     * @return the oldest batch in the log without removing it, or null if the log is empty
+     */
+    public synchronized @Nullable PointValueBatch peek() {
+        MappedByteBuffer buffer = this.buffer;
+        if (buffer == null || readPosition == writePosition) {
+            return null;
+        }
+
+        int position = recordStart(buffer, readPosition, writePosition);
+        int size = buffer.getInt(position + 4);
+        position += RECORD_HEADER_LENGTH;
+        PointValueBatch batch = new PointValueBatch(size);
+        for (int i = 0; i < size; i++) {
+            int seriesId = buffer.getInt(position);
+            int dataTypeId = buffer.getInt(position + 4);
+            double value = buffer.getDouble(position + 8);
+            long time = buffer.getLong(position + 16);
+            position += 24;
+
+            String svalue = getString(buffer, position);
+            position += 4 + Math.max(0, buffer.getInt(position));
+            TranslatableMessage sourceMessage = BaseDao.readTranslatableMessage(getString(buffer, position));
+            position += 4 + Math.max(0, buffer.getInt(position));
+            batch.add(seriesId, dataTypeId, value, time, svalue, sourceMessage);
+        }
+        return batch;
+    }
+
+    /**
+     * Remove the oldest batch from the log, call after the batch returned from {@link #peek()} has been written.
+     */
+    public synchronized void remove() {
+        MappedByteBuffer buffer = this.buffer;
+        if (buffer == null || readPosition == writePosition) {
+            return;
+        }
+
+        int start = recordStart(buffer, readPosition, writePosition);
+        int size = buffer.getInt(start + 4);
+        int position = start + buffer.getInt(start);
+        this.pendingValues -= size;
+        if (position == writePosition) {
+            // empty, start again at the beginning of the file
+            if (capacity != maxSize) {
+                LOG.info("Resizing point value spill log {} from {} to {} bytes", path, capacity, maxSize);
+                release();
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    LOG.warn("Unable to delete point value spill log {} to resize it", path, e);
+                }
+                return;
+            }
+            position = HEADER_LENGTH;
+            buffer.putInt(WRITE_POSITION_OFFSET, position);
+            this.writePosition = position;
+        }
+        buffer.putInt(READ_POSITION_OFFSET, position);
+        buffer.force();
+        this.readPosition = position;
+    }
+
+    public boolean isEmpty() {
+        return readPosition == writePosition;
+    }
+
+    /**
+     * @return number of values waiting to be replayed
+     */
+    public long getPendingValues() {
+        return pendingValues;
+    }
+
+    /**
+     * @return number of bytes of the log in use
+     */
+    public long getUsedBytes() {
+        int read = readPosition;
+        int write = writePosition;
+        return write >= read ? write - read : (long) (capacity - read) + (write - HEADER_LENGTH);
+    }
+
+    /**
+     * @return number of values which could not be spilled because the log was full
+     */
+    public long getDroppedValues() {
+        return droppedValues.get();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Flush and unmap the log, batches appended after it is closed are rejected.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (buffer != null) {
+            buffer.force();
+            release();
+        }
+    }
+
+    private MappedByteBuffer ensureMapped() throws IOException {
+        if (buffer == null) {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            MappedByteBuffer created = map(maxSize);
+            created.putInt(READ_POSITION_OFFSET, HEADER_LENGTH);
+            created.putInt(WRITE_POSITION_OFFSET, HEADER_LENGTH);
+            created.putInt(0, MAGIC);
+            created.force();
+            this.buffer = created;
+            this.capacity = created.capacity();
+            this.readPosition = HEADER_LENGTH;
+            this.writePosition = HEADER_LENGTH;
+            this.pendingValues = 0;
+        }
+        return buffer;
+    }
+
+    private MappedByteBuffer map(long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the mapping remains valid after the channel is closed
+            return channel.map(MapMode.READ_WRITE, 0, Math.min(size, Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Unmap the buffer and reset the positions, the file is mapped again by the next append
+     */
+    private void release() {
+        MappedByteBuffer buffer = this.buffer;
+        this.buffer = null;
+        this.readPosition = HEADER_LENGTH;
+        this.writePosition = HEADER_LENGTH;
+        this.pendingValues = 0;
+        if (buffer != null) {
+            unmap(buffer);
+        }
+    }
+
+    /**
+     * @return the position of the record at the position, or the start of the file if the next record was wrapped
+     */
+    private static int recordStart(MappedByteBuffer buffer, int position, int write) {
+        if (position != write && (buffer.capacity() - position < RECORD_HEADER_LENGTH || buffer.getInt(position) == WRAP_MARKER)) {
+            return HEADER_LENGTH;
+        }
+        return position;
+    }
+
+    /**
+     * @return number of values in the records between the read and write positions, or -1 if the records are invalid
+     */
+    private static long countValues(MappedByteBuffer buffer, int read, int write) {
+        long count = 0;
+        int records = 0;
+        int position = read;
+        while (position != write) {
+            position = recordStart(buffer, position, write);
+            if (position == write) {
+                break;
+            }
+            int length = buffer.getInt(position);
+            if (length < RECORD_HEADER_LENGTH || (long) position + length > buffer.capacity() || ++records > buffer.capacity() / RECORD_HEADER_LENGTH) {
+                return -1;
+            }
+            count += buffer.getInt(position + 4);
+            position += length;
+        }
+        return count;
+    }
+
+    /**
+     * Release the mapping straight away rather than when the buffer is garbage collected, otherwise the file can
+     * not be deleted on Windows. The buffer must not be used afterwards.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(field.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // the mapping is released when the buffer is garbage collected
+        }
+    }
+
+    private static byte @Nullable [] encode(@Nullable String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int putBytes(MappedByteBuffer buffer, int position, byte @Nullable [] bytes) {
+        if (bytes == null) {
+            buffer.putInt(position, -1);
+            return position + 4;
+        }
+        buffer.putInt(position, bytes.length);
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + 4);
+        view.put(bytes);
+        return position + 4 + bytes.length;
+    }
+
+    private static @Nullable String getString(MappedByteBuffer buffer, int position) {
+        int length = buffer.getInt(position);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + 4);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -4,6 +4,9 @@
 
 package com.serotonin.m2m2.module.definitions.db;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+
 import org.springframework.beans.factory.annotation.Autowired;
 
 import com.infiniteautomation.mango.monitor.MonitoredValues;
@@ -25,18 +28,25 @@ public class DefaultPointValueDaoDefinition extends PointValueDaoDefinition {
     SystemSettingsDao systemSettingsDao;
     @Autowired
     DataPointDao dataPointDao;
+    @Autowired
+    ScheduledExecutorService scheduledExecutorService;
+    @Autowired
+    ExecutorService executorService;
 
-    PointValueDao pointValueDao;
+    PointValueDaoSQL pointValueDao;
 
     @Override
     public void initialize() {
         int chunkSize = env.getProperty("db.default.chunkSize", int.class, 16_384);
-        this.pointValueDao = new PointValueDaoSQL(databaseProxy, monitoredValues, chunkSize, systemSettingsDao, dataPointDao);
+        this.pointValueDao = new PointValueDaoSQL(databaseProxy, monitoredValues, chunkSize, systemSettingsDao, dataPointDao,
+                scheduledExecutorService, executorService);
     }
 
     @Override
     public void shutdown() {
-        // no-op
+        if (pointValueDao != null) {
+            pointValueDao.close();
+        }
     }
 
     @Override
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.rt;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import com.infiniteautomation.mango.permission.MangoPermission;
+import com.serotonin.m2m2.rt.event.AlarmLevels;
+import com.serotonin.m2m2.rt.event.EventInstance;
+import com.serotonin.m2m2.rt.event.UserEventLevelSummary;
+import com.serotonin.m2m2.rt.event.type.EventType.EventTypeNames;
+
+/**
+ * Counts of active events by alarm level and the latest event at each level, kept up to date as events are added to
+ * and removed from the active events. Summaries are partitioned by the read permission of the events, a summary for a
+ * user is a merge of the partitions they can read rather than a scan of every active event.
+ *
+ * <p>Not thread safe, access must be guarded by the caller.</p>
+ */
+class ActiveEventSummary {
+
+    private static final AlarmLevels[] LEVELS = AlarmLevels.values();
+
+    private final Map<MangoPermission, Partition> partitions = new HashMap<>();
+    private final int[] totals = new int[LEVELS.length];
+
+    public void add(EventInstance evt) {
+        partitions.computeIfAbsent(key(evt), k -> new Partition()).add(evt);
+        totals[evt.getAlarmLevel().ordinal()]++;
+    }
+
+    public void remove(EventInstance evt) {
+        MangoPermission key = key(evt);
+        Partition partition = partitions.get(key);
+        if (partition != null && partition.remove(evt)) {
+            totals[evt.getAlarmLevel().ordinal()]--;
+            if (partition.isEmpty()) {
+                partitions.remove(key);
+            }
+        }
+    }
+
+    public void clear() {
+        partitions.clear();
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = 0;
+        }
+    }
+
+    /**
+     * @return the highest value of the alarm levels of all active events, or 0 if there are none
+     */
+    public int getHighestAlarmLevel() {
+        int max = 0;
+        for (AlarmLevels level : LEVELS) {
+            if (totals[level.ordinal()] > 0 && level.value() > max) {
+                max = level.value();
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @param canRead tests if the user can read events with a read permission
+     * @return a summary for every alarm level except {@link AlarmLevels#IGNORE}, in alarm level order
+     */
+    public List<UserEventLevelSummary> getLevelSummaries(Predicate<MangoPermission> canRead) {
+        int[] counts = new int[LEVELS.length];
+        EventInstance[] latest = new EventInstance[LEVELS.length];
+        for (Map.Entry<MangoPermission, Partition> entry : partitions.entrySet()) {
+            if (!canRead.test(entry.getKey())) {
+                continue;
+            }
+            Partition partition = entry.getValue();
+            for (int i = 0; i < LEVELS.length; i++) {
+                counts[i] += partition.count(i);
+                EventInstance partitionLatest = partition.latest(i);
+                if (partitionLatest != null && (latest[i] == null ||
+                        latest[i].getActiveTimestamp() <= partitionLatest.getActiveTimestamp())) {
+                    latest[i] = partitionLatest;
+                }
+            }
+        }
+
+        List<UserEventLevelSummary> summaries = new ArrayList<>(LEVELS.length);
+        for (AlarmLevels level : LEVELS) {
+            if (level != AlarmLevels.IGNORE) {
+                summaries.add(new UserEventLevelSummary(level, counts[level.ordinal()], latest[level.ordinal()]));
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * @param canRead tests if the user can read events with a read permission
+     * @return count of active events for the data point by alarm level, levels with no events are not included
+     */
+    public Map<AlarmLevels, Integer> getDataPointCounts(int dataPointId, Predicate<MangoPermission> canRead) {
+        Map<AlarmLevels, Integer> result = new EnumMap<>(AlarmLevels.class);
+        for (Map.Entry<MangoPermission, Partition> entry : partitions.entrySet()) {
+            int[] counts = entry.getValue().dataPoints.get(dataPointId);
+            if (counts == null || !canRead.test(entry.getKey())) {
+                continue;
+            }
+            for (AlarmLevels level : LEVELS) {
+                if (counts[level.ordinal()] > 0) {
+                    result.merge(level, counts[level.ordinal()], Integer::sum);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static MangoPermission key(EventInstance evt) {
+        MangoPermission readPermission = evt.getReadPermission();
+        return readPermission == null ? MangoPermission.superadminOnly() : readPermission;
+    }
+
+    private static final class Partition {
+        private final List<Set<EventInstance>> byLevel = new ArrayList<>(LEVELS.length);
+        /**
+         * Latest event by alarm level, null if there are no events
+         */
+        private final EventInstance[] latest = new EventInstance[LEVELS.length];
+        private final Map<Integer, int[]> dataPoints = new HashMap<>();
+        private int size;
+
+        private Partition() {
+            for (int i = 0; i < LEVELS.length; i++) {
+                byLevel.add(new LinkedHashSet<>());
+            }
+        }
+
+        private void add(EventInstance evt) {
+            int level = evt.getAlarmLevel().ordinal();
+            if (!byLevel.get(level).add(evt)) {
+                return;
+            }
+            size++;
+            if (latest[level] == null || latest[level].getActiveTimestamp() <= evt.getActiveTimestamp()) {
+                latest[level] = evt;
+            }
+            if (EventTypeNames.DATA_POINT.equals(evt.getEventType().getEventType())) {
+                dataPoints.computeIfAbsent(evt.getEventType().getReferenceId1(), k -> new int[LEVELS.length])[level]++;
+            }
+        }
+
+        private boolean remove(EventInstance evt) {
+            int level = evt.getAlarmLevel().ordinal();
+            if (!byLevel.get(level).remove(evt)) {
+                return false;
+            }
+            size--;
+            if (latest[level] == evt) {
+                latest[level] = findLatest(byLevel.get(level));
+            }
+            if (EventTypeNames.DATA_POINT.equals(evt.getEventType().getEventType())) {
+                int dataPointId = evt.getEventType().getReferenceId1();
+                int[] counts = dataPoints.get(dataPointId);
+                if (counts != null && --counts[level] == 0 && isZero(counts)) {
+                    dataPoints.remove(dataPointId);
+                }
+            }
+            return true;
+        }
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        private int count(int level) {
+            return byLevel.get(level).size();
+        }
+
+        private EventInstance latest(int level) {
+            return latest[level];
+        }
+
+        private static EventInstance findLatest(Set<EventInstance> events) {
+            EventInstance result = null;
+            for (EventInstance evt : events) {
+                if (result == null || result.getActiveTimestamp() <= evt.getActiveTimestamp()) {
+                    result = evt;
+                }
+            }
+            return result;
+        }
+
+        private static boolean isZero(int[] counts) {
+            for (int count : counts) {
+                if (count != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
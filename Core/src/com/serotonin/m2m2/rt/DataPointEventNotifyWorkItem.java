@@ -84,6 +84,13 @@ public class DataPointEventNotifyWorkItem implements WorkItem {
         }
     }
 
+    /**
+     * @return XID of the data point the notification is for
+     */
+    public String getSourceXid() {
+        return sourceXid;
+    }
+
     @Override
     public int getPriority() {
         return WorkItem.PRIORITY_MEDIUM;
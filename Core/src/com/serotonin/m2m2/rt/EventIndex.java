@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.rt;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import com.serotonin.m2m2.rt.event.EventInstance;
+import com.serotonin.m2m2.rt.event.type.EventType;
+
+/**
+ * Set of event instances held by the {@link EventManagerImpl}, indexed by event type, id and the data point, data
+ * source and publisher that raised them. Lookups by any of these are O(1), or O(k) in the number of matching events,
+ * rather than a scan of every event. An expiring index also keeps events in order of their active timestamp so that
+ * expired events can be removed without a scan.
+ *
+ * <p>Not thread safe, access must be guarded by the caller.</p>
+ */
+class EventIndex {
+
+    private final Set<EventInstance> events = new LinkedHashSet<>();
+    private final Map<TypeKey, List<EventInstance>> byType = new HashMap<>();
+    private final Map<Integer, EventInstance> byId = new HashMap<>();
+    private final Map<Integer, Set<EventInstance>> byDataPoint = new HashMap<>();
+    private final Map<Integer, Set<EventInstance>> byDataSource = new HashMap<>();
+    private final Map<Integer, Set<EventInstance>> byPublisher = new HashMap<>();
+    /**
+     * Null if not expiring. May contain events that were already removed, these are skipped when they reach the head
+     * of the queue.
+     */
+    private final PriorityQueue<EventInstance> byActiveTimestamp;
+    /**
+     * Null if not summarized
+     */
+    private final ActiveEventSummary summary;
+
+    /**
+     * @param expiring support {@link #removeExpired(long)}
+     */
+    EventIndex(boolean expiring) {
+        this(expiring, null);
+    }
+
+    /**
+     * @param expiring support {@link #removeExpired(long)}
+     * @param summary updated as events are added and removed, may be null
+     */
+    EventIndex(boolean expiring, ActiveEventSummary summary) {
+        this.byActiveTimestamp = expiring ?
+                new PriorityQueue<>(Comparator.comparingLong(EventInstance::getActiveTimestamp)) : null;
+        this.summary = summary;
+    }
+
+    public void add(EventInstance evt) {
+        if (!events.add(evt)) {
+            return;
+        }
+        EventType type = evt.getEventType();
+        byType.computeIfAbsent(new TypeKey(type), k -> new ArrayList<>(1)).add(evt);
+        if (evt.getId() > 0) {
+            byId.put(evt.getId(), evt);
+        }
+        addReference(byDataPoint, type.getDataPointId(), evt);
+        addReference(byDataSource, type.getDataSourceId(), evt);
+        addReference(byPublisher, type.getPublisherId(), evt);
+        if (byActiveTimestamp != null) {
+            byActiveTimestamp.add(evt);
+        }
+        if (summary != null) {
+            summary.add(evt);
+        }
+    }
+
+    public boolean remove(EventInstance evt) {
+        if (!events.remove(evt)) {
+            return false;
+        }
+        EventType type = evt.getEventType();
+        TypeKey key = new TypeKey(type);
+        List<EventInstance> sameType = byType.get(key);
+        if (sameType != null) {
+            sameType.remove(evt);
+            if (sameType.isEmpty()) {
+                byType.remove(key);
+            }
+        }
+        byId.remove(evt.getId(), evt);
+        removeReference(byDataPoint, type.getDataPointId(), evt);
+        removeReference(byDataSource, type.getDataSourceId(), evt);
+        removeReference(byPublisher, type.getPublisherId(), evt);
+        if (summary != null) {
+            summary.remove(evt);
+        }
+        return true;
+    }
+
+    /**
+     * @return the first event with the given type, or null if there is none
+     */
+    public EventInstance get(EventType type) {
+        List<EventInstance> sameType = byType.get(new TypeKey(type));
+        if (sameType != null) {
+            for (EventInstance evt : sameType) {
+                if (evt.getEventType().equals(type)) {
+                    return evt;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return all events with the given type, in the order they were added
+     */
+    public List<EventInstance> getAll(EventType type) {
+        List<EventInstance> sameType = byType.get(new TypeKey(type));
+        if (sameType == null) {
+            return Collections.emptyList();
+        }
+        List<EventInstance> result = new ArrayList<>(sameType.size());
+        for (EventInstance evt : sameType) {
+            if (evt.getEventType().equals(type)) {
+                result.add(evt);
+            }
+        }
+        return result;
+    }
+
+    public EventInstance getById(int id) {
+        return byId.get(id);
+    }
+
+    /**
+     * Removes the first event with the given type.
+     * @return the removed event, or null if there is none
+     */
+    public EventInstance remove(EventType type) {
+        EventInstance evt = get(type);
+        if (evt != null) {
+            remove(evt);
+        }
+        return evt;
+    }
+
+    public List<EventInstance> removeForDataPoint(int dataPointId) {
+        return removeAll(byDataPoint.get(dataPointId));
+    }
+
+    public List<EventInstance> removeForDataPoints(Collection<Integer> dataPointIds) {
+        List<EventInstance> removed = new ArrayList<>();
+        for (Integer dataPointId : dataPointIds) {
+            removed.addAll(removeForDataPoint(dataPointId));
+        }
+        return removed;
+    }
+
+    public List<EventInstance> removeForDataSource(int dataSourceId) {
+        return removeAll(byDataSource.get(dataSourceId));
+    }
+
+    public List<EventInstance> removeForPublisher(int publisherId) {
+        return removeAll(byPublisher.get(publisherId));
+    }
+
+    /**
+     * Remove all events with an active timestamp before the cutoff, using the time order rather than a scan.
+     */
+    public void removeExpired(long cutoff) {
+        if (byActiveTimestamp == null) {
+            throw new IllegalStateException("Index is not expiring");
+        }
+        EventInstance head;
+        while ((head = byActiveTimestamp.peek()) != null && head.getActiveTimestamp() < cutoff) {
+            byActiveTimestamp.poll();
+            remove(head);
+        }
+    }
+
+    /**
+     * Scans every event, only for infrequent operations such as purges.
+     */
+    public List<EventInstance> removeIf(Predicate<EventInstance> filter) {
+        List<EventInstance> matched = new ArrayList<>();
+        for (EventInstance evt : events) {
+            if (filter.test(evt)) {
+                matched.add(evt);
+            }
+        }
+        return removeAll(matched);
+    }
+
+    public void clear() {
+        events.clear();
+        byType.clear();
+        byId.clear();
+        byDataPoint.clear();
+        byDataSource.clear();
+        byPublisher.clear();
+        if (byActiveTimestamp != null) {
+            byActiveTimestamp.clear();
+        }
+        if (summary != null) {
+            summary.clear();
+        }
+    }
+
+    /**
+     * @return unmodifiable view of all events in the order they were added
+     */
+    public Collection<EventInstance> values() {
+        return Collections.unmodifiableSet(events);
+    }
+
+    public int size() {
+        return events.size();
+    }
+
+    private List<EventInstance> removeAll(Collection<EventInstance> toRemove) {
+        if (toRemove == null || toRemove.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // copy as the collection may be one of the indexes
+        List<EventInstance> removed = new ArrayList<>(toRemove);
+        for (EventInstance evt : removed) {
+            remove(evt);
+        }
+        return removed;
+    }
+
+    private static void addReference(Map<Integer, Set<EventInstance>> index, int id, EventInstance evt) {
+        if (id != -1) {
+            index.computeIfAbsent(id, k -> new LinkedHashSet<>()).add(evt);
+        }
+    }
+
+    private static void removeReference(Map<Integer, Set<EventInstance>> index, int id, EventInstance evt) {
+        if (id != -1) {
+            Set<EventInstance> referenced = index.get(id);
+            if (referenced != null) {
+                referenced.remove(evt);
+                if (referenced.isEmpty()) {
+                    index.remove(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hash key made from fields that are the same for all equal event types, as not all event types implement
+     * hashCode. Reference id 2 is not used as some types do not compare it (e.g. the audit event id). Events with the
+     * same key are compared using equals.
+     */
+    private static final class TypeKey {
+        private final String type;
+        private final String subtype;
+        private final int referenceId1;
+
+        private TypeKey(EventType eventType) {
+            this.type = eventType.getEventType();
+            this.subtype = eventType.getEventSubtype();
+            this.referenceId1 = eventType.getReferenceId1();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            TypeKey typeKey = (TypeKey) o;
+            return referenceId1 == typeKey.referenceId1 &&
+                    Objects.equals(type, typeKey.type) && Objects.equals(subtype, typeKey.subtype);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, subtype, referenceId1);
+        }
+    }
+}
@@ -12,6 +12,7 @@ import com.serotonin.m2m2.module.EventManagerListenerDefinition;
 import com.serotonin.m2m2.rt.event.AlarmLevels;
 import com.serotonin.m2m2.rt.event.EventInstance;
 import com.serotonin.m2m2.rt.event.ReturnCause;
+import com.serotonin.m2m2.rt.event.UserEventLevelSummary;
 import com.serotonin.m2m2.rt.event.UserEventListener;
 import com.serotonin.m2m2.rt.event.type.EventType;
 import com.serotonin.m2m2.vo.User;
@@ -123,6 +124,17 @@ public interface EventManager extends ILifecycle {
      */
     List<EventInstance> getAllActiveUserEvents(PermissionHolder user);
 
+    /**
+     * Get the count of active events at each alarm level that a user can read, and the latest of each. Maintained as
+     * events are raised and returned to normal so does not copy the active events.
+     */
+    List<UserEventLevelSummary> getActiveSummary(PermissionHolder user);
+
+    /**
+     * Get the count of active events at each alarm level for a data point that a user can read
+     */
+    Map<AlarmLevels, Integer> getDataPointEventCounts(PermissionHolder user, int dataPointId);
+
     /**
      * To access all active events quickly
      */
@@ -8,14 +8,16 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
@@ -23,10 +25,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.event.EventListener;
 
+import com.infiniteautomation.mango.permission.MangoPermission;
 import com.infiniteautomation.mango.spring.events.DaoEvent;
 import com.infiniteautomation.mango.spring.service.EventHandlerService;
 import com.infiniteautomation.mango.spring.service.MailingListService;
 import com.infiniteautomation.mango.spring.service.PermissionService;
+import com.infiniteautomation.mango.spring.service.SystemPermissionService.SystemPermissionUpdated;
 import com.infiniteautomation.mango.spring.service.UsersService;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.db.dao.AuditEventDao;
@@ -36,6 +40,7 @@ import com.serotonin.m2m2.module.EventManagerListenerDefinition;
 import com.serotonin.m2m2.rt.event.AlarmLevels;
 import com.serotonin.m2m2.rt.event.EventInstance;
 import com.serotonin.m2m2.rt.event.ReturnCause;
+import com.serotonin.m2m2.rt.event.UserEventLevelSummary;
 import com.serotonin.m2m2.rt.event.UserEventListener;
 import com.serotonin.m2m2.rt.event.UserEventMulticaster;
 import com.serotonin.m2m2.rt.event.handlers.EmailHandlerRT;
@@ -46,11 +51,14 @@ import com.serotonin.m2m2.rt.event.type.EventType.EventTypeNames;
 import com.serotonin.m2m2.rt.event.type.SystemEventType;
 import com.serotonin.m2m2.rt.maint.work.WorkItem;
 import com.serotonin.m2m2.util.ExceptionListWrapper;
+import com.serotonin.m2m2.util.timeout.TimeoutClient;
+import com.serotonin.m2m2.util.timeout.TimeoutTask;
 import com.serotonin.m2m2.vo.User;
 import com.serotonin.m2m2.vo.comment.UserCommentVO;
 import com.serotonin.m2m2.vo.event.AbstractEventHandlerVO;
 import com.serotonin.m2m2.vo.mailingList.RecipientListEntryType;
 import com.serotonin.m2m2.vo.permission.PermissionHolder;
+import com.serotonin.m2m2.vo.role.RoleVO;
 import com.serotonin.timer.RejectedTaskReason;
 import com.serotonin.util.ILifecycleState;
 
@@ -61,12 +69,22 @@ public class EventManagerImpl implements EventManager {
     private final Logger log = LoggerFactory.getLogger(EventManagerImpl.class);
     private static final int RECENT_EVENT_PERIOD = 1000 * 60 * 10; // 10
     // minutes.
+    public static final String STORM_SUPPRESSED_MONITOR_ID = "com.serotonin.m2m2.rt.EventManagerImpl.EVENTS_STORM_SUPPRESSED";
 
     private final List<EventManagerListenerDefinition> listeners = new CopyOnWriteArrayList<>();
     private final ReadWriteLock activeEventsLock = new ReentrantReadWriteLock();
-    private final List<EventInstance> activeEvents = new ArrayList<>();
+    private final ActiveEventSummary activeSummary = new ActiveEventSummary();
+    private final EventIndex activeEvents = new EventIndex(false, activeSummary);
     private final ReadWriteLock recentEventsLock = new ReentrantReadWriteLock();
-    private final List<EventInstance> recentEvents = new ArrayList<>();
+    private final EventIndex recentEvents = new EventIndex(true);
+    private final EventRecipientIndex recipientIndex = new EventRecipientIndex(() -> usersService.getEnabledUsers());
+    /**
+     * Null if storm control is disabled
+     */
+    private EventStormControl stormControl;
+    private long stormSummaryPeriod;
+    private final AtomicBoolean stormSummaryScheduled = new AtomicBoolean();
+    private final Set<String> stormMonitoredTypes = ConcurrentHashMap.newKeySet();
 
     private EventDao eventDao;
     private UsersService usersService;
@@ -146,6 +164,9 @@ public class EventManagerImpl implements EventManager {
                 return;
         }
 
+        if (isStormSuppressed(type, nowTimestamp))
+            return;
+
         EventInstance evt = new EventInstance(type, time, rtnApplicable,
                 alarmLevel, message, context);
         evt.setReadPermission(type.getEventPermission(context, permissionService));
@@ -187,21 +208,19 @@ public class EventManagerImpl implements EventManager {
         List<Integer> userIdsToNotify = new ArrayList<>();
         UserEventListener multicaster = userEventMulticaster;
 
-        for (User user : usersService.getEnabledUsers()) {
+        for (User user : recipientIndex.getRecipients(type, permissionService)) {
             // Do not create an event for this user if the event type says the
             // user should be skipped.
             if (type.excludeUser(user))
                 continue;
 
-            if (type.hasPermission(user, permissionService)) {
-                // add email addresses for users which have been configured to receive events over a certain level
-                if (user.getReceiveAlarmEmails().value() > AlarmLevels.IGNORE.value() && alarmLevel.value() >= user.getReceiveAlarmEmails().value() && !StringUtils.isEmpty(user.getEmail()))
-                    emailUsers.add(user.getEmail());
+            // add email addresses for users which have been configured to receive events over a certain level
+            if (user.getReceiveAlarmEmails().value() > AlarmLevels.IGNORE.value() && alarmLevel.value() >= user.getReceiveAlarmEmails().value() && !StringUtils.isEmpty(user.getEmail()))
+                emailUsers.add(user.getEmail());
 
-                //Notify All User Event Listeners of the new event
-                if ((alarmLevel != AlarmLevels.DO_NOT_LOG) && (!evt.getEventType().getEventType().equals(EventTypeNames.AUDIT))) {
-                    userIdsToNotify.add(user.getId());
-                }
+            //Notify All User Event Listeners of the new event
+            if ((alarmLevel != AlarmLevels.DO_NOT_LOG) && (!evt.getEventType().getEventType().equals(EventTypeNames.AUDIT))) {
+                userIdsToNotify.add(user.getId());
             }
         }
 
@@ -285,19 +304,68 @@ public class EventManagerImpl implements EventManager {
         return false;
     }
 
+    /**
+     * Take a token from the storm control buckets, suppressed events are reported later by a summary event
+     */
+    private boolean isStormSuppressed(EventType type, long now) {
+        EventStormControl stormControl = this.stormControl;
+        if (stormControl == null || EventTypeNames.AUDIT.equals(type.getEventType()) ||
+                (type instanceof SystemEventType &&
+                        SystemEventType.TYPE_EVENT_STORM.equals(((SystemEventType) type).getSystemEventType()))) {
+            return false;
+        }
+        if (stormControl.tryAcquire(type, now)) {
+            return false;
+        }
+        if (stormSummaryScheduled.compareAndSet(false, true)) {
+            new TimeoutTask(stormSummaryPeriod, new TimeoutClient() {
+                @Override
+                public void scheduleTimeout(long fireTime) {
+                    stormSummaryScheduled.set(false);
+                    raiseStormSummaries(stormControl, fireTime);
+                }
+
+                @Override
+                public String getThreadName() {
+                    return "Event storm summary";
+                }
+
+                @Override
+                public void rejected(RejectedTaskReason reason) {
+                    stormSummaryScheduled.set(false);
+                    super.rejected(reason);
+                }
+            });
+        }
+        return true;
+    }
+
+    private void raiseStormSummaries(EventStormControl stormControl, long time) {
+        for (EventStormControl.Suppressed suppressed : stormControl.drainSuppressed(time)) {
+            String typeName = suppressed.getTypeName();
+            if (stormMonitoredTypes.add(typeName)) {
+                Common.MONITORED_VALUES.<Long>create(STORM_SUPPRESSED_MONITOR_ID + "_" + typeName)
+                        .name(new TranslatableMessage("internal.monitor.EVENTS_STORM_SUPPRESSED_TYPE", typeName))
+                        .supplier(() -> stormControl.getSuppressedCount(typeName))
+                        .buildReadThrough();
+            }
+            log.warn("Event storm control suppressed {} {} events from {} sources", suppressed.getCount(), typeName,
+                    suppressed.getSources());
+            SystemEventType.raiseEvent(new SystemEventType(SystemEventType.TYPE_EVENT_STORM), time, false,
+                    new TranslatableMessage("event.system.eventStormMessage", suppressed.getCount(), typeName,
+                            suppressed.getSources(), stormSummaryPeriod / 1000));
+        }
+    }
+
     private boolean isRecent(EventType type, TranslatableMessage message) {
         long cutoff = Common.timer.currentTimeMillis() - RECENT_EVENT_PERIOD;
 
         recentEventsLock.writeLock().lock();
         try{
-            for (int i = recentEvents.size() - 1; i >= 0; i--) {
-                EventInstance evt = recentEvents.get(i);
-                // This method also purges the list, so we need to check if the
-                // event instance has expired or not.
-                if (cutoff > evt.getActiveTimestamp())
-                    recentEvents.remove(i);
-                else if (evt.getEventType().equals(type)
-                        && evt.getMessage().equals(message))
+            // This method also purges expired events
+            recentEvents.removeExpired(cutoff);
+            for (EventInstance evt : recentEvents.getAll(type)) {
+                if (evt.getMessage().equals(message))
                     return true;
             }
         }finally{
@@ -337,7 +405,7 @@ public class EventManagerImpl implements EventManager {
                     );
         }
 
-        List<User> activeUsers = usersService.getEnabledUsers();
+        List<User> recipients = recipientIndex.getRecipients(type, permissionService);
         UserEventListener multicaster = userEventMulticaster;
 
         // Loop in case of multiples
@@ -346,16 +414,14 @@ public class EventManagerImpl implements EventManager {
             evt.returnToNormal(time, cause);
 
             List<Integer> userIdsToNotify = new ArrayList<>();
-            for (User user : activeUsers) {
-                // Do not create an event for this user if the event type says the
-                // user should be skipped.
-                if (type.excludeUser(user))
-                    continue;
+            if(evt.getAlarmLevel() != AlarmLevels.DO_NOT_LOG){
+                for (User user : recipients) {
+                    // Do not create an event for this user if the event type says the
+                    // user should be skipped.
+                    if (type.excludeUser(user))
+                        continue;
 
-                if(evt.getAlarmLevel() != AlarmLevels.DO_NOT_LOG){
-                    if (type.hasPermission(user, permissionService)) {
-                        userIdsToNotify.add(user.getId());
-                    }
+                    userIdsToNotify.add(user.getId());
                 }
             }
 
@@ -385,8 +451,6 @@ public class EventManagerImpl implements EventManager {
      *
      */
     protected void deactivateEvents(List<EventInstance> evts, long time, ReturnCause inactiveCause) {
-        List<User> activeUsers = usersService.getEnabledUsers();
-
         List<Integer> eventIds = new ArrayList<>();
         UserEventListener multicaster = userEventMulticaster;
 
@@ -397,15 +461,13 @@ public class EventManagerImpl implements EventManager {
             evt.returnToNormal(time, inactiveCause);
 
             List<Integer> userIdsToNotify = new ArrayList<>();
-            for (User user : activeUsers) {
+            for (User user : recipientIndex.getRecipients(evt.getEventType(), permissionService)) {
                 // Do not create an event for this user if the event type says the
                 // user should be skipped.
                 if (evt.getEventType().excludeUser(user))
                     continue;
 
-                if (evt.getEventType().hasPermission(user, permissionService)) {
-                    userIdsToNotify.add(user.getId());
-                }
+                userIdsToNotify.add(user.getId());
             }
 
             if(multicaster != null)
@@ -456,16 +518,14 @@ public class EventManagerImpl implements EventManager {
         List<Integer> userIdsToNotify = new ArrayList<>();
         UserEventListener multicaster = userEventMulticaster;
 
-        for (User user : usersService.getEnabledUsers()) {
+        for (User user : recipientIndex.getRecipients(evt.getEventType(), permissionService)) {
             // Do not create an event for this user if the event type says the
             // user should be skipped.
             if (evt.getEventType().excludeUser(user))
                 continue;
 
-            if (evt.getEventType().hasPermission(user, permissionService)) {
-                //Notify All User Event Listeners of the new event
-                userIdsToNotify.add(user.getId());
-            }
+            //Notify All User Event Listeners of the new event
+            userIdsToNotify.add(user.getId());
         }
 
         if(multicaster != null)
@@ -618,17 +678,10 @@ public class EventManagerImpl implements EventManager {
     @Override
     public void cancelEventsForDataPoint(int dataPointId) {
 
-        List<EventInstance> dataPointEvents = new ArrayList<>();
+        List<EventInstance> dataPointEvents;
         activeEventsLock.writeLock().lock();
         try{
-            ListIterator<EventInstance> it = activeEvents.listIterator();
-            while(it.hasNext()){
-                EventInstance e = it.next();
-                if (e.getEventType().getDataPointId() == dataPointId){
-                    it.remove();
-                    dataPointEvents.add(e);
-                }
-            }
+            dataPointEvents = activeEvents.removeForDataPoint(dataPointId);
         }finally{
             activeEventsLock.writeLock().unlock();
         }
@@ -637,7 +690,7 @@ public class EventManagerImpl implements EventManager {
 
         recentEventsLock.writeLock().lock();
         try{
-            recentEvents.removeIf(e -> e.getEventType().getDataPointId() == dataPointId);
+            recentEvents.removeForDataPoint(dataPointId);
         }finally{
             recentEventsLock.writeLock().unlock();
         }
@@ -645,17 +698,10 @@ public class EventManagerImpl implements EventManager {
 
     @Override
     public void cancelEventsForDataPoints(Set<Integer> pointIds) {
-        List<EventInstance> dataPointEvents = new ArrayList<>();
+        List<EventInstance> dataPointEvents;
         activeEventsLock.writeLock().lock();
         try{
-            ListIterator<EventInstance> it = activeEvents.listIterator();
-            while(it.hasNext()){
-                EventInstance e = it.next();
-                if(pointIds.contains(e.getEventType().getDataPointId())) {
-                    it.remove();
-                    dataPointEvents.add(e);
-                }
-            }
+            dataPointEvents = activeEvents.removeForDataPoints(pointIds);
         }finally{
             activeEventsLock.writeLock().unlock();
         }
@@ -664,7 +710,7 @@ public class EventManagerImpl implements EventManager {
 
         recentEventsLock.writeLock().lock();
         try{
-            recentEvents.removeIf(e -> pointIds.contains(e.getEventType().getDataPointId()));
+            recentEvents.removeForDataPoints(pointIds);
         }finally{
             recentEventsLock.writeLock().unlock();
         }
@@ -676,17 +722,10 @@ public class EventManagerImpl implements EventManager {
     @Override
     public void cancelEventsForDataSource(int dataSourceId) {
 
-        List<EventInstance> dataSourceEvents = new ArrayList<>();
+        List<EventInstance> dataSourceEvents;
         activeEventsLock.writeLock().lock();
         try{
-            ListIterator<EventInstance> it = activeEvents.listIterator();
-            while(it.hasNext()){
-                EventInstance e = it.next();
-                if(e.getEventType().getDataSourceId() == dataSourceId){
-                    it.remove();
-                    dataSourceEvents.add(e);
-                }
-            }
+            dataSourceEvents = activeEvents.removeForDataSource(dataSourceId);
         }finally{
             activeEventsLock.writeLock().unlock();
         }
@@ -695,7 +734,7 @@ public class EventManagerImpl implements EventManager {
 
         recentEventsLock.writeLock().lock();
         try{
-            recentEvents.removeIf(e -> e.getEventType().getDataSourceId() == dataSourceId);
+            recentEvents.removeForDataSource(dataSourceId);
         }finally{
             recentEventsLock.writeLock().unlock();
         }
@@ -707,17 +746,10 @@ public class EventManagerImpl implements EventManager {
     @Override
     public void cancelEventsForPublisher(int publisherId) {
 
-        List<EventInstance> publisherEvents = new ArrayList<>();
+        List<EventInstance> publisherEvents;
         activeEventsLock.writeLock().lock();
         try{
-            ListIterator<EventInstance> it = activeEvents.listIterator();
-            while(it.hasNext()){
-                EventInstance e = it.next();
-                if(e.getEventType().getPublisherId() == publisherId){
-                    it.remove();
-                    publisherEvents.add(e);
-                }
-            }
+            publisherEvents = activeEvents.removeForPublisher(publisherId);
         }finally{
             activeEventsLock.writeLock().unlock();
         }
@@ -726,7 +758,7 @@ public class EventManagerImpl implements EventManager {
 
         recentEventsLock.writeLock().lock();
         try{
-            recentEvents.removeIf(e -> e.getEventType().getPublisherId() == publisherId);
+            recentEvents.removeForPublisher(publisherId);
         }finally{
             recentEventsLock.writeLock().unlock();
         }
@@ -734,19 +766,14 @@ public class EventManagerImpl implements EventManager {
 
     private void resetHighestAlarmLevel(long time) {
 
-        int max = 0;
+        int max;
         activeEventsLock.readLock().lock();
         try{
-            for (EventInstance e : activeEvents) {
-                if (e.getAlarmLevel().value() > max)
-                    max = e.getAlarmLevel().value();
-            }
+            max = activeSummary.getHighestAlarmLevel();
         }finally{
             activeEventsLock.readLock().unlock();
         }
 
-
-
         if (max > highestActiveAlarmLevel) {
             int oldValue = highestActiveAlarmLevel;
             highestActiveAlarmLevel = max;
@@ -794,10 +821,26 @@ public class EventManagerImpl implements EventManager {
         auditEventDao = Common.getBean(AuditEventDao.class);
         eventHandlerService = Common.getBean(EventHandlerService.class);
 
+        if (Common.envProps.getBoolean("events.stormControl.enabled", false)) {
+            EventStormControl stormControl = new EventStormControl(
+                    Common.envProps.getDouble("events.stormControl.typeRate", 50),
+                    Common.envProps.getInt("events.stormControl.typeBurst", 500),
+                    Common.envProps.getDouble("events.stormControl.sourceRate", 5),
+                    Common.envProps.getInt("events.stormControl.sourceBurst", 50));
+            this.stormSummaryPeriod = Math.max(1, Common.envProps.getLong("events.stormControl.summaryPeriod", 60)) * 1000;
+            Common.MONITORED_VALUES.<Long>create(STORM_SUPPRESSED_MONITOR_ID)
+                    .name(new TranslatableMessage("internal.monitor.EVENTS_STORM_SUPPRESSED"))
+                    .supplier(stormControl::getSuppressedCount)
+                    .buildReadThrough();
+            this.stormControl = stormControl;
+        }
+
         // Get all active events from the database.
         activeEventsLock.writeLock().lock();
         try{
-            activeEvents.addAll(eventDao.getActiveEvents());
+            for (EventInstance e : eventDao.getActiveEvents()) {
+                activeEvents.add(e);
+            }
         }finally{
             activeEventsLock.writeLock().unlock();
         }
@@ -817,6 +860,7 @@ public class EventManagerImpl implements EventManager {
     public void joinTermination() {
         if(state != ILifecycleState.TERMINATING)
             return;
+        eventDao.flush();
         state = ILifecycleState.TERMINATED;
     }
 
@@ -850,7 +894,7 @@ public class EventManagerImpl implements EventManager {
         List<EventInstance> userEvents;
         activeEventsLock.readLock().lock();
         try{
-            userEvents = new ArrayList<>(activeEvents);
+            userEvents = new ArrayList<>(activeEvents.values());
         }finally{
             activeEventsLock.readLock().unlock();
         }
@@ -860,6 +904,35 @@ public class EventManagerImpl implements EventManager {
         return userEvents;
     }
 
+    @Override
+    public List<UserEventLevelSummary> getActiveSummary(PermissionHolder user) {
+        Predicate<MangoPermission> canRead = summaryPermissionCheck(user);
+        activeEventsLock.readLock().lock();
+        try{
+            return activeSummary.getLevelSummaries(canRead);
+        }finally{
+            activeEventsLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<AlarmLevels, Integer> getDataPointEventCounts(PermissionHolder user, int dataPointId) {
+        Predicate<MangoPermission> canRead = summaryPermissionCheck(user);
+        activeEventsLock.readLock().lock();
+        try{
+            return activeSummary.getDataPointCounts(dataPointId, canRead);
+        }finally{
+            activeEventsLock.readLock().unlock();
+        }
+    }
+
+    private Predicate<MangoPermission> summaryPermissionCheck(PermissionHolder user) {
+        if (permissionService.hasEventsSuperadminViewPermission(user)) {
+            return permission -> true;
+        }
+        return permission -> permissionService.hasPermission(user, permission);
+    }
+
 
     //
     //
@@ -870,20 +943,12 @@ public class EventManagerImpl implements EventManager {
      * Gets an event from the activeEvents list/cache by its id
      */
     private EventInstance getById(int id) {
-        EventInstance e;
-
         activeEventsLock.readLock().lock();
         try{
-            for (EventInstance activeEvent : activeEvents) {
-                e = activeEvent;
-                if (e.getId() == id)
-                    return e;
-            }
+            return activeEvents.getById(id);
         }finally{
             activeEventsLock.readLock().unlock();
         }
-
-        return null;
     }
 
     /**
@@ -893,22 +958,16 @@ public class EventManagerImpl implements EventManager {
     private EventInstance get(EventType type) {
         activeEventsLock.readLock().lock();
         try{
-            for (EventInstance e : activeEvents) {
-                if (e.getEventType().equals(type))
-                    return e;
-            }
+            return activeEvents.get(type);
         }finally{
             activeEventsLock.readLock().unlock();
         }
-        return null;
     }
 
     private List<EventInstance> getAll(EventType type) {
         activeEventsLock.readLock().lock();
         try{
-            return activeEvents.stream()
-                    .filter(e -> e.getEventType().equals(type))
-                    .collect(Collectors.toList());
+            return activeEvents.getAll(type);
         }finally{
             activeEventsLock.readLock().unlock();
         }
@@ -922,7 +981,7 @@ public class EventManagerImpl implements EventManager {
         List<EventInstance> result = new ArrayList<>();
         activeEventsLock.readLock().lock();
         try{
-            result.addAll(activeEvents);
+            result.addAll(activeEvents.values());
         }finally{
             activeEventsLock.readLock().unlock();
         }
@@ -937,19 +996,10 @@ public class EventManagerImpl implements EventManager {
     private EventInstance remove(EventType type) {
         activeEventsLock.writeLock().lock();
         try{
-            ListIterator<EventInstance> it = activeEvents.listIterator();
-            while(it.hasNext()){
-                EventInstance e = it.next();
-                if (e.getEventType().equals(type)) {
-                    it.remove();
-                    return e;
-                }
-            }
+            return activeEvents.remove(type);
         }finally{
             activeEventsLock.writeLock().unlock();
         }
-
-        return null;
     }
 
     private void initHandlers(EventInstance event) {
@@ -1033,6 +1083,24 @@ public class EventManagerImpl implements EventManager {
         }
     }
 
+    /**
+     * Rebuild the event recipients when users, roles or system permissions change
+     */
+    @EventListener
+    protected void handleUserEvent(DaoEvent<? extends User> event) {
+        recipientIndex.invalidate();
+    }
+
+    @EventListener
+    protected void handleRoleEvent(DaoEvent<? extends RoleVO> event) {
+        recipientIndex.invalidate();
+    }
+
+    @EventListener
+    protected void handleSystemPermissionUpdated(SystemPermissionUpdated event) {
+        recipientIndex.invalidate();
+    }
+
     /**
      * Manage the active event's list comments
      * @param event
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.rt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import com.infiniteautomation.mango.permission.MangoPermission;
+import com.infiniteautomation.mango.spring.service.PermissionService;
+import com.serotonin.m2m2.rt.event.type.EventType;
+import com.serotonin.m2m2.vo.User;
+
+/**
+ * Index of the enabled users that should be notified of events, by the permission returned from
+ * {@link EventType#getNotificationPermission(PermissionService)}. Each permission is resolved against every user once,
+ * after that finding the recipients of an event costs time proportional to the number of matching users.
+ *
+ * <p>The index must be invalidated when users, roles or system permissions change, it is then rebuilt on next use.</p>
+ */
+class EventRecipientIndex {
+
+    private final Supplier<List<User>> enabledUsers;
+    private final Object lock = new Object();
+    // guarded by lock
+    private long version;
+    private volatile Snapshot snapshot;
+
+    /**
+     * @param enabledUsers loads all enabled users
+     */
+    EventRecipientIndex(Supplier<List<User>> enabledUsers) {
+        this.enabledUsers = enabledUsers;
+    }
+
+    /**
+     * Get the users with permission to an event type. Users excluded by {@link EventType#excludeUser(User)} are not
+     * removed.
+     *
+     * @return unmodifiable list of users
+     */
+    public List<User> getRecipients(EventType type, PermissionService permissionService) {
+        Snapshot snapshot = getSnapshot();
+        MangoPermission permission = type.getNotificationPermission(permissionService);
+        if (permission == null) {
+            return snapshot.filter(user -> type.hasPermission(user, permissionService));
+        }
+        return snapshot.byPermission.computeIfAbsent(permission, p -> snapshot.filter(user ->
+                permissionService.hasEventsSuperadminViewPermission(user) || permissionService.hasPermission(user, p)));
+    }
+
+    /**
+     * Discard the index, it is rebuilt on next use
+     */
+    public void invalidate() {
+        synchronized (lock) {
+            this.version++;
+            this.snapshot = null;
+        }
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot snapshot = this.snapshot;
+        if (snapshot == null) {
+            long version;
+            synchronized (lock) {
+                version = this.version;
+            }
+            snapshot = new Snapshot(enabledUsers.get());
+            synchronized (lock) {
+                // don't store a snapshot that was loaded while being invalidated
+                if (this.version == version) {
+                    this.snapshot = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    private static final class Snapshot {
+        private final List<User> users;
+        private final ConcurrentMap<MangoPermission, List<User>> byPermission = new ConcurrentHashMap<>();
+
+        private Snapshot(List<User> users) {
+            this.users = Collections.unmodifiableList(new ArrayList<>(users));
+        }
+
+        private List<User> filter(Predicate<User> filter) {
+            List<User> result = new ArrayList<>();
+            for (User user : users) {
+                if (filter.test(user)) {
+                    result.add(user);
+                }
+            }
+            return Collections.unmodifiableList(result);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.rt;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.serotonin.m2m2.rt.event.type.EventType;
+
+/**
+ * Limits the rate events are raised using token buckets per event type (e.g. all data point events) and per source
+ * (the data source, publisher or other object that raised the event), so that a failure such as a network outage
+ * cannot flood the event manager with thousands of events. Suppressed events are counted so that they can be reported
+ * as a single summary per event type.
+ *
+ * <p>Thread safe.</p>
+ */
+class EventStormControl {
+
+    private final double typeRate;
+    private final int typeBurst;
+    private final double sourceRate;
+    private final int sourceBurst;
+
+    private final ConcurrentMap<String, TokenBucket> typeBuckets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<SourceKey, TokenBucket> sourceBuckets = new ConcurrentHashMap<>();
+    /**
+     * Events suppressed since the last drain by event type and source
+     */
+    private final ConcurrentMap<String, ConcurrentMap<SourceKey, AtomicLong>> suppressed = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> suppressedByType = new ConcurrentHashMap<>();
+    private final LongAdder suppressedTotal = new LongAdder();
+
+    /**
+     * @param typeRate events per second allowed for each event type
+     * @param typeBurst number of events of each type that may be raised at once
+     * @param sourceRate events per second allowed for each source
+     * @param sourceBurst number of events from each source that may be raised at once
+     */
+    EventStormControl(double typeRate, int typeBurst, double sourceRate, int sourceBurst) {
+        if (typeRate <= 0 || sourceRate <= 0 || typeBurst < 1 || sourceBurst < 1) {
+            throw new IllegalArgumentException("Rates must be greater than 0 and bursts at least 1");
+        }
+        this.typeRate = typeRate;
+        this.typeBurst = typeBurst;
+        this.sourceRate = sourceRate;
+        this.sourceBurst = sourceBurst;
+    }
+
+    /**
+     * Take a token for an event from its source and type buckets.
+     *
+     * @param now current time in ms
+     * @return true if the event can be raised, false if it was suppressed
+     */
+    public boolean tryAcquire(EventType type, long now) {
+        SourceKey source = new SourceKey(type);
+        boolean allowed = sourceBuckets.computeIfAbsent(source, k -> new TokenBucket(sourceRate, sourceBurst, now))
+                .tryAcquire(now) &&
+                typeBuckets.computeIfAbsent(type.getEventType(), k -> new TokenBucket(typeRate, typeBurst, now))
+                        .tryAcquire(now);
+        if (!allowed) {
+            suppressed.computeIfAbsent(type.getEventType(), k -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(source, k -> new AtomicLong()).incrementAndGet();
+            suppressedByType.computeIfAbsent(type.getEventType(), k -> new LongAdder()).increment();
+            suppressedTotal.increment();
+        }
+        return allowed;
+    }
+
+    /**
+     * Remove the counts of events suppressed since the last call, also discards buckets that have been idle long
+     * enough to be full again.
+     *
+     * @param now current time in ms
+     * @return suppressed events by event type, empty if none were suppressed
+     */
+    public List<Suppressed> drainSuppressed(long now) {
+        List<Suppressed> result = new ArrayList<>();
+        Iterator<Map.Entry<String, ConcurrentMap<SourceKey, AtomicLong>>> it = suppressed.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, ConcurrentMap<SourceKey, AtomicLong>> entry = it.next();
+            it.remove();
+            Suppressed summary = new Suppressed(entry.getKey());
+            for (AtomicLong count : entry.getValue().values()) {
+                summary.add(count.get());
+            }
+            result.add(summary);
+        }
+        sourceBuckets.values().removeIf(bucket -> bucket.isFull(now));
+        typeBuckets.values().removeIf(bucket -> bucket.isFull(now));
+        return result;
+    }
+
+    /**
+     * @return total number of events suppressed
+     */
+    public long getSuppressedCount() {
+        return suppressedTotal.sum();
+    }
+
+    /**
+     * @return total number of events of a type suppressed
+     */
+    public long getSuppressedCount(String typeName) {
+        LongAdder count = suppressedByType.get(typeName);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * Count of events of one type suppressed since the last drain
+     */
+    public static final class Suppressed {
+        private final String typeName;
+        private long count;
+        private int sources;
+
+        private Suppressed(String typeName) {
+            this.typeName = typeName;
+        }
+
+        private void add(long count) {
+            this.count += count;
+            this.sources++;
+        }
+
+        public String getTypeName() {
+            return typeName;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return number of distinct sources that had events suppressed
+         */
+        public int getSources() {
+            return sources;
+        }
+    }
+
+    private static final class TokenBucket {
+        private final double ratePerMs;
+        private final int capacity;
+        // guarded by this
+        private double tokens;
+        private long lastRefill;
+
+        private TokenBucket(double ratePerSecond, int capacity, long now) {
+            this.ratePerMs = ratePerSecond / 1000d;
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.lastRefill = now;
+        }
+
+        private synchronized boolean tryAcquire(long now) {
+            refill(now);
+            if (tokens >= 1) {
+                tokens -= 1;
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= capacity;
+        }
+
+        private void refill(long now) {
+            if (now > lastRefill) {
+                tokens = Math.min(capacity, tokens + (now - lastRefill) * ratePerMs);
+                lastRefill = now;
+            }
+        }
+    }
+
+    /**
+     * Identifies the source of an event. Data point events share their data source's key so that a failing data
+     * source is limited as a whole.
+     */
+    private static final class SourceKey {
+        private final String sourceType;
+        private final String subtype;
+        private final int id;
+
+        private SourceKey(EventType type) {
+            if (type.getDataSourceId() != -1) {
+                this.sourceType = EventType.EventTypeNames.DATA_SOURCE;
+                this.subtype = null;
+                this.id = type.getDataSourceId();
+            } else if (type.getPublisherId() != -1) {
+                this.sourceType = EventType.EventTypeNames.PUBLISHER;
+                this.subtype = null;
+                this.id = type.getPublisherId();
+            } else {
+                this.sourceType = type.getEventType();
+                this.subtype = type.getEventSubtype();
+                this.id = type.getReferenceId1();
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            SourceKey that = (SourceKey) o;
+            return id == that.id && sourceType.equals(that.sourceType) &&
+                    Objects.equals(subtype, that.subtype);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sourceType, subtype, id);
+        }
+    }
+}
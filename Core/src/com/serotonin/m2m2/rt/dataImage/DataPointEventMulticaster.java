@@ -10,10 +10,12 @@ import com.serotonin.m2m2.vo.DataPointVO;
 
 public class DataPointEventMulticaster implements DataPointListener {
     protected final DataPointListener a, b;
+    private final boolean hasLatestValueOnly;
 
     protected DataPointEventMulticaster(DataPointListener a, DataPointListener b) {
         this.a = a;
         this.b = b;
+        this.hasLatestValueOnly = hasLatestValueOnly(a) || hasLatestValueOnly(b);
     }
 
     protected DataPointListener remove(DataPointListener oldl) {
@@ -47,6 +49,16 @@ public class DataPointEventMulticaster implements DataPointListener {
         return l;
     }
 
+    /**
+     * @return true if the listener, or any of the listeners it contains, only needs the latest value
+     */
+    public static boolean hasLatestValueOnly(DataPointListener l) {
+        if (l instanceof DataPointEventMulticaster) {
+            return ((DataPointEventMulticaster) l).hasLatestValueOnly;
+        }
+        return l != null && l.latestValueOnly();
+    }
+
     private static int getListenerCount(DataPointListener l) {
         if (l instanceof DataPointEventMulticaster) {
             DataPointEventMulticaster mc = (DataPointEventMulticaster) l;
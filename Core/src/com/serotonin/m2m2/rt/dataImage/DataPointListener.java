@@ -61,4 +61,17 @@ public interface DataPointListener {
      * Called when any attribute on a data source has changed, all attributes after the change are supplied to this callback
      */
     default void attributeChanged(Map<String, Object> attributes) { }
+
+    /**
+     * Listeners that only need the most recent value of the point (e.g. to display it) can return true so that a slow
+     * listener does not build up a backlog of updates. An update that has not been delivered yet is then replaced by
+     * a newer one, {@link #pointUpdated}, {@link #pointChanged} and {@link #pointLogged} are only called for the latest
+     * value and pointChanged receives the value before the first replaced update as the old value. Sets, backdates
+     * and attribute changes are always delivered.
+     *
+     * @return true if superseded updates can be dropped, must not change while the listener is registered
+     */
+    default boolean latestValueOnly() {
+        return false;
+    }
 }
@@ -4,7 +4,6 @@
 package com.serotonin.m2m2.rt.dataImage;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -55,7 +54,6 @@ import com.serotonin.util.ILifecycleState;
 
 public class DataPointRT implements IDataPointValueSource, ILifecycle {
     private final Logger log = LoggerFactory.getLogger(DataPointRT.class);
-    private static final PvtTimeComparator pvtTimeComparator = new PvtTimeComparator();
     private static final String prefix = "INTVL_LOG-";
 
     // Configuration data.
@@ -68,6 +66,7 @@ public class DataPointRT implements IDataPointValueSource, ILifecycle {
     private final DataPointRTPointValueCache valueCache;
     private List<PointEventDetectorRT<?>> detectors;
     private final Map<String, Object> attributes = new HashMap<String, Object>();
+    private final LatestValueNotifier latestValueNotifier;
 
     // Interval logging data.
     private PointValueTime intervalValue;
@@ -94,6 +93,7 @@ public class DataPointRT implements IDataPointValueSource, ILifecycle {
         }
 
         this.vo = dp.getDataPoint();
+        this.latestValueNotifier = new LatestValueNotifier(vo.getXid());
         this.detectors = new ArrayList<>();
         for (AbstractPointEventDetectorVO ped : dp.getEventDetectors()) {
             PointEventDetectorRT<?> pedRT = (PointEventDetectorRT<?>) ped.createRuntime();
@@ -133,50 +133,17 @@ public class DataPointRT implements IDataPointValueSource, ILifecycle {
     //
     @Override
     public PointValueTime getPointValueBefore(long time) {
-        for (PointValueTime pvt : valueCache.getCacheContents()) {
-            if (pvt.getTime() < time)
-                return pvt;
-        }
-
-        return Common.getBean(PointValueDao.class).getPointValueBefore(vo, time).orElse(null);
+        return valueCache.getPointValueBefore(time);
     }
 
     @Override
     public PointValueTime getPointValueAt(long time) {
-        for (PointValueTime pvt : valueCache.getCacheContents()) {
-            if (pvt.getTime() == time)
-                return pvt;
-        }
-
-        return Common.getBean(PointValueDao.class).getPointValueAt(vo, time).orElse(null);
+        return valueCache.getPointValueAt(time);
     }
 
     @Override
     public PointValueTime getPointValueAfter(long time) {
-
-        //Get the value stored in the db
-        PointValueTime after = Common.getBean(PointValueDao.class).getPointValueAfter(vo, time).orElse(null);
-
-        //Check it with the cache
-        if(after != null){
-            List<PointValueTime> pvts = valueCache.getCacheContents();
-            //Check to see if we have a value closer in cache
-            for (int i = pvts.size() - 1; i >= 0; i--) {
-                PointValueTime pvt = pvts.get(i);
-                //Must be after 'time' and before 'after'
-                if (pvt.getTime() < after.getTime() && pvt.getTime() > time)
-                    return pvt;
-            }
-        }else{
-            List<PointValueTime> pvts = valueCache.getCacheContents();
-            for (int i = pvts.size() - 1; i >= 0; i--) {
-                PointValueTime pvt = pvts.get(i);
-                if (pvt.getTime() >= time)
-                    return pvt;
-            }
-        }
-
-        return after;
+        return valueCache.getPointValueAfter(time);
     }
 
     //
@@ -194,32 +161,12 @@ public class DataPointRT implements IDataPointValueSource, ILifecycle {
 
     @Override
     public List<PointValueTime> getPointValues(long since) {
-        List<PointValueTime> result = Common.getBean(PointValueDao.class).getPointValues(vo, since);
-
-        for (PointValueTime pvt : valueCache.getCacheContents()) {
-            if (pvt.getTime() >= since) {
-                int index = Collections.binarySearch(result, pvt, pvtTimeComparator);
-                if (index < 0)
-                    result.add(-index - 1, pvt);
-            }
-        }
-
-        return result;
+        return valueCache.getPointValues(since);
     }
 
     @Override
     public List<PointValueTime> getPointValuesBetween(long from, long to) {
-        List<PointValueTime> result = Common.getBean(PointValueDao.class).getPointValuesBetween(vo, from, to);
-
-        for (PointValueTime pvt : valueCache.getCacheContents()) {
-            if (pvt.getTime() >= from && pvt.getTime() < to) {
-                int index = Collections.binarySearch(result, pvt, pvtTimeComparator);
-                if (index < 0)
-                    result.add(-index - 1, pvt);
-            }
-        }
-
-        return result;
+        return valueCache.getPointValuesBetween(from, to);
     }
 
     /**
@@ -791,6 +738,21 @@ public class DataPointRT implements IDataPointValueSource, ILifecycle {
     protected void fireEvents(PointValueTime oldValue, PointValueTime newValue, Map<String, Object> attributes, boolean set,
             boolean backdate, boolean logged, boolean updated, boolean attributesChanged) {
         DataPointListener l = Common.runtimeManager.getDataPointListeners(vo.getId());
+        if (DataPointEventMulticaster.hasLatestValueOnly(l)) {
+            if (updated && !set && !backdate && !attributesChanged) {
+                // updates for listeners that only need the latest value are merged
+                DataPointListener others = null;
+                for (DataPointListener listener : DataPointEventMulticaster.getListeners(l)) {
+                    if (listener.latestValueOnly())
+                        latestValueNotifier.update(listener, oldValue, newValue, logged);
+                    else
+                        others = DataPointEventMulticaster.add(others, listener);
+                }
+                l = others;
+            } else {
+                latestValueNotifier.flush();
+            }
+        }
         if (l != null)
             Common.backgroundProcessing.addWorkItem(new DataPointEventNotifyWorkItem(vo.getXid(), l, oldValue, newValue,
                     attributes, set, backdate, logged, updated, attributesChanged));
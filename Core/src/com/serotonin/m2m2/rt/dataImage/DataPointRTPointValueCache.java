@@ -6,30 +6,51 @@ package com.serotonin.m2m2.rt.dataImage;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.checkerframework.checker.nullness.qual.Nullable;
 
+import com.infiniteautomation.mango.monitor.MonitoredValues;
 import com.infiniteautomation.mango.pointvaluecache.PointValueCache;
+import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.db.dao.PointValueDao;
-import com.serotonin.m2m2.view.stats.ITime;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.dataImage.LatestPointValueBuffer.Snapshot;
 import com.serotonin.m2m2.vo.DataPointVO;
 
 /**
  * This class maintains an ordered list of the most recent values for a data point. It will mirror values in the
  * database, but provide a much faster lookup for a limited number of values.
  *
- * Because there is not a significant performance problem for time-based lookups, they are not handled here, but rather
- * are still handled by the database.
+ * Values are held in a {@link LatestPointValueBuffer}, readers are given immutable snapshots of the buffer so they
+ * never need to lock.
+ *
+ * The buffer knows the time from which it holds every value of the point. When
+ * runtime.pointValueCache.timeRangeQueries is enabled, time-based lookups that fall within that range are answered from
+ * the cache and lookups that start before it query the database only for the part of the range the cache does not
+ * cover. Values written directly to the database (i.e. not via the data point runtime, e.g. imports) are not seen by
+ * these lookups, so it is disabled by default.
  *
  * @author Matthew Lohbihler
  * @author Jared Wiltshire
  */
 public class DataPointRTPointValueCache {
+    public static final String HITS_MONITOR_ID = DataPointRTPointValueCache.class.getCanonicalName() + ".hits";
+    public static final String MISSES_MONITOR_ID = DataPointRTPointValueCache.class.getCanonicalName() + ".misses";
+
+    private static final PvtTimeComparator pvtTimeComparator = new PvtTimeComparator();
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+
     private final DataPointVO vo;
     private final int defaultSize;
     private final PointValueDao dao;
     private final PointValueCache pointValueCache;
+    private final boolean timeRangeQueries;
 
+    // guarded by this, null if defaultSize is 0
+    private final @Nullable LatestPointValueBuffer buffer;
+    // immutable snapshot of the buffer, null if not loaded
     private volatile List<PointValueTime> cache;
 
     public DataPointRTPointValueCache(DataPointVO vo, int defaultSize, @Nullable List<PointValueTime> initialCache, PointValueDao dao, PointValueCache pointValueCache) {
@@ -37,15 +58,28 @@ public class DataPointRTPointValueCache {
         this.defaultSize = defaultSize;
         this.dao = dao;
         this.pointValueCache = pointValueCache;
+        this.timeRangeQueries = Common.envProps.getBoolean("runtime.pointValueCache.timeRangeQueries", false);
+        this.buffer = defaultSize > 0 ? new LatestPointValueBuffer(defaultSize) : null;
         if (initialCache != null) {
-            if (initialCache.size() > defaultSize) {
-                this.cache = initialCache.subList(0, defaultSize);
-            } else {
-                this.cache = initialCache;
-            }
+            this.cache = load(initialCache);
         }
     }
 
+    /**
+     * Register monitors for the number of time-based lookups answered from the cache, and the number that had to
+     * query the database.
+     */
+    public static void registerMonitors(MonitoredValues monitoredValues) {
+        monitoredValues.<Long>create(HITS_MONITOR_ID)
+                .name(new TranslatableMessage("internal.monitor.POINT_VALUE_CACHE_HITS"))
+                .supplier(hits::sum)
+                .buildReadThrough();
+        monitoredValues.<Long>create(MISSES_MONITOR_ID)
+                .name(new TranslatableMessage("internal.monitor.POINT_VALUE_CACHE_MISSES"))
+                .supplier(misses::sum)
+                .buildReadThrough();
+    }
+
     void savePointValueAsync(PointValueTime pvt) {
         dao.savePointValueAsync(vo, pvt);
     }
@@ -65,30 +99,40 @@ public class DataPointRTPointValueCache {
         }
 
         synchronized (this) {
-            if (defaultSize == 0) {
+            if (buffer == null) {
                 this.cache = Collections.emptyList();
-            } else if (defaultSize == 1) {
-                var existing = cache;
-                if (existing == null || existing.isEmpty() || existing.get(0).getTime() <= pvt.getTime()) {
-                    this.cache = Collections.singletonList(pvt);
-                }
             } else {
-                var existing = cache;
-                this.cache = new ArrayList<>(existing.size() + 1);
-                cache.add(pvt);
-                cache.addAll(existing);
-                cache.sort(ITime.COMPARATOR.reversed());
-
-                // remove items from end of list until list is under the size limit
-                while (cache.size() > defaultSize) {
-                    cache.remove(cache.size() - 1);
+                boolean present = false;
+                if (cache == null) {
+                    // a single value cache only needs the new value
+                    List<PointValueTime> loaded = defaultSize == 1 ? load(Collections.emptyList()) : load(pointValueCache.loadCache(vo, defaultSize));
+                    // the value may have been saved synchronously before the cache was loaded
+                    present = !loaded.isEmpty() && loaded.get(0).equals(pvt);
+                }
+                if (!present) {
+                    buffer.add(pvt);
                 }
+                this.cache = buffer.snapshot();
             }
 
+            // snapshots are never modified so can be shared as is, only the snapshot's values are serialized
             pointValueCache.updateCache(vo, cache);
         }
     }
 
+    /**
+     * Replace the buffer contents
+     * @param latest values in time descending order
+     * @return snapshot of the buffer
+     */
+    private synchronized List<PointValueTime> load(List<PointValueTime> latest) {
+        if (buffer == null) {
+            return Collections.emptyList();
+        }
+        buffer.reset(latest);
+        return buffer.snapshot();
+    }
+
     /**
      * @return the latest point value, or null if none
      */
@@ -105,13 +149,13 @@ public class DataPointRTPointValueCache {
     public List<PointValueTime> getLatestPointValues(int limit) {
         List<PointValueTime> cache = getCacheContents();
         if (cache.size() >= limit) {
-            return Collections.unmodifiableList(cache.subList(0, limit));
+            return cache.subList(0, limit);
         }
         return Collections.unmodifiableList(dao.getLatestPointValues(vo, limit));
     }
 
     /**
-     * @return unmodifiable list of cache contents, causes cache load if not already loaded.
+     * @return unmodifiable list of cache contents in time descending order, causes cache load if not already loaded.
      */
     public List<PointValueTime> getCacheContents() {
         var cache = this.cache;
@@ -119,11 +163,135 @@ public class DataPointRTPointValueCache {
             synchronized (this) {
                 cache = this.cache;
                 if (cache == null) {
-                    this.cache = cache = pointValueCache.loadCache(vo, defaultSize);
+                    this.cache = cache = load(pointValueCache.loadCache(vo, defaultSize));
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * @return the time from which the cache contains every value of the point, {@link Long#MAX_VALUE} if it can't
+     * be used for time-based lookups
+     */
+    private long coveredFrom(List<PointValueTime> cache) {
+        if (timeRangeQueries && cache instanceof Snapshot) {
+            return ((Snapshot) cache).getCoveredFrom();
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the latest value with a time before the given time, or null if none
+     */
+    @Nullable
+    public PointValueTime getPointValueBefore(long time) {
+        List<PointValueTime> cache = getCacheContents();
+        for (PointValueTime pvt : cache) {
+            if (pvt.getTime() < time) {
+                hits.increment();
+                return pvt;
+            }
+        }
+
+        misses.increment();
+        return dao.getPointValueBefore(vo, time).orElse(null);
+    }
+
+    /**
+     * @return the value at exactly the given time, or null if none
+     */
+    @Nullable
+    public PointValueTime getPointValueAt(long time) {
+        List<PointValueTime> cache = getCacheContents();
+        for (PointValueTime pvt : cache) {
+            if (pvt.getTime() == time) {
+                hits.increment();
+                return pvt;
+            }
+        }
+        if (time >= coveredFrom(cache)) {
+            hits.increment();
+            return null;
+        }
+
+        misses.increment();
+        return dao.getPointValueAt(vo, time).orElse(null);
+    }
+
+    /**
+     * @return the earliest value with a time greater than or equal to the given time, or null if none
+     */
+    @Nullable
+    public PointValueTime getPointValueAfter(long time) {
+        List<PointValueTime> cache = getCacheContents();
+        if (time >= coveredFrom(cache)) {
+            hits.increment();
+            for (int i = cache.size() - 1; i >= 0; i--) {
+                PointValueTime pvt = cache.get(i);
+                if (pvt.getTime() >= time) {
+                    return pvt;
+                }
+            }
+            return null;
+        }
+
+        misses.increment();
+        PointValueTime after = dao.getPointValueAfter(vo, time).orElse(null);
+        // check for a closer value in the cache that may not have been written to the database
+        for (int i = cache.size() - 1; i >= 0; i--) {
+            PointValueTime pvt = cache.get(i);
+            if (pvt.getTime() >= time) {
+                return after == null || pvt.getTime() < after.getTime() ? pvt : after;
+            }
+        }
+        return after;
+    }
+
+    /**
+     * @return values with a time greater than or equal to from, in ascending time order
+     */
+    public List<PointValueTime> getPointValues(long from) {
+        return getPointValuesBetween(from, Long.MAX_VALUE);
+    }
+
+    /**
+     * @return values with a time greater than or equal to from and less than to, in ascending time order
+     */
+    public List<PointValueTime> getPointValuesBetween(long from, long to) {
+        List<PointValueTime> cache = getCacheContents();
+        long coveredFrom = coveredFrom(cache);
+
+        List<PointValueTime> result;
+        if (from >= coveredFrom) {
+            hits.increment();
+            result = new ArrayList<>();
+        } else {
+            // only query the part of the range the cache does not cover
+            misses.increment();
+            result = new ArrayList<>(dao.getPointValuesBetween(vo, from, Math.min(to, coveredFrom)));
+        }
+
+        for (int i = cache.size() - 1; i >= 0; i--) {
+            PointValueTime pvt = cache.get(i);
+            long time = pvt.getTime();
+            if (time < from) {
+                continue;
+            }
+            if (time >= to) {
+                break;
+            }
+            if (time >= coveredFrom) {
+                result.add(pvt);
+            } else {
+                // values that were not logged are only in the cache
+                int index = Collections.binarySearch(result, pvt, pvtTimeComparator);
+                if (index < 0) {
+                    result.add(-index - 1, pvt);
                 }
             }
         }
-        return Collections.unmodifiableList(cache);
+        return result;
     }
 
     /**
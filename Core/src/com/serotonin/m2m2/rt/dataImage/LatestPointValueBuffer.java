@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.rt.dataImage;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Fixed capacity ring buffer of the latest point values for a data point, kept in time order. Appending a value that is
+ * at least as new as the latest value is O(1), a backdated value is placed using a binary search. Once the buffer is
+ * full the oldest value is discarded.
+ *
+ * <p>Values are stored in an array of twice the capacity in ascending time order and are only ever appended past the
+ * end of the values that have already been published, so a {@link #snapshot()} is an O(1) view which is never modified
+ * afterwards and may be read by any thread without locking. When the array is exhausted (at most once per capacity
+ * values), or a backdated value is inserted, the values are copied into a new array and existing snapshots continue to
+ * reference the old one. A snapshot serializes as a list of only its own values.</p>
+ *
+ * <p>The buffer also tracks the time from which it holds every value of the point, i.e. no value at or after that time
+ * has been discarded. Queries within this range can be answered without the database, see
+ * {@link Snapshot#getCoveredFrom()}.</p>
+ *
+ * <p>Not thread safe for writers, callers must synchronize modifications.</p>
+ */
+public class LatestPointValueBuffer {
+
+    private final int capacity;
+    private PointValueTime[] values;
+    private int start;
+    private int end;
+    private long coveredFrom = Long.MAX_VALUE;
+    private Snapshot snapshot;
+
+    public LatestPointValueBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+        this.capacity = capacity;
+        this.values = new PointValueTime[capacity * 2];
+        publish();
+    }
+
+    /**
+     * Replace the contents of the buffer.
+     *
+     * @param latest the latest values of the point in time descending order (i.e. latest values first), values past
+     *               the capacity are ignored
+     */
+    public void reset(List<PointValueTime> latest) {
+        int size = Math.min(capacity, latest.size());
+        PointValueTime[] values = new PointValueTime[capacity * 2];
+        for (int i = 0; i < size; i++) {
+            values[size - 1 - i] = latest.get(i);
+        }
+        this.values = values;
+        this.start = 0;
+        this.end = size;
+        // there may be older values, including more values with the same time as the oldest value
+        this.coveredFrom = size > 0 ? values[0].getTime() + 1 : Long.MAX_VALUE;
+        publish();
+    }
+
+    /**
+     * Add a value to the buffer. A value with the same time as existing values is placed after them, i.e. it is
+     * treated as the latest value for that time.
+     *
+     * @param value value to add
+     * @return false if the buffer is full and the value is older than all values in the buffer
+     */
+    public boolean add(PointValueTime value) {
+        long time = value.getTime();
+        int size = end - start;
+
+        if (size == 0 || values[end - 1].getTime() <= time) {
+            if (end == values.length) {
+                compact();
+            }
+            values[end++] = value;
+            if (end - start > capacity) {
+                discarded(values[start++].getTime());
+            }
+        } else {
+            int index = upperBound(time);
+            if (index == start && size >= capacity) {
+                discarded(time);
+                publish();
+                return false;
+            }
+
+            // copy so that existing snapshots are not modified, size is at most capacity so the copy always fits
+            PointValueTime[] copy = new PointValueTime[capacity * 2];
+            int before = index - start;
+            System.arraycopy(values, start, copy, 0, before);
+            copy[before] = value;
+            System.arraycopy(values, index, copy, before + 1, end - index);
+            this.values = copy;
+            this.start = 0;
+            this.end = size + 1;
+            // discard the oldest value if over capacity
+            if (size + 1 > capacity) {
+                discarded(copy[start++].getTime());
+            }
+        }
+
+        publish();
+        return true;
+    }
+
+    /**
+     * @return immutable list of the values in time descending order (i.e. latest value first)
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    public int size() {
+        return end - start;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    private void discarded(long time) {
+        if (time != Long.MAX_VALUE) {
+            this.coveredFrom = Math.max(coveredFrom, time + 1);
+        } else {
+            this.coveredFrom = Long.MAX_VALUE;
+        }
+    }
+
+    private void compact() {
+        PointValueTime[] copy = new PointValueTime[capacity * 2];
+        int size = end - start;
+        System.arraycopy(values, start, copy, 0, size);
+        this.values = copy;
+        this.start = 0;
+        this.end = size;
+    }
+
+    /**
+     * @return index of the first value with a time greater than the given time
+     */
+    private int upperBound(long time) {
+        int low = start;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid].getTime() <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void publish() {
+        this.snapshot = new Snapshot(values, start, end, coveredFrom);
+    }
+
+    /**
+     * Immutable view of a range of the values array in reverse order (i.e. latest value first). Serialized as an
+     * {@link ArrayList} of the values in the range.
+     */
+    public static final class Snapshot extends AbstractList<PointValueTime> implements RandomAccess, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final PointValueTime[] values;
+        private final int start;
+        private final int end;
+        private final long coveredFrom;
+
+        private Snapshot(PointValueTime[] values, int start, int end, long coveredFrom) {
+            this.values = values;
+            this.start = start;
+            this.end = end;
+            this.coveredFrom = coveredFrom;
+        }
+
+        /**
+         * @return the snapshot contains every value of the point with a time greater than or equal to this time,
+         * {@link Long#MAX_VALUE} if this is not known
+         */
+        public long getCoveredFrom() {
+            return coveredFrom;
+        }
+
+        private Object writeReplace() {
+            return new ArrayList<>(this);
+        }
+
+        @Override
+        public PointValueTime get(int index) {
+            Objects.checkIndex(index, end - start);
+            return values[end - 1 - index];
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.rt.dataImage;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.rt.DataPointEventNotifyWorkItem;
+import com.serotonin.m2m2.rt.maint.work.WorkItem;
+
+/**
+ * Delivers the updates of one data point to listeners that only need its latest value, see
+ * {@link DataPointListener#latestValueOnly()}. Each listener has at most one update waiting to be delivered, a newer
+ * update replaces the value of the waiting update rather than being queued behind it. An unlogged update never replaces
+ * a logged one, so that {@link DataPointListener#pointLogged(PointValueTime)} is not lost for the logged value.
+ */
+public class LatestValueNotifier {
+
+    private static final LongAdder ELIDED = new LongAdder();
+
+    private final String xid;
+    private final Consumer<WorkItem> queue;
+    private final ConcurrentMap<DataPointListener, PendingUpdate> pending = new ConcurrentHashMap<>();
+
+    LatestValueNotifier(String xid) {
+        this(xid, item -> Common.backgroundProcessing.addWorkItem(item));
+    }
+
+    /**
+     * @param queue queues work items to run in the same order as the point's other notifications
+     */
+    LatestValueNotifier(String xid, Consumer<WorkItem> queue) {
+        this.xid = xid;
+        this.queue = queue;
+    }
+
+    /**
+     * @return total number of updates replaced by a newer update before being delivered
+     */
+    public static long getElidedCount() {
+        return ELIDED.sum();
+    }
+
+    /**
+     * Queue an update for a listener, or replace the value of the update already waiting for it if it can be merged.
+     */
+    void update(DataPointListener listener, PointValueTime oldValue, PointValueTime newValue, boolean logged) {
+        while (true) {
+            PendingUpdate current = pending.get(listener);
+            if (current != null) {
+                if (current.replace(newValue, logged)) {
+                    ELIDED.increment();
+                    return;
+                }
+                // already being delivered or can't be merged, it is delivered before the new update
+                pending.remove(listener, current);
+            }
+
+            PendingUpdate created = new PendingUpdate(listener, oldValue, newValue, logged);
+            if (pending.putIfAbsent(listener, created) == null) {
+                queue.accept(created);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Called before a notification that cannot be merged (e.g. a set or backdate) is queued. Updates already waiting
+     * are delivered before it, later updates are queued after it.
+     */
+    void flush() {
+        pending.clear();
+    }
+
+    /**
+     * Runs on the same queue as the point's other notifications so that its order relative to them is kept
+     */
+    private final class PendingUpdate extends DataPointEventNotifyWorkItem {
+        private final DataPointListener listener;
+        private final PointValueTime oldValue;
+        // guarded by this
+        private PointValueTime newValue;
+        private boolean logged;
+        private boolean delivering;
+
+        private PendingUpdate(DataPointListener listener, PointValueTime oldValue, PointValueTime newValue, boolean logged) {
+            super(xid, listener, oldValue, newValue, null, false, false, logged, true, false);
+            this.listener = listener;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+            this.logged = logged;
+        }
+
+        /**
+         * @return false if the update is already being delivered, or is for a logged value and the new value was not
+         * logged, and can not be replaced
+         */
+        private synchronized boolean replace(PointValueTime newValue, boolean logged) {
+            if (delivering || (this.logged && !logged)) {
+                return false;
+            }
+            this.newValue = newValue;
+            this.logged = logged;
+            return true;
+        }
+
+        @Override
+        public void execute() {
+            PointValueTime value;
+            boolean wasLogged;
+            synchronized (this) {
+                delivering = true;
+                value = newValue;
+                wasLogged = logged;
+            }
+            pending.remove(listener, this);
+            // the listener sees a single change from the value it last received to the latest value
+            new DataPointEventNotifyWorkItem(xid, listener, oldValue, value, null, false, false, wasLogged, true, false)
+                    .execute();
+        }
+    }
+}
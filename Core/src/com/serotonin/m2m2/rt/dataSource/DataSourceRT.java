@@ -12,7 +12,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -243,9 +245,12 @@ abstract public class DataSourceRT<VO extends DataSourceVO> implements ILifecycl
         DataSourceEventType type = status.eventType;
 
         if (rtnApplicable) {
-            synchronized (status.lock) {
+            status.lock.lock();
+            try {
                 status.active = true;
                 Common.eventManager.raiseEvent(type, time, true, type.getAlarmLevel(), message, context);
+            } finally {
+                status.lock.unlock();
             }
         } else {
             Common.eventManager.raiseEvent(type, time, false, type.getAlarmLevel(), message, context);
@@ -261,13 +266,16 @@ abstract public class DataSourceRT<VO extends DataSourceVO> implements ILifecycl
      */
     protected void returnToNormal(int dataSourceEventTypeId, long time) {
         EventStatus status = getEventStatus(dataSourceEventTypeId);
-        synchronized (status.lock) {
+        status.lock.lock();
+        try {
             //For performance ensure we have an active event to RTN
             if (status.active) {
                 Common.eventManager.returnToNormal(status.eventType, time);
                 // only remove afterwards in case returnToNormal throws an exception
                 status.active = false;
             }
+        } finally {
+            status.lock.unlock();
         }
     }
 
@@ -480,11 +488,14 @@ abstract public class DataSourceRT<VO extends DataSourceVO> implements ILifecycl
     private void terminateEvents() {
         boolean anyActive = false;
         for (EventStatus status : eventTypes.values()) {
-            synchronized (status.lock) {
-                if (status.active) {
-                    anyActive = true;
-                    break;
-                }
+            status.lock.lock();
+            try {
+                anyActive = status.active;
+            } finally {
+                status.lock.unlock();
+            }
+            if (anyActive) {
+                break;
             }
         }
 
@@ -527,10 +538,11 @@ abstract public class DataSourceRT<VO extends DataSourceVO> implements ILifecycl
     }
 
     /**
-     * Stores the event type and if it is active or not
+     * Stores the event type and if it is active or not. Events are raised while holding the lock, it is not a monitor so
+     * that a poll running on a virtual thread does not pin its carrier thread.
      */
     private static class EventStatus {
-        private final Object lock = new Object();
+        private final Lock lock = new ReentrantLock();
         private final DataSourceEventType eventType;
         private boolean active = false;
 
@@ -609,8 +621,11 @@ abstract public class DataSourceRT<VO extends DataSourceVO> implements ILifecycl
         for (EventTypeVO vo : vo.getEventTypes()) {
             DataSourceEventType eventType = (DataSourceEventType) vo.getEventType();
             EventStatus status = eventTypes.get(eventType.getDataSourceEventTypeId());
-            synchronized (status.lock) {
+            status.lock.lock();
+            try {
                 statuses.put(vo, status.active);
+            } finally {
+                status.lock.unlock();
             }
         }
         return statuses;
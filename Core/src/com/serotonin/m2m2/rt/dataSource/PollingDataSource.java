@@ -12,6 +12,7 @@ import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -22,6 +23,7 @@ import org.slf4j.LoggerFactory;
 import com.infiniteautomation.mango.monitor.ValueMonitor;
 import com.serotonin.db.pair.LongLongPair;
 import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.db.dao.PointValueDao;
 import com.serotonin.m2m2.i18n.TranslatableMessage;
 import com.serotonin.m2m2.rt.dataImage.DataPointRT;
 import com.serotonin.m2m2.util.timeout.TimeoutClient;
@@ -64,6 +66,11 @@ abstract public class PollingDataSource<T extends PollingDataSourceVO> extends D
     protected long pollingPeriodMillis = 300000; // Default to 5 minutes just to
     // have something here
     protected boolean quantize;
+    /**
+     * Quantized polls run this long after their poll time, see {@link #pollPhaseOffset(String, long, long)}
+     */
+    private long phaseOffset;
+    private final long phaseWindow;
 
     // If polling is done with cron
     protected String cronPattern;
@@ -82,6 +89,10 @@ abstract public class PollingDataSource<T extends PollingDataSourceVO> extends D
     private final ConcurrentLinkedQueue<Long> latestAbortedPollTimes;
     private long nextAbortedPollMessageTime = 0L;
     private final long abortedPollLogDelay;
+    private final PointValueDao pointValueDao;
+    private final int maxSkippedPolls;
+    private final AtomicLong backpressureSkippedPolls = new AtomicLong();
+    private final AtomicInteger consecutiveSkippedPolls = new AtomicInteger();
 
     public PollingDataSource(T vo) {
         super(vo);
@@ -95,11 +106,18 @@ abstract public class PollingDataSource<T extends PollingDataSourceVO> extends D
         this.latestPollTimes = new ConcurrentLinkedQueue<>();
         this.latestAbortedPollTimes = new ConcurrentLinkedQueue<>();
         this.abortedPollLogDelay = Common.envProps.getLong("runtime.datasource.pollAbortedLogFrequency", 3600000);
+        this.pointValueDao = Common.getBean(PointValueDao.class);
+        this.maxSkippedPolls = Common.envProps.getInt("runtime.datasource.backpressure.maxSkippedPolls", 10);
+        this.phaseWindow = Common.envProps.getLong("runtime.datasource.quantize.phaseWindow", 0);
         this.timeoutClient = new TimeoutClient() {
 
             @Override
             public void scheduleTimeout(long fireTime) {
-                scheduleTimeoutImpl(fireTime);
+                // poll at the quantized time
+                long pollTime = fireTime - phaseOffset;
+                if (!skipPollForBackpressure(pollTime)) {
+                    scheduleTimeoutImpl(pollTime);
+                }
             }
 
             @Override
@@ -114,7 +132,7 @@ abstract public class PollingDataSource<T extends PollingDataSourceVO> extends D
 
             @Override
             public void rejected(RejectedTaskReason reason) {
-                incrementUnsuccessfulPolls(reason.getScheduledExecutionTime());
+                incrementUnsuccessfulPolls(reason.getScheduledExecutionTime() - phaseOffset);
                 updateSuccessfulPollQuotient();
                 Common.backgroundProcessing.rejectedHighPriorityTask(reason);
             }
@@ -183,6 +201,35 @@ abstract public class PollingDataSource<T extends PollingDataSourceVO> extends D
             this.raiseEvent(eventId, time, false, new TranslatableMessage("event.pollAborted", vo.getXid(), vo.getName()));
     }
 
+    public long getBackpressureSkippedPolls() {
+        return backpressureSkippedPolls.get();
+    }
+
+    /**
+     * Skip scheduled polls while the point value write queue is backed up, which stretches the polling period.
+     * At most {@code maxSkippedPolls} consecutive polls are skipped so that points are not starved indefinitely.
+     *
+     * @param fireTime time at which the poll was supposed to occur
+     * @return true if the poll should be skipped
+     */
+    private boolean skipPollForBackpressure(long fireTime) {
+        if (maxSkippedPolls <= 0 || pointValueDao.tryReserve(dataPoints.size())) {
+            consecutiveSkippedPolls.set(0);
+            return false;
+        }
+
+        if (consecutiveSkippedPolls.incrementAndGet() > maxSkippedPolls) {
+            consecutiveSkippedPolls.set(0);
+            return false;
+        }
+
+        long skipped = backpressureSkippedPolls.incrementAndGet();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Data Source " + vo.getName() + " skipped poll at " + fireTime + " as the point value write queue is full, " + skipped + " polls skipped since it started.");
+        }
+        return true;
+    }
+
     protected void updateSuccessfulPollQuotient() {
         long unsuccessful = unsuccessfulPolls.get();
         long successful = successfulPolls.get();
@@ -200,7 +247,7 @@ abstract public class PollingDataSource<T extends PollingDataSourceVO> extends D
 
                 // Check to see if this poll is running after it's next poll time, i.e. polls are
                 // backing up
-                if ((cronPattern == null) && ((startTs - fireTime) > pollingPeriodMillis)) {
+                if ((cronPattern == null) && ((startTs - fireTime - phaseOffset) > pollingPeriodMillis)) {
                     incrementUnsuccessfulPolls(fireTime);
                     return;
                 }
@@ -232,6 +279,10 @@ abstract public class PollingDataSource<T extends PollingDataSourceVO> extends D
         long sum = unsuccessfulPolls.longValue() + successfulPolls.longValue();
         messages.add(new TranslatableMessage("dsEdit.discardedPolls", unsuccessfulPolls, sum, (int) (unsuccessfulPolls
                 .doubleValue() / sum * 100)));
+        long skipped = backpressureSkippedPolls.get();
+        if (skipped > 0) {
+            messages.add(new TranslatableMessage("dsEdit.backpressureSkippedPolls", skipped));
+        }
     }
 
     @Override
@@ -277,9 +328,11 @@ abstract public class PollingDataSource<T extends PollingDataSourceVO> extends D
                 long now = Common.timer.currentTimeMillis();
                 delay = pollingPeriodMillis - (now % pollingPeriodMillis);
                 long firstPollTime = now + delay;
+                // Spread the polls of data sources with the same period over the period, the poll time stays quantized
+                phaseOffset = pollPhaseOffset(vo.getXid(), phaseWindow, pollingPeriodMillis);
                 if(LOG.isDebugEnabled())
-                    LOG.debug("First poll should be at: " + firstPollTime);
-                timerTask = new TimeoutTask(new FixedRateTrigger(new Date(firstPollTime), pollingPeriodMillis), this.timeoutClient);
+                    LOG.debug("First poll should be at: " + firstPollTime + ", running " + phaseOffset + "ms later");
+                timerTask = new TimeoutTask(new FixedRateTrigger(new Date(firstPollTime + phaseOffset), pollingPeriodMillis), this.timeoutClient);
             } else
                 timerTask = new TimeoutTask(new FixedRateTrigger(delay, pollingPeriodMillis), this.timeoutClient);
         }
@@ -296,6 +349,26 @@ abstract public class PollingDataSource<T extends PollingDataSourceVO> extends D
         super.beginPolling();
     }
 
+    /**
+     * Deterministic offset from the quantized poll time at which a data source polls, so that data sources with the
+     * same period do not all poll in the same millisecond.
+     *
+     * @param xid data source XID, the offset is hashed from it
+     * @param window maximum offset in ms, 0 for no offset
+     * @param period polling period in ms, the offset is always less than the period
+     * @return offset in ms
+     */
+    static long pollPhaseOffset(String xid, long window, long period) {
+        long bound = Math.min(window, period);
+        if (bound <= 0 || xid == null) {
+            return 0;
+        }
+        // spread similar XIDs (e.g. DS_1, DS_2) across the window
+        long h = xid.hashCode() * 0x9E3779B97F4A7C15L;
+        h ^= (h >>> 32);
+        return Math.floorMod(h, bound);
+    }
+
     @Override
     public boolean shouldInitializeIntervalLogging(DataPointRT point) {
         // we initialize interval logging on first poll instead
@@ -3,11 +3,11 @@
  */
 package com.serotonin.m2m2.rt.event.detectors;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashSet;
+import java.util.Deque;
 import java.util.List;
-import java.util.Set;
 import java.util.function.Function;
 
 import org.slf4j.Logger;
@@ -89,15 +89,21 @@ public class RateOfChangeDetectorRT extends TimeDelayedEventDetectorRT<RateOfCha
     //For display in REST api
     private double latestRoc;
 
+    /**
+     * Values received over the last RoC period plus the value in effect at its start, so the period start value can be
+     * found without querying the point's history. Only used in AVERAGE mode.
+     */
+    private final TimeWindowBuffer window = new TimeWindowBuffer();
+
     /**
      * Tasks used to see if we have dropped below our threshold due to
-     * no changes be recorded.
+     * no changes be recorded. In the order they will run.
      */
-    private final Set<RocTimeoutTask> rocTimeoutTasks;
+    private final Deque<RocTimeoutTask> rocTimeoutTasks;
 
     public RateOfChangeDetectorRT(RateOfChangeDetectorVO vo) {
         super(vo);
-        this.rocTimeoutTasks = new HashSet<>();
+        this.rocTimeoutTasks = new ArrayDeque<>();
     }
 
     public long getPeriodStartTime() {
@@ -158,7 +164,24 @@ public class RateOfChangeDetectorRT extends TimeDelayedEventDetectorRT<RateOfCha
             //Go back duration + averaging period loop over all values to get state
             periodStartTime = time - (getDurationMS() + rocDurationMs);
             currentValueFunction = (l) -> { return getValueAtOrBefore(l);};
-            List<PointValueTime> history = rt.getPointValues(periodStartTime);
+
+            //Only read the history here, from then on the window is kept up to date as values are received.
+            // Values from before the period are only needed as the start values of the first computations.
+            window.clear();
+            long windowStartTime = periodStartTime - rocDurationMs;
+            PointValueTime windowStart = getValueAtOrBefore(windowStartTime);
+            if(windowStart != null)
+                window.add(windowStart.getTime(), windowStart.getDoubleValue());
+            List<PointValueTime> history = new ArrayList<>();
+            for(PointValueTime past : rt.getPointValues(windowStartTime)) {
+                if(!window.isEmpty() && past.getTime() <= window.getLatestTime())
+                    continue;
+                if(past.getTime() < periodStartTime)
+                    window.add(past.getTime(), past.getDoubleValue());
+                else
+                    history.add(past);
+            }
+
             if(history.size() > 0) {
                 //Swap in simulation timer
                 SimulationTimer simTimer = new SimulationTimer();
@@ -286,6 +309,7 @@ public class RateOfChangeDetectorRT extends TimeDelayedEventDetectorRT<RateOfCha
             rocChanged(now);
         }else {
             latestValue = newValue;
+            window.add(newValue.getTime(), newValue.getDoubleValue());
             rocCheckTimeout(now, newValue);
             //Schedule timeout task in case we don't get any more updates
             scheduleRocTimeoutTask(now);
@@ -411,9 +435,8 @@ public class RateOfChangeDetectorRT extends TimeDelayedEventDetectorRT<RateOfCha
         long latestTime = fireTime;
         //Slide the window
         periodStartTime = computePeriodStart(fireTime);
-        PointValueTime start = getValueAtOrBefore(periodStartTime);
-        if(start != null) {
-            periodStartValue = start.getDoubleValue();
+        if(window.expireToValueAt(periodStartTime)) {
+            periodStartValue = window.getValue(0);
         }else {
             periodStartValue = null;
         }
@@ -24,9 +24,9 @@ public class SmoothnessDetectorRT extends TimeDelayedEventDetectorRT<SmoothnessD
     private final Logger log = LoggerFactory.getLogger(SmoothnessDetectorRT.class);
 
     /**
-     * State field. The current boxcar.
+     * State field. The current boxcar, guarded by itself.
      */
-    private final ObjectQueue<Double> boxcar = new ObjectQueue<>();
+    private final TimeWindowBuffer boxcar = new TimeWindowBuffer();
 
     /**
      * State field. Whether the smoothness is currently below the limit or not. This field is used to prevent multiple
@@ -49,8 +49,8 @@ public class SmoothnessDetectorRT extends TimeDelayedEventDetectorRT<SmoothnessD
     public ObjectQueue<Double> getBoxcar() {
         synchronized(boxcar) {
             ObjectQueue<Double> temp = new ObjectQueue<>(boxcar.size());
-            for (Double value : boxcar) {
-                temp.push(value);
+            for (int i = 0; i < boxcar.size(); i++) {
+                temp.push(boxcar.getValue(i));
             }
             return temp;
         }
@@ -103,11 +103,11 @@ public class SmoothnessDetectorRT extends TimeDelayedEventDetectorRT<SmoothnessD
 
         synchronized(boxcar) {
             // Add the value to the boxcar.
-            boxcar.push(newDouble);
+            boxcar.add(newValue.getTime(), newDouble);
 
             // Trim the boxcar to the max size
             while (boxcar.size() > vo.getBoxcar())
-                boxcar.pop();
+                boxcar.removeOldest();
 
             // Calculate the smoothness
             smoothness = calc();
@@ -160,7 +160,8 @@ public class SmoothnessDetectorRT extends TimeDelayedEventDetectorRT<SmoothnessD
         double sumErr = 0;
         int count = 0;
 
-        for (Double value : boxcar) {
+        for (int i = 0; i < boxcar.size(); i++) {
+            double value = boxcar.getValue(i);
             if (!Double.isNaN(prev)) {
                 double opp = value - prev;
                 double hyp = StrictMath.sqrt(0.1 + opp * opp);
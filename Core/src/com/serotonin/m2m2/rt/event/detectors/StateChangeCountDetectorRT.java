@@ -3,10 +3,6 @@
  */
 package com.serotonin.m2m2.rt.event.detectors;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,10 +14,10 @@ public class StateChangeCountDetectorRT extends TimeoutDetectorRT<StateChangeCou
     private final Logger log = LoggerFactory.getLogger(StateChangeCountDetectorRT.class);
 
     /**
-     * State field. The point values that have accumulated so far. Each call to pointChanged will drop off the values
-     * beyond the duration.
+     * State field. The times of the changes that have accumulated so far. Each call to pointChanged will drop off the
+     * changes beyond the duration. Guarded by itself.
      */
-    private final List<PointValueTime> pointValues = new LinkedList<PointValueTime>();
+    private final TimeWindowBuffer changes = new TimeWindowBuffer();
 
     /**
      * State field. Whether the state has been detected or not. This field is used to prevent multiple events being
@@ -34,9 +30,12 @@ public class StateChangeCountDetectorRT extends TimeoutDetectorRT<StateChangeCou
         super(vo);
     }
 
-    public List<PointValueTime> getPointValues() {
-        synchronized(pointValues) {
-            return new ArrayList<>(pointValues);
+    /**
+     * @return times of the changes within the duration, oldest first
+     */
+    public long[] getChangeTimes() {
+        synchronized(changes) {
+            return changes.getTimes();
         }
     }
 
@@ -89,15 +88,15 @@ public class StateChangeCountDetectorRT extends TimeoutDetectorRT<StateChangeCou
     }
 
     private void pointChanged(long time, PointValueTime value) {
-        synchronized (pointValues) {
-            // Add the new change
-            pointValues.add(value);
+        synchronized (changes) {
+            // Add the new change, only its time is needed
+            changes.add(value.getTime(), 0);
 
             // Drop off point values beyond the given time frame.
             removeOldPointValues(time);
 
             // Check if we're past the change limit.
-            if (pointValues.size() >= vo.getChangeCount()) {
+            if (changes.size() >= vo.getChangeCount()) {
                 if (!eventActive) {
                     eventActive = true;
                     eventActiveTime = value.getTime();
@@ -110,8 +109,7 @@ public class StateChangeCountDetectorRT extends TimeoutDetectorRT<StateChangeCou
                     unscheduleJob();
 
                 // Schedule a job for the deactivation of this detector.
-                long eventInactiveTime = pointValues.get(pointValues.size() - vo.getChangeCount()).getTime()
-                        + getDurationMS();
+                long eventInactiveTime = changes.getTime(changes.size() - vo.getChangeCount()) + getDurationMS();
                 scheduleJob(eventInactiveTime + 1);
             }
         }
@@ -119,20 +117,20 @@ public class StateChangeCountDetectorRT extends TimeoutDetectorRT<StateChangeCou
 
     @Override
     public void scheduleTimeoutImpl(long fireTime) {
-        synchronized (pointValues) {
+        synchronized (changes) {
             // This call was scheduled to occur at the eventInactiveTime.
             // Strictly speaking, the fact this method was called implies that the detector is going from active to
             // inactive. However, it really doesn't hurt to do a bit of cleanup and checking, so what the heck...
             removeOldPointValues(fireTime);
 
-            if (pointValues.size() >= vo.getChangeCount()) {
+            if (changes.size() >= vo.getChangeCount()) {
                 // Something has gone wrong.
                 StringBuilder sb = new StringBuilder();
                 sb.append("I was supposed to go inactive, but there are still too many state changes in my list: ");
                 sb.append("fireTime=").append(fireTime);
                 sb.append(", list=[");
-                for (PointValueTime pvt : pointValues)
-                    sb.append(pvt.getTime()).append(", ");
+                for (int i = 0; i < changes.size(); i++)
+                    sb.append(changes.getTime(i)).append(", ");
                 sb.append("], durationMS=").append(getDurationMS());
                 sb.append(", changeCount=").append(vo.getChangeCount());
                 log.error(sb.toString(), new Exception());
@@ -145,12 +143,7 @@ public class StateChangeCountDetectorRT extends TimeoutDetectorRT<StateChangeCou
     }
 
     private void removeOldPointValues(long time) {
-        while (pointValues.size() > 0) {
-            if (pointValues.get(0).getTime() < time - getDurationMS())
-                pointValues.remove(0);
-            else
-                break;
-        }
+        changes.expireBefore(time - getDurationMS());
     }
 
     /* (non-Javadoc)
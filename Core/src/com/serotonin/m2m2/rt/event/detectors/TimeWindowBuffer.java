@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.rt.event.detectors;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Time ordered (time, value) pairs for detectors that keep a window of recent values. The pairs are held in primitive
+ * arrays used as a ring buffer so that adding a value does not create any objects, the arrays only grow when the window
+ * holds more values than ever before.
+ *
+ * <p>Index 0 is the oldest entry. Not thread safe.</p>
+ */
+public class TimeWindowBuffer {
+
+    private long[] times;
+    private double[] values;
+    private int head;
+    private int size;
+
+    public TimeWindowBuffer() {
+        this(16);
+    }
+
+    public TimeWindowBuffer(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        this.times = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    /**
+     * Add an entry, times must not be before the time of the newest entry.
+     */
+    public void add(long time, double value) {
+        if (size == times.length) {
+            grow();
+        }
+        int index = physical(size);
+        times[index] = time;
+        values[index] = value;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    public long getTime(int index) {
+        return times[physical(checkIndex(index))];
+    }
+
+    public double getValue(int index) {
+        return values[physical(checkIndex(index))];
+    }
+
+    public long getLatestTime() {
+        return getTime(size - 1);
+    }
+
+    public double getLatestValue() {
+        return getValue(size - 1);
+    }
+
+    /**
+     * @return the times of all entries, oldest first
+     */
+    public long[] getTimes() {
+        long[] result = new long[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = times[physical(i)];
+        }
+        return result;
+    }
+
+    /**
+     * @return the values of all entries, oldest first
+     */
+    public double[] getValues() {
+        double[] result = new double[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = values[physical(i)];
+        }
+        return result;
+    }
+
+    /**
+     * Remove the oldest entry.
+     */
+    public void removeOldest() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        head = physical(1);
+        size--;
+    }
+
+    /**
+     * Remove all entries with a time before the given time.
+     *
+     * @return number of entries removed
+     */
+    public int expireBefore(long time) {
+        int removed = 0;
+        while (size > 0 && times[head] < time) {
+            removeOldest();
+            removed++;
+        }
+        return removed;
+    }
+
+    /**
+     * Remove all entries that are older than the latest entry at or before the given time. The oldest remaining
+     * entry is then the value in effect at that time, if there is one.
+     *
+     * @return true if there is an entry at or before the time (at index 0)
+     */
+    public boolean expireToValueAt(long time) {
+        while (size > 1 && times[physical(1)] <= time) {
+            removeOldest();
+        }
+        return size > 0 && times[head] <= time;
+    }
+
+    private int physical(int index) {
+        int i = head + index;
+        return i < times.length ? i : i - times.length;
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        return index;
+    }
+
+    private void grow() {
+        int capacity = times.length * 2;
+        long[] newTimes = new long[capacity];
+        double[] newValues = new double[capacity];
+        int first = Math.min(size, times.length - head);
+        System.arraycopy(times, head, newTimes, 0, first);
+        System.arraycopy(values, head, newValues, 0, first);
+        System.arraycopy(times, 0, newTimes, first, size - first);
+        System.arraycopy(values, 0, newValues, first, size - first);
+        times = newTimes;
+        values = newValues;
+        head = 0;
+    }
+}
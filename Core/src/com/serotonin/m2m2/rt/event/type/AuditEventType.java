@@ -238,4 +238,9 @@ public class AuditEventType extends EventType {
     public MangoPermission getEventPermission(Map<String, Object> context, PermissionService service) {
         return MangoPermission.superadminOnly();
     }
+
+    @Override
+    public MangoPermission getNotificationPermission(PermissionService service) {
+        return MangoPermission.superadminOnly();
+    }
 }
@@ -182,6 +182,11 @@ public class DataPointEventType extends EventType {
         return service.hasEventsSuperadminViewPermission(user) || service.hasPermission(user, this.readPermission.get());
     }
 
+    @Override
+    public MangoPermission getNotificationPermission(PermissionService service) {
+        return this.readPermission.get();
+    }
+
     @Override
     public MangoPermission getEventPermission(Map<String, Object> context, PermissionService service) {
         DataPointVO dp = (DataPointVO)context.get(PointEventDetectorRT.DATA_POINT_CONTEXT_KEY);
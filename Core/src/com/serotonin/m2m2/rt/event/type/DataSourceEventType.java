@@ -168,6 +168,11 @@ public class DataSourceEventType extends EventType {
         return service.hasEventsSuperadminViewPermission(user) || service.hasDataSourceReadPermission(user, dataSourceId);
     }
 
+    @Override
+    public MangoPermission getNotificationPermission(PermissionService service) {
+        return service.getDataSourceReadPermission(dataSourceId);
+    }
+
     @Override
     public MangoPermission getEventPermission(Map<String, Object> context, PermissionService service) {
         DataSourceVO vo = (DataSourceVO)context.get(DataSourceRT.DATA_SOURCE_EVENT_CONTEXT_KEY);
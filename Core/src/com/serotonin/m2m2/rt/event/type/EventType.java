@@ -214,6 +214,18 @@ abstract public class EventType implements JsonSerializable {
      */
     abstract public MangoPermission getEventPermission(Map<String, Object> context, PermissionService service);
 
+    /**
+     * The permission a user must hold to be notified of this event, users with the events superadmin view permission
+     * are always notified. Users are indexed by these permissions so recipients can be found without checking
+     * {@link #hasPermission(PermissionHolder, PermissionService)} for every user.
+     *
+     * @return permission equivalent to hasPermission, or null if it can't be expressed as a single permission in which
+     * case hasPermission is checked for every user
+     */
+    public MangoPermission getNotificationPermission(PermissionService service) {
+        return null;
+    }
+
     /**
      * Determines if the notification of this event to the given user should be suppressed. Useful if the action of the
      * user resulted in the event being raised.
@@ -79,4 +79,9 @@ public class MissingEventType extends EventType{
     public MangoPermission getEventPermission(Map<String, Object> context, PermissionService service) {
         return MangoPermission.superadminOnly();
     }
+
+    @Override
+    public MangoPermission getNotificationPermission(PermissionService service) {
+        return MangoPermission.superadminOnly();
+    }
 }
@@ -158,4 +158,9 @@ public class PublisherEventType extends EventType {
     public MangoPermission getEventPermission(Map<String, Object> context, PermissionService service) {
         return MangoPermission.superadminOnly();
     }
+
+    @Override
+    public MangoPermission getNotificationPermission(PermissionService service) {
+        return MangoPermission.superadminOnly();
+    }
 }
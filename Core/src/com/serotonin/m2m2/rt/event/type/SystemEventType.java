@@ -57,6 +57,8 @@ public class SystemEventType extends EventType {
     public static final String TYPE_REJECTED_WORK_ITEM = "REJECTED_WORK_ITEM";
     public static final String TYPE_MISSING_MODULE_DEPENDENCY = "MISSING_MODULE_DEPENDENCY";
     public static final String TYPE_NEW_USER_REGISTERED = "TYPE_NEW_USER_REGISTERED";
+    public static final String TYPE_POINT_VALUE_BACKPRESSURE = "POINT_VALUE_BACKPRESSURE";
+    public static final String TYPE_EVENT_STORM = "EVENT_STORM";
 
     private static final ExportNames TYPE_NAMES = new ExportNames();
     private static final ConcurrentHashMap<String, EventTypeVO> EVENT_TYPES = new ConcurrentHashMap<>();
@@ -242,6 +244,11 @@ public class SystemEventType extends EventType {
         return MangoPermission.superadminOnly();
     }
 
+    @Override
+    public MangoPermission getNotificationPermission(PermissionService service) {
+        return MangoPermission.superadminOnly();
+    }
+
     private String getXidById() {
         String xid = null;
         if (systemEventType.equals(TYPE_USER_LOGIN)) {
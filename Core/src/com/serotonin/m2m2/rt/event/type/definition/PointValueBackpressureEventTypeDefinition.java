@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.rt.event.type.definition;
+
+import com.serotonin.m2m2.i18n.Translations;
+import com.serotonin.m2m2.module.SystemEventTypeDefinition;
+import com.serotonin.m2m2.rt.event.AlarmLevels;
+import com.serotonin.m2m2.rt.event.type.SystemEventType;
+
+/**
+ * Raised while the point value write queue is above its high watermark and data sources are skipping polls.
+ */
+public class PointValueBackpressureEventTypeDefinition extends SystemEventTypeDefinition {
+
+    @Override
+    public String getTypeName() {
+       return SystemEventType.TYPE_POINT_VALUE_BACKPRESSURE;
+    }
+
+    @Override
+    public String getDescriptionKey() {
+        return "event.system.pointValueBackpressure";
+    }
+
+    @Override
+    public String getEventListLink(int ref1, int ref2, Translations translations) {
+        return null;
+    }
+
+    @Override
+    public boolean supportsReferenceId1() {
+        return false;
+    }
+
+    @Override
+    public boolean supportsReferenceId2() {
+        return false;
+    }
+
+    @Override
+    public AlarmLevels getDefaultAlarmLevel() {
+        return AlarmLevels.URGENT;
+    }
+}
@@ -27,6 +27,7 @@ import com.serotonin.ShouldNeverHappenException;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.db.dao.SystemSettingsDao;
 import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.DataPointEventNotifyWorkItem;
 import com.serotonin.m2m2.rt.maint.work.WorkItem;
 import com.serotonin.m2m2.util.timeout.HighPriorityTask;
 import com.serotonin.m2m2.util.timeout.TaskRejectionHandler;
@@ -53,6 +54,10 @@ import com.serotonin.util.ILifecycleState;
 public class BackgroundProcessingImpl implements BackgroundProcessing {
     final Logger log = LoggerFactory.getLogger(BackgroundProcessingImpl.class);
 
+    public static final String DATA_POINT_LISTENER_QUEUE_MONITOR_ID = "com.serotonin.m2m2.rt.maint.DataPointListenerDispatcher.queueSize.";
+    public static final String DATA_POINT_LISTENER_LAG_MONITOR_ID = "com.serotonin.m2m2.rt.maint.DataPointListenerDispatcher.lag.";
+    public static final String DATA_POINT_LISTENER_HIGH_WATER_MONITOR_ID = "com.serotonin.m2m2.rt.maint.DataPointListenerDispatcher.highWater";
+
     //Private access to our timer
     protected AbstractTimer timer;
     protected OrderedThreadPoolExecutor highPriorityService;
@@ -60,6 +65,10 @@ public class BackgroundProcessingImpl implements BackgroundProcessing {
     protected TaskRejectionHandler mediumPriorityRejectionHandler;
     protected OrderedThreadPoolExecutor mediumPriorityService;
     protected ThreadPoolExecutor lowPriorityService;
+    /**
+     * Runs data point listener notifications when enabled, otherwise they run on the medium priority pool
+     */
+    protected DataPointListenerDispatcher dataPointListenerDispatcher;
 
     protected ILifecycleState state = ILifecycleState.PRE_INITIALIZE;
 
@@ -86,7 +95,12 @@ public class BackgroundProcessingImpl implements BackgroundProcessing {
     @Override
     public void addWorkItem(final WorkItem item) {
         try{
-            if (item.getPriority() == WorkItem.PRIORITY_HIGH){
+            if (dataPointListenerDispatcher != null && item instanceof DataPointEventNotifyWorkItem) {
+                if (!dataPointListenerDispatcher.dispatch(((DataPointEventNotifyWorkItem) item).getSourceXid(), item)) {
+                    throw new RejectedExecutionException("Data point listener dispatcher is terminated");
+                }
+            }
+            else if (item.getPriority() == WorkItem.PRIORITY_HIGH){
                 timer.execute(new RejectableWorkItemRunnable(item, this.highPriorityRejectionHandler));
             }
             else if (item.getPriority() == WorkItem.PRIORITY_MEDIUM){
@@ -335,6 +349,12 @@ public class BackgroundProcessingImpl implements BackgroundProcessing {
         }
         this.highPriorityService.setRejectedExecutionHandler(this.highPriorityRejectionHandler);
 
+        // Polls and other timer tasks block on I/O, run them on virtual threads when enabled
+        boolean virtualThreads = VirtualThreads.isEnabled();
+        if (virtualThreads) {
+            this.highPriorityService.setThreadFactory(new MangoThreadFactory("high", Thread.MAX_PRIORITY, Common.getModuleClassLoader(), null, true));
+        }
+
         //Adjust the high priority pool sizes now
         int maxPoolSize = SystemSettingsDao.getInstance().getIntValue(SystemSettingsDao.HIGH_PRI_MAX_POOL_SIZE);
         this.highPriorityService.setMaximumPoolSize(maxPoolSize);
@@ -356,7 +376,7 @@ public class BackgroundProcessingImpl implements BackgroundProcessing {
                 60L,
                 TimeUnit.SECONDS,
                 new LinkedBlockingQueue<Runnable>(),
-                new MangoThreadFactory("medium", Thread.MAX_PRIORITY - 2, Common.getModuleClassLoader()),
+                new MangoThreadFactory("medium", Thread.MAX_PRIORITY - 2, Common.getModuleClassLoader(), null, virtualThreads),
                 mediumPriorityRejectionHandler,
                 Common.envProps.getBoolean("runtime.realTimeTimer.flushTaskQueueOnReject", false),
                 Common.timer.getTimeSource());
@@ -366,7 +386,31 @@ public class BackgroundProcessingImpl implements BackgroundProcessing {
         if(corePoolSize < LOW_PRI_MAX_POOL_SIZE_MIN)
             corePoolSize = LOW_PRI_MAX_POOL_SIZE_MIN;
         lowPriorityService = new ThreadPoolExecutor(corePoolSize, corePoolSize, 0L, TimeUnit.MILLISECONDS,
-                new LinkedBlockingQueue<Runnable>(), new MangoThreadFactory("low", Thread.NORM_PRIORITY, Common.getModuleClassLoader()));
+                new LinkedBlockingQueue<Runnable>(), new MangoThreadFactory("low", Thread.NORM_PRIORITY, Common.getModuleClassLoader(), null, virtualThreads));
+
+        if (Common.envProps.getBoolean("runtime.dataPointListeners.dedicated", false)) {
+            int shards = Common.envProps.getInt("runtime.dataPointListeners.shards", Runtime.getRuntime().availableProcessors());
+            dataPointListenerDispatcher = new DataPointListenerDispatcher(
+                    Math.max(1, shards),
+                    Math.max(1, Common.envProps.getInt("runtime.dataPointListeners.queueSize", 10000)),
+                    Math.max(1, Common.envProps.getInt("runtime.dataPointListeners.batchSize", 100)),
+                    new MangoThreadFactory("listener", Thread.MAX_PRIORITY - 2, Common.getModuleClassLoader(), null, virtualThreads));
+            for (int i = 0; i < dataPointListenerDispatcher.getShardCount(); i++) {
+                int shard = i;
+                Common.MONITORED_VALUES.<Integer>create(DATA_POINT_LISTENER_QUEUE_MONITOR_ID + shard)
+                        .name(new TranslatableMessage("internal.monitor.DATA_POINT_LISTENER_QUEUE", shard))
+                        .supplier(() -> dataPointListenerDispatcher.getQueueSize(shard))
+                        .buildReadThrough();
+                Common.MONITORED_VALUES.<Long>create(DATA_POINT_LISTENER_LAG_MONITOR_ID + shard)
+                        .name(new TranslatableMessage("internal.monitor.DATA_POINT_LISTENER_LAG", shard))
+                        .supplier(() -> dataPointListenerDispatcher.getLag(shard))
+                        .buildReadThrough();
+            }
+            Common.MONITORED_VALUES.<Long>create(DATA_POINT_LISTENER_HIGH_WATER_MONITOR_ID)
+                    .name(new TranslatableMessage("internal.monitor.DATA_POINT_LISTENER_HIGH_WATER"))
+                    .supplier(() -> dataPointListenerDispatcher.getHighWaterCount())
+                    .buildReadThrough();
+        }
         this.state = ILifecycleState.RUNNING;
     }
 
@@ -376,6 +420,10 @@ public class BackgroundProcessingImpl implements BackgroundProcessing {
         state = ILifecycleState.TERMINATING;
 
         // Close the executor services.
+        if(dataPointListenerDispatcher != null) {
+            dataPointListenerDispatcher.terminate();
+        }
+
         if(lowPriorityService != null) {
             lowPriorityService.shutdown();
         }
@@ -435,6 +483,19 @@ public class BackgroundProcessingImpl implements BackgroundProcessing {
                 rewaits--;
             }
 
+            if (dataPointListenerDispatcher != null) {
+                if (dataPointListenerDispatcher.joinTermination(5, TimeUnit.SECONDS)) {
+                    log.info("All data point listener notifications completed.");
+                } else {
+                    log.info("Data point listener notifications did not complete within 5 seconds.");
+                }
+                for (int i = 0; i < dataPointListenerDispatcher.getShardCount(); i++) {
+                    Common.MONITORED_VALUES.remove(DATA_POINT_LISTENER_QUEUE_MONITOR_ID + i);
+                    Common.MONITORED_VALUES.remove(DATA_POINT_LISTENER_LAG_MONITOR_ID + i);
+                }
+                Common.MONITORED_VALUES.remove(DATA_POINT_LISTENER_HIGH_WATER_MONITOR_ID);
+            }
+
             //Wait for the high tasks now
             rewaits = Common.envProps.getInt("runtime.shutdown.highTimeout", 60) - rewaits;
             while(rewaits > 0) {
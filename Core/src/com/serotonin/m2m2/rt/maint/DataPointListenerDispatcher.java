@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.rt.maint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.serotonin.m2m2.rt.maint.work.WorkItem;
+
+/**
+ * Runs data point listener notifications on a fixed number of single threaded shards instead of the medium priority
+ * pool. Each data point is hashed onto one shard so notifications for a point are always run in the order they were
+ * dispatched, without the per point task queues of the {@link com.serotonin.timer.OrderedThreadPoolExecutor}.
+ *
+ * <p>Shard queues are unbounded, notifications are never dropped as event detectors and meta points are listeners.
+ * Neither do dispatching threads wait for a shard to catch up, they may hold locks a listener needs (e.g. a data
+ * point's interval logging lock while a meta point listener updates the same point) so waiting could deadlock. Instead a
+ * warning is logged each time a shard's queue reaches the high water mark, the queue sizes and lag of each shard are
+ * available to monitor.</p>
+ *
+ * <p>Notifications are not merged, every listener sees every value. Listeners that only need the latest value are
+ * coalesced before they are dispatched, see {@link com.serotonin.m2m2.rt.dataImage.LatestValueNotifier}.</p>
+ */
+public class DataPointListenerDispatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(DataPointListenerDispatcher.class);
+
+    private final Shard[] shards;
+    private final int highWaterMark;
+    private final int batchSize;
+    private final LongAdder highWaterCount = new LongAdder();
+    private volatile boolean running = true;
+
+    /**
+     * @param shardCount number of shards, each has its own thread
+     * @param highWaterMark number of notifications queued in a shard at which a warning is logged
+     * @param batchSize maximum number of notifications a shard takes from its queue at once
+     */
+    public DataPointListenerDispatcher(int shardCount, int highWaterMark, int batchSize, ThreadFactory threadFactory) {
+        if (shardCount <= 0 || highWaterMark <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("shardCount, highWaterMark and batchSize must be greater than 0");
+        }
+        this.highWaterMark = highWaterMark;
+        this.batchSize = batchSize;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(threadFactory);
+        }
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+    }
+
+    /**
+     * Queue a notification to run after all earlier notifications with the same key.
+     *
+     * @param key the data point's XID
+     * @return false if the dispatcher has been terminated and the notification was not queued
+     */
+    public boolean dispatch(String key, WorkItem item) {
+        if (!running) {
+            return false;
+        }
+        int index = shardIndex(key);
+        Shard shard = shards[index];
+        int size = shard.add(new Entry(item, System.nanoTime()));
+        if (size >= highWaterMark && shard.overHighWater.compareAndSet(false, true)) {
+            highWaterCount.increment();
+            LOG.warn("Data point listener shard {} has {} notifications queued, listeners are not keeping up with data point updates",
+                    index, size);
+        }
+        return true;
+    }
+
+    public boolean isTerminated() {
+        return !running;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @return number of notifications waiting in a shard
+     */
+    public int getQueueSize(int shard) {
+        return shards[shard].size.get();
+    }
+
+    /**
+     * @return time in ms the most recently started notification of a shard waited in its queue
+     */
+    public long getLag(int shard) {
+        return TimeUnit.NANOSECONDS.toMillis(shards[shard].lagNanos);
+    }
+
+    /**
+     * @return number of times a shard's queue has reached the high water mark
+     */
+    public long getHighWaterCount() {
+        return highWaterCount.sum();
+    }
+
+    /**
+     * Stop accepting notifications, the shards finish running the notifications already queued.
+     */
+    public void terminate() {
+        running = false;
+        for (Shard shard : shards) {
+            shard.wakeUp();
+        }
+    }
+
+    /**
+     * Wait for the shard threads to finish.
+     * @return true if all threads finished within the timeout
+     */
+    public boolean joinTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Shard shard : shards) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining > 0) {
+                shard.thread.join(remaining);
+            }
+            if (shard.thread.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int shardIndex(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return (h & 0x7fffffff) % shards.length;
+    }
+
+    private static final class Entry {
+        private final WorkItem item;
+        private final long queuedNanos;
+
+        private Entry(WorkItem item, long queuedNanos) {
+            this.item = item;
+            this.queuedNanos = queuedNanos;
+        }
+    }
+
+    private final class Shard implements Runnable {
+        private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        /**
+         * Set when the queue reaches the high water mark, cleared once it has drained to half of it
+         */
+        private final AtomicBoolean overHighWater = new AtomicBoolean();
+        private final Thread thread;
+        private volatile boolean idle;
+        private volatile long lagNanos;
+
+        private Shard(ThreadFactory threadFactory) {
+            this.thread = threadFactory.newThread(this);
+        }
+
+        /**
+         * @return number of notifications in the queue
+         */
+        private int add(Entry entry) {
+            queue.add(entry);
+            int size = this.size.incrementAndGet();
+            if (idle) {
+                wakeUp();
+            }
+            return size;
+        }
+
+        private void wakeUp() {
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            List<Entry> batch = new ArrayList<>(batchSize);
+            while (true) {
+                Entry entry;
+                while (batch.size() < batchSize && (entry = queue.poll()) != null) {
+                    batch.add(entry);
+                }
+                if (batch.isEmpty()) {
+                    if (!running) {
+                        return;
+                    }
+                    idle = true;
+                    // check again as an entry may have been added before idle was set
+                    if (queue.isEmpty() && running) {
+                        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+                    }
+                    idle = false;
+                    continue;
+                }
+
+                if (size.addAndGet(-batch.size()) <= highWaterMark / 2) {
+                    overHighWater.set(false);
+                }
+                for (Entry e : batch) {
+                    lagNanos = System.nanoTime() - e.queuedNanos;
+                    try {
+                        e.item.execute();
+                    } catch (Throwable t) {
+                        LOG.error("Error running {}", e.item.getDescription(), t);
+                    }
+                }
+                batch.clear();
+            }
+        }
+    }
+}
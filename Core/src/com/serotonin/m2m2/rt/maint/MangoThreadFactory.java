@@ -31,9 +31,16 @@ public class MangoThreadFactory implements ThreadFactory {
 	/**
      */
 	public MangoThreadFactory(String namePrefix, int threadPriority, ClassLoader moduleClassLoader, UncaughtExceptionHandler uncaughtExceptionHandler){
+		this(namePrefix, threadPriority, moduleClassLoader, uncaughtExceptionHandler, false);
+	}
+
+	/**
+	 * @param virtual create virtual threads if {@link VirtualThreads#isEnabled()}, the priority does not apply to them
+	 */
+	public MangoThreadFactory(String namePrefix, int threadPriority, ClassLoader moduleClassLoader, UncaughtExceptionHandler uncaughtExceptionHandler, boolean virtual){
 		this.prefix = namePrefix + "-";
 		this.priority = threadPriority;
-		this.factory = Executors.defaultThreadFactory();
+		this.factory = virtual && VirtualThreads.isEnabled() ? VirtualThreads.factory("virtual-") : Executors.defaultThreadFactory();
 		this.contextClassLoader = moduleClassLoader;
 		this.uncaughtExceptionHandler = uncaughtExceptionHandler;
 	}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.m2m2.rt.maint;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.serotonin.m2m2.Common;
+
+/**
+ * Creates virtual threads for blocking I/O work (polls, publisher send threads and stream listeners) when
+ * {@code runtime.virtualThreads} is enabled. Mango is compiled for Java 11 so the virtual thread builder is looked up
+ * reflectively, it is only available when running on Java 21 or later. Where it is not available platform threads are
+ * used as before.
+ */
+public final class VirtualThreads {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private static final Method OF_VIRTUAL;
+    private static final Method NAME;
+    private static final Method NAME_COUNTER;
+    private static final Method FACTORY;
+    private static final Method UNSTARTED;
+    private static final boolean SUPPORTED;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method nameCounter = null;
+        Method factory = null;
+        Method unstarted = null;
+        boolean supported = false;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class);
+            nameCounter = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            unstarted = builder.getMethod("unstarted", Runnable.class);
+            // throws when virtual threads are a preview feature that is not enabled
+            ofVirtual.invoke(null);
+            supported = true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // not available on this JVM
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        NAME_COUNTER = nameCounter;
+        FACTORY = factory;
+        UNSTARTED = unstarted;
+        SUPPORTED = supported;
+    }
+
+    private static volatile Boolean enabled;
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if the running JVM can create virtual threads
+     */
+    public static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    /**
+     * @return true if virtual threads are enabled in the env properties and supported by the running JVM
+     */
+    public static boolean isEnabled() {
+        Boolean result = enabled;
+        if (result == null) {
+            boolean configured = Common.envProps.getBoolean("runtime.virtualThreads", false);
+            if (configured && !SUPPORTED) {
+                LOG.warn("Virtual threads are enabled but not supported by Java {}, using platform threads", Runtime.version());
+            }
+            enabled = result = configured && SUPPORTED;
+        }
+        return result;
+    }
+
+    /**
+     * Create a factory for virtual threads named with the prefix followed by a counter.
+     *
+     * @throws UnsupportedOperationException if virtual threads are not supported
+     */
+    public static ThreadFactory factory(String namePrefix) {
+        Object builder = invoke(NAME_COUNTER, builder(), namePrefix, 0L);
+        return (ThreadFactory) invoke(FACTORY, builder);
+    }
+
+    /**
+     * Create an unstarted virtual thread.
+     *
+     * @throws UnsupportedOperationException if virtual threads are not supported
+     */
+    public static Thread newThread(String name, Runnable task) {
+        Object builder = invoke(NAME, builder(), name);
+        return (Thread) invoke(UNSTARTED, builder, task);
+    }
+
+    private static Object builder() {
+        if (!SUPPORTED) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by Java " + Runtime.version());
+        }
+        return invoke(OF_VIRTUAL, null);
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (IllegalAccessException e) {
+            throw new UnsupportedOperationException(e);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
@@ -170,17 +170,13 @@ abstract public class PublisherRT<T extends PublisherVO, POINT extends Published
     void publish(POINT vo, PointValueTime newValue) {
         queue.add(vo, newValue);
 
-        synchronized (sendThread) {
-            sendThread.notify();
-        }
+        sendThread.wakeUp();
     }
 
     public void publish(POINT vo, List<PointValueTime> newValues) {
         queue.add(vo, newValues);
 
-        synchronized (sendThread) {
-            sendThread.notify();
-        }
+        sendThread.wakeUp();
     }
 
     /**
@@ -203,9 +199,7 @@ abstract public class PublisherRT<T extends PublisherVO, POINT extends Published
     protected void attributeChanged(POINT vo, Map<String, Object> attributes) {
         if(this.vo.isPublishAttributeChanges()) {
             attributesChangedQueue.add(vo, attributes);
-            synchronized (sendThread) {
-                sendThread.notify();
-            }
+            sendThread.wakeUp();
         }
     }
 
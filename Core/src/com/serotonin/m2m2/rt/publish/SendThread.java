@@ -3,17 +3,34 @@
  */
 package com.serotonin.m2m2.rt.publish;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.infiniteautomation.mango.spring.components.RunAs;
 import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.rt.maint.VirtualThreads;
 import com.serotonin.util.ILifecycle;
 
+/**
+ * Thread that sends a publisher's values. When virtual threads are enabled {@link #runImpl()} runs on a virtual thread
+ * rather than on this thread, waiting is done with a {@link Lock} so that it does not pin the virtual thread's carrier.
+ */
 abstract public class SendThread extends Thread implements ILifecycle {
     private static final Logger LOG = LoggerFactory.getLogger(SendThread.class);
-    private boolean running;
+    private volatile boolean running;
     private final RunAs runAs;
+    private final Lock lock = new ReentrantLock();
+    private final Condition wakeUpCondition = lock.newCondition();
+    private boolean wokenUp;
+    /**
+     * The thread running {@link #runImpl()}, either this thread or a virtual thread
+     */
+    private volatile Thread runner = this;
 
     public SendThread(String threadName) {
         super(threadName);
@@ -23,7 +40,10 @@ abstract public class SendThread extends Thread implements ILifecycle {
     @Override
     public void initialize(boolean safe) {
         running = true;
-        start();
+        if (VirtualThreads.isEnabled()) {
+            runner = VirtualThreads.newThread(getName(), this);
+        }
+        runner.start();
     }
 
     @Override
@@ -31,12 +51,28 @@ abstract public class SendThread extends Thread implements ILifecycle {
         running = false;
 
         // Notify to break out of any wait.
-        synchronized (this) {
-            notify();
-        }
+        wakeUp();
 
         // Interrupt to break out of any sleep.
-        interrupt();
+        runner.interrupt();
+    }
+
+    /**
+     * Wake the thread up if it is waiting in {@link #waitImpl(long)}, or make the next wait return immediately.
+     */
+    public void wakeUp() {
+        lock.lock();
+        try {
+            wokenUp = true;
+            wakeUpCondition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        // Subclasses may wait on this thread's monitor
+        synchronized (this) {
+            notifyAll();
+        }
     }
 
     protected boolean isRunning() {
@@ -46,7 +82,7 @@ abstract public class SendThread extends Thread implements ILifecycle {
     @Override
     public void joinTermination() {
         try {
-            join();
+            runner.join();
         }
         catch (InterruptedException e) {
             // no op
@@ -64,14 +100,22 @@ abstract public class SendThread extends Thread implements ILifecycle {
     }
 
     protected void waitImpl(long time) {
-        synchronized (this) {
-            try {
-                wait(time);
-            }
-            catch (InterruptedException e1) {
-                // no op
+        lock.lock();
+        try {
+            if (!wokenUp && running) {
+                if (time > 0)
+                    wakeUpCondition.await(time, TimeUnit.MILLISECONDS);
+                else
+                    wakeUpCondition.await();
             }
         }
+        catch (InterruptedException e1) {
+            // no op
+        }
+        finally {
+            wokenUp = false;
+            lock.unlock();
+        }
     }
 
     protected void sleepImpl(long time) {
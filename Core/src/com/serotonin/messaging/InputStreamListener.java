@@ -2,13 +2,21 @@ package com.serotonin.messaging;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.lang3.StringUtils;
 
+import com.serotonin.m2m2.rt.maint.VirtualThreads;
+
 /**
  * This class provides a stoppable listener for an input stream that sends arbitrary information. A read() call to an
  * input stream will typically not return as long as the stream is not sending any data. This class provides a way for
  * stream listeners to safely listen and still respond when they are told to stop.
+ *
+ * The listener runs on a virtual thread when they are enabled, see {@link VirtualThreads}.
  * 
  * @author Matthew Lohbihler
  */
@@ -18,6 +26,8 @@ public class InputStreamListener implements Runnable {
     private final InputStream in;
     private final DataConsumer consumer;
     private volatile boolean running = true;
+    private final Lock lock = new ReentrantLock();
+    private final Condition stopped = lock.newCondition();
 
     /**
      * Defaulted to 20ms, this value tells the listener how long to wait between polls. Setting this to very small
@@ -42,15 +52,24 @@ public class InputStreamListener implements Runnable {
     }
 
     public void start(String threadName) {
-        Thread thread = new Thread(this, threadName);
-        thread.setDaemon(true);
+        Thread thread;
+        if (VirtualThreads.isEnabled()) {
+            // virtual threads are always daemon threads
+            thread = VirtualThreads.newThread(threadName, this);
+        } else {
+            thread = new Thread(this, threadName);
+            thread.setDaemon(true);
+        }
         thread.start();
     }
 
     public void stop() {
         running = false;
-        synchronized (this) {
-            notify();
+        lock.lock();
+        try {
+            stopped.signalAll();
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -61,13 +80,17 @@ public class InputStreamListener implements Runnable {
             while (running) {
                 try {
                     if (in.available() == 0) {
-                        synchronized (this) {
-                            try {
-                                wait(readDelay);
-                            }
-                            catch (InterruptedException e) {
-                                // no op
-                            }
+                        // a lock rather than a monitor so that a virtual thread does not pin its carrier
+                        lock.lock();
+                        try {
+                            if (running)
+                                stopped.await(readDelay, TimeUnit.MILLISECONDS);
+                        }
+                        catch (InterruptedException e) {
+                            // no op
+                        }
+                        finally {
+                            lock.unlock();
                         }
                         continue;
                     }
@@ -1,6 +1,15 @@
 package com.serotonin.messaging;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.serotonin.io.StreamUtils;
 import com.serotonin.log.BaseIOLog;
@@ -16,6 +25,10 @@ import com.serotonin.util.queue.ByteQueue;
  * <li>Listen for unsolicited requests.</li>
  * </ol>
  * 
+ * Requests can also be pipelined with {@link #sendAsync(OutgoingRequestMessage)} for devices that match responses to
+ * requests with a transaction id. Up to {@link #getPipelineWindow()} requests are outstanding at once, the rest are
+ * queued and sent as responses arrive.
+ * 
  * @author Matthew Lohbihler
  */
 public class MessageControl implements DataConsumer {
@@ -32,6 +45,7 @@ public class MessageControl implements DataConsumer {
     private int retries = DEFAULT_RETRIES;
     private int timeout = DEFAULT_TIMEOUT;
     private int discardDataDelay = 0;
+    private volatile int pipelineWindow = 1;
     private long lastDataTimestamp;
 
     private BaseIOLog ioLog;
@@ -40,6 +54,11 @@ public class MessageControl implements DataConsumer {
     private final WaitingRoom waitingRoom = new WaitingRoom();
     private final ByteQueue dataBuffer = new ByteQueue();
 
+    // guarded by pipelineLock
+    private final Object pipelineLock = new Object();
+    private final List<PipelinedRequest> pipelineQueue = new LinkedList<>();
+    private final Set<PipelinedRequest> pipelineInFlight = new LinkedHashSet<>();
+
     public void start(Transport transport, MessageParser messageParser, RequestHandler handler,
             WaitingRoomKeyFactory waitingRoomKeyFactory) throws IOException {
         this.transport = transport;
@@ -52,6 +71,15 @@ public class MessageControl implements DataConsumer {
 
     public void close() {
         transport.removeConsumer();
+
+        List<PipelinedRequest> pending;
+        synchronized (pipelineLock) {
+            pending = new ArrayList<>(pipelineQueue);
+            pending.addAll(pipelineInFlight);
+            pipelineQueue.clear();
+        }
+        for (PipelinedRequest p : pending)
+            complete(p, null, new IOException("Message control closed, request=" + p.request));
     }
 
     public void setExceptionHandler(MessagingExceptionHandler exceptionHandler) {
@@ -85,6 +113,23 @@ public class MessageControl implements DataConsumer {
         this.discardDataDelay = discardDataDelay;
     }
 
+    public int getPipelineWindow() {
+        return pipelineWindow;
+    }
+
+    /**
+     * @param pipelineWindow
+     *            the maximum number of requests sent with {@link #sendAsync(OutgoingRequestMessage)} that may be
+     *            awaiting a response at the same time. Only use more than 1 if the responses can be told apart by the
+     *            {@link WaitingRoomKeyFactory}.
+     */
+    public void setPipelineWindow(int pipelineWindow) {
+        if (pipelineWindow < 1)
+            throw new IllegalArgumentException("Pipeline window must be at least 1");
+        this.pipelineWindow = pipelineWindow;
+        dispatchPipelined();
+    }
+
     public BaseIOLog getIoLog() {
         return ioLog;
     }
@@ -134,6 +179,8 @@ public class MessageControl implements DataConsumer {
             finally {
                 // Leave the waiting room.
                 waitingRoom.leave(key);
+                // A pipelined request may have been waiting for the key
+                dispatchPipelined();
             }
 
             if (response == null)
@@ -145,6 +192,120 @@ public class MessageControl implements DataConsumer {
         return response;
     }
 
+    public CompletableFuture<IncomingResponseMessage> sendAsync(OutgoingRequestMessage request) {
+        return sendAsync(request, timeout, retries);
+    }
+
+    /**
+     * Send a request without waiting for the response. The request is sent straight away if fewer than the pipeline
+     * window of requests are awaiting responses, otherwise it is queued. Requests with the same waiting room key as
+     * one that is awaiting a response are held back until that response arrives.
+     * 
+     * The future is completed with the response, with null if the request does not expect one, or exceptionally with
+     * a {@link TimeoutException} if there was no response after the retries. It may be completed on the transport's
+     * thread, so dependent actions that block should use the async methods of the future.
+     */
+    public CompletableFuture<IncomingResponseMessage> sendAsync(OutgoingRequestMessage request, int timeout,
+            int retries) {
+        byte[] data = request.getMessageData();
+        if (!request.expectsResponse()) {
+            if (DEBUG)
+                System.out.println("MessagingControl.sendAsync: " + StreamUtils.dumpHex(data));
+            CompletableFuture<IncomingResponseMessage> result = new CompletableFuture<>();
+            try {
+                write(data);
+                result.complete(null);
+            }
+            catch (IOException e) {
+                result.completeExceptionally(e);
+            }
+            return result;
+        }
+
+        PipelinedRequest p = new PipelinedRequest(request, data, waitingRoomKeyFactory.createWaitingRoomKey(request),
+                timeout, retries);
+        synchronized (pipelineLock) {
+            pipelineQueue.add(p);
+        }
+        dispatchPipelined();
+        return p.result;
+    }
+
+    /**
+     * Send queued pipelined requests while there is room in the window.
+     */
+    private void dispatchPipelined() {
+        while (true) {
+            PipelinedRequest next = null;
+            synchronized (pipelineLock) {
+                if (pipelineInFlight.size() >= pipelineWindow)
+                    return;
+
+                Iterator<PipelinedRequest> iter = pipelineQueue.iterator();
+                while (iter.hasNext()) {
+                    PipelinedRequest p = iter.next();
+                    if (waitingRoom.tryEnter(p.key, p.received)) {
+                        iter.remove();
+                        pipelineInFlight.add(p);
+                        next = p;
+                        break;
+                    }
+                }
+            }
+
+            if (next == null)
+                return;
+
+            PipelinedRequest p = next;
+            p.received.thenAccept(response -> complete(p, response, null));
+            transmit(p, 0);
+        }
+    }
+
+    private void transmit(PipelinedRequest p, int attempt) {
+        if (DEBUG)
+            System.out.println("MessagingControl.sendAsync: " + StreamUtils.dumpHex(p.data));
+        try {
+            write(p.data);
+        }
+        catch (IOException e) {
+            complete(p, null, e);
+            return;
+        }
+
+        CompletableFuture.delayedExecutor(p.timeout, TimeUnit.MILLISECONDS).execute(() -> {
+            if (p.received.isDone() || p.completed.get())
+                return;
+            if (DEBUG)
+                System.out.println("Timeout waiting for response");
+            if (attempt < p.retries)
+                transmit(p, attempt + 1);
+            else
+                complete(p, null, new TimeoutException("request=" + p.request));
+        });
+    }
+
+    private void complete(PipelinedRequest p, IncomingResponseMessage response, Throwable error) {
+        if (!p.completed.compareAndSet(false, true))
+            return;
+
+        boolean inFlight;
+        synchronized (pipelineLock) {
+            inFlight = pipelineInFlight.remove(p);
+            pipelineQueue.remove(p);
+        }
+        if (inFlight) {
+            waitingRoom.leave(p.key);
+            // Send the next request before handing over the response
+            dispatchPipelined();
+        }
+
+        if (error == null)
+            p.result.complete(response);
+        else
+            p.result.completeExceptionally(error);
+    }
+
     public void send(OutgoingResponseMessage response) throws IOException {
         write(response.getMessageData());
     }
@@ -217,4 +378,29 @@ public class MessageControl implements DataConsumer {
     public void handleIOException(IOException e) {
         exceptionHandler.receivedException(e);
     }
+
+    private static class PipelinedRequest {
+        final OutgoingRequestMessage request;
+        final byte[] data;
+        final WaitingRoomKey key;
+        final int timeout;
+        final int retries;
+        /**
+         * Completed by the waiting room when the response arrives
+         */
+        final CompletableFuture<IncomingResponseMessage> received = new CompletableFuture<>();
+        /**
+         * Given to the caller, completed after the request has left the pipeline
+         */
+        final CompletableFuture<IncomingResponseMessage> result = new CompletableFuture<>();
+        final AtomicBoolean completed = new AtomicBoolean();
+
+        PipelinedRequest(OutgoingRequestMessage request, byte[] data, WaitingRoomKey key, int timeout, int retries) {
+            this.request = request;
+            this.data = data;
+            this.key = key;
+            this.timeout = timeout;
+            this.retries = retries;
+        }
+    }
 }
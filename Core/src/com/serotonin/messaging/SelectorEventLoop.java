@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.messaging;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single thread that multiplexes the socket channels of many {@link SelectorTransport}s with a {@link Selector}.
+ * Incoming bytes are given to the transport's consumer as soon as they arrive, on this thread, so consumers must not
+ * block. Use a {@link SelectorEventLoopGroup} to spread transports over several loops.
+ */
+public class SelectorEventLoop implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(SelectorEventLoop.class);
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    /**
+     * Shared by all transports of this loop, the consumers copy the bytes they are given
+     */
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private volatile boolean running = true;
+
+    public SelectorEventLoop(String threadName) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this::run, threadName);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * @return true if the calling thread is this loop's thread
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Run a task on this loop's thread.
+     */
+    public void execute(Runnable task) {
+        if (!running)
+            throw new IllegalStateException("Event loop is closed");
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Stop the loop and close its selector. The transports' channels are not closed.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        if (!inEventLoop()) {
+            try {
+                thread.join(5000);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    void register(SelectorTransport transport) {
+        execute(() -> {
+            try {
+                transport.registered(transport.getChannel().register(selector, SelectionKey.OP_READ, transport));
+            }
+            catch (IOException e) {
+                transport.handleIOException(e);
+            }
+        });
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                runTasks();
+
+                Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+                while (iter.hasNext()) {
+                    SelectionKey key = iter.next();
+                    iter.remove();
+                    process(key);
+                }
+            }
+        }
+        catch (Throwable t) {
+            LOG.error("Selector event loop " + thread.getName() + " failed", t);
+        }
+        finally {
+            running = false;
+            runTasks();
+            try {
+                selector.close();
+            }
+            catch (IOException e) {
+                // no op
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            }
+            catch (RuntimeException e) {
+                LOG.error("Error running task in selector event loop " + thread.getName(), e);
+            }
+        }
+    }
+
+    private void process(SelectionKey key) {
+        SelectorTransport transport = (SelectorTransport) key.attachment();
+        try {
+            if (key.isWritable())
+                transport.flush();
+            if (key.isValid() && key.isReadable())
+                read(key, transport);
+        }
+        catch (CancelledKeyException e) {
+            // the transport was removed
+        }
+        catch (IOException e) {
+            key.cancel();
+            transport.handleIOException(e);
+        }
+        catch (RuntimeException e) {
+            LOG.error("Error handling data for " + transport, e);
+        }
+    }
+
+    private void read(SelectionKey key, SelectorTransport transport) throws IOException {
+        int count;
+        do {
+            readBuffer.clear();
+            count = transport.getChannel().read(readBuffer);
+            if (count > 0)
+                transport.data(readBuffer.array(), count);
+        }
+        // a full buffer may mean there is more waiting
+        while (count == readBuffer.capacity() && key.isValid());
+
+        if (count < 0) {
+            key.cancel();
+            // same message as a closed stream so that consumers handle it the same way
+            transport.handleIOException(new IOException("Stream closed."));
+        }
+    }
+}
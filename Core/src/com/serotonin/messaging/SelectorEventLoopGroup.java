@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.messaging;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed number of {@link SelectorEventLoop}s that transports are assigned to in turn, so that many connections share
+ * a small number of threads.
+ */
+public class SelectorEventLoopGroup implements Closeable {
+    private final SelectorEventLoop[] loops;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @param namePrefix the loops' threads are named with this prefix followed by their index
+     * @param size number of loops, each has its own thread
+     */
+    public SelectorEventLoopGroup(String namePrefix, int size) throws IOException {
+        if (size <= 0)
+            throw new IllegalArgumentException("size must be greater than 0");
+        loops = new SelectorEventLoop[size];
+        try {
+            for (int i = 0; i < size; i++)
+                loops[i] = new SelectorEventLoop(namePrefix + "-" + i);
+        }
+        catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the loop to assign the next transport to
+     */
+    public SelectorEventLoop next() {
+        return loops[Math.floorMod(next.getAndIncrement(), loops.length)];
+    }
+
+    /**
+     * Connect to an address and assign the transport to the next loop, see
+     * {@link SelectorTransport#connect(SocketAddress, int, SelectorEventLoop)}.
+     */
+    public SelectorTransport connect(SocketAddress address, int timeout) throws IOException {
+        return SelectorTransport.connect(address, timeout, next());
+    }
+
+    public int size() {
+        return loops.length;
+    }
+
+    @Override
+    public void close() {
+        for (SelectorEventLoop loop : loops) {
+            if (loop != null)
+                loop.close();
+        }
+    }
+}
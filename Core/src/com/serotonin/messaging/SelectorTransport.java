@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.messaging;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Socket transport driven by a {@link SelectorEventLoop} rather than a thread per connection polling an input stream
+ * like {@link StreamTransport}. Data is given to the consumer (usually a {@link MessageControl}) on the loop's thread as
+ * soon as it arrives.
+ *
+ * <p>Writes never block, bytes the socket cannot take immediately are queued and written by the loop when the socket
+ * becomes writable. This allows the consumer to write responses from the loop's thread.</p>
+ */
+public class SelectorTransport implements Transport {
+    private final SocketChannel channel;
+    private final SelectorEventLoop eventLoop;
+
+    private final Lock writeLock = new ReentrantLock();
+    // guarded by writeLock
+    private final Queue<ByteBuffer> pendingWrites = new ArrayDeque<>();
+
+    private volatile DataConsumer consumer;
+    private volatile SelectionKey key;
+
+    /**
+     * @param channel a connected socket channel
+     */
+    public SelectorTransport(SocketChannel channel, SelectorEventLoop eventLoop) {
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+    }
+
+    /**
+     * Connect to an address, blocking until the connection is made or the timeout elapses.
+     *
+     * @param timeout connection timeout in ms, 0 for no timeout
+     */
+    public static SelectorTransport connect(SocketAddress address, int timeout, SelectorEventLoop eventLoop)
+            throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.socket().connect(address, timeout);
+            channel.socket().setTcpNoDelay(true);
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new SelectorTransport(channel, eventLoop);
+    }
+
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public void setConsumer(DataConsumer consumer) throws IOException {
+        this.consumer = consumer;
+        channel.configureBlocking(false);
+        eventLoop.register(this);
+    }
+
+    @Override
+    public void removeConsumer() {
+        consumer = null;
+        SelectionKey k = key;
+        if (k != null) {
+            k.cancel();
+            key = null;
+        }
+    }
+
+    /**
+     * Remove the consumer and close the socket.
+     */
+    public void close() throws IOException {
+        removeConsumer();
+        channel.close();
+    }
+
+    @Override
+    public void write(byte[] data) throws IOException {
+        write(data, data.length);
+    }
+
+    @Override
+    public void write(byte[] data, int len) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data, 0, len);
+        writeLock.lock();
+        try {
+            // keep the order of writes that are already waiting
+            if (pendingWrites.isEmpty())
+                channel.write(buffer);
+
+            if (buffer.hasRemaining()) {
+                // copy as the caller may reuse the array
+                ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+                copy.put(buffer).flip();
+                pendingWrites.add(copy);
+                setWriteInterest(true);
+            }
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Write queued bytes, called by the event loop when the socket is writable
+     */
+    void flush() throws IOException {
+        writeLock.lock();
+        try {
+            ByteBuffer buffer;
+            while ((buffer = pendingWrites.peek()) != null) {
+                channel.write(buffer);
+                if (buffer.hasRemaining())
+                    return;
+                pendingWrites.remove();
+            }
+            setWriteInterest(false);
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    void registered(SelectionKey key) {
+        if (consumer == null) {
+            // removed before the event loop registered it
+            key.cancel();
+            return;
+        }
+        this.key = key;
+        writeLock.lock();
+        try {
+            if (!pendingWrites.isEmpty())
+                setWriteInterest(true);
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    void data(byte[] b, int len) {
+        DataConsumer c = consumer;
+        if (c != null)
+            c.data(b, len);
+    }
+
+    void handleIOException(IOException e) {
+        DataConsumer c = consumer;
+        if (c != null)
+            c.handleIOException(e);
+    }
+
+    private void setWriteInterest(boolean write) {
+        SelectionKey k = key;
+        if (k == null || !k.isValid())
+            return;
+        int ops = write ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        if (k.interestOps() != ops) {
+            k.interestOps(ops);
+            if (write && !eventLoop.inEventLoop())
+                k.selector().wakeup();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SelectorTransport[" + channel + "]";
+    }
+}
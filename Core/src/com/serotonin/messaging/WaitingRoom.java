@@ -2,6 +2,7 @@ package com.serotonin.messaging;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,6 +51,18 @@ class WaitingRoom {
         }
     }
 
+    /**
+     * Enter without waiting, used for pipelined requests. The future is completed when the response is received.
+     *
+     * @return false if there is already a member with the key
+     */
+    synchronized boolean tryEnter(WaitingRoomKey key, CompletableFuture<IncomingResponseMessage> future) {
+        if (waitHere.get(key) != null)
+            return false;
+        waitHere.put(key, new Member(future));
+        return true;
+    }
+
     IncomingResponseMessage getResponse(WaitingRoomKey key, long timeout) throws WaitingRoomException {
         // Get the member.
         Member member;
@@ -107,11 +120,24 @@ class WaitingRoom {
      * @author Matthew Lohbihler
      */
     class Member {
+        private final CompletableFuture<IncomingResponseMessage> future;
         private IncomingResponseMessage response;
 
-        synchronized void setResponse(IncomingResponseMessage response) {
-            this.response = response;
-            notify();
+        Member() {
+            this(null);
+        }
+
+        Member(CompletableFuture<IncomingResponseMessage> future) {
+            this.future = future;
+        }
+
+        void setResponse(IncomingResponseMessage response) {
+            synchronized (this) {
+                this.response = response;
+                notify();
+            }
+            if (future != null)
+                future.complete(response);
         }
 
         synchronized IncomingResponseMessage getResponse(long timeout) {
@@ -47,6 +47,13 @@ abstract public class AbstractTimer extends Clock {
 
     abstract protected void scheduleImpl(TimerTask task);
 
+    /**
+     * Called after a scheduled task has been cancelled, timers may use this to release the task before its execution
+     * time.
+     */
+    void cancelled(TimerTask task) {
+    }
+
     abstract public List<TimerTask> cancel();
 
     abstract public int purge();
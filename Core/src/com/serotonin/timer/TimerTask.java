@@ -5,6 +5,11 @@ import com.serotonin.m2m2.Common;
 public abstract class TimerTask extends Task {
     
 	TimerTrigger trigger;
+
+	/**
+	 * Position of the task in a {@link TimingWheelTimer}, only accessed by its wheel thread
+	 */
+	TimingWheelTimer.Entry wheelEntry;
 	
 	public TimerTask(TimerTrigger trigger, String name){
 		super(name);
@@ -36,6 +41,15 @@ public abstract class TimerTask extends Task {
         return trigger.getTimer();
     }
     
+	@Override
+	public boolean cancel() {
+		boolean result = super.cancel();
+		AbstractTimer timer = getTimer();
+		if (result && timer != null)
+			timer.cancelled(this);
+		return result;
+	}
+
 	@Override
 	public void rejected(RejectedTaskReason reason) {
 		Common.backgroundProcessing.rejectedHighPriorityTask(reason);
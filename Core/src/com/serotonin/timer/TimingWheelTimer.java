@@ -0,0 +1,643 @@
+/*
+ * Copyright (C) 2024 Radix IoT LLC. All rights reserved.
+ */
+package com.serotonin.timer;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Real time timer backed by a hierarchical timing wheel instead of the {@link TaskQueue} binary heap. Scheduling and
+ * cancelling a task are O(1) and never take a lock shared with the timer thread, tasks are handed to the wheel thread
+ * through lock free queues. Cancelled tasks are unlinked from the wheel rather than waiting for their execution time.
+ *
+ * <p>Time is divided into ticks of {@code tickMillis}, a task runs on the first tick at or after its execution time so
+ * it may run up to one tick late but never early. The wheel has {@link #LEVELS} levels of {@link #SLOTS} slots, each
+ * level covering {@link #SLOTS} times the span of the level below it. Tasks further in the future than the top level
+ * are held in an overflow bucket that is re-examined each time the top level wraps.</p>
+ *
+ * <p>The wheel itself is only accessed by the wheel thread, other threads ask it for a snapshot of the tasks.</p>
+ */
+public class TimingWheelTimer extends AbstractTimer {
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheelTimer.class);
+
+    public static final long DEFAULT_TICK_MILLIS = 10;
+
+    private static final int SLOT_BITS = 6;
+    static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    static final int LEVELS = 4;
+    /**
+     * A forward clock jump of more than this many ticks rebuilds the wheel instead of stepping through every tick
+     */
+    private static final long MAX_TICK_STEPS = (long) SLOTS * SLOTS;
+
+    private final long tickMillis;
+    private final Bucket[][] wheel = new Bucket[LEVELS][SLOTS];
+    private final Bucket overflow = new Bucket();
+    private final Bucket due = new Bucket();
+
+    private final Queue<TimerTask> submissions = new ConcurrentLinkedQueue<>();
+    private final Queue<TimerTask> cancellations = new ConcurrentLinkedQueue<>();
+    private final Queue<FutureTask<?>> requests = new ConcurrentLinkedQueue<>();
+    /**
+     * Tasks submitted and not yet released by the wheel
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    private volatile Thread thread;
+    private volatile boolean running;
+    private volatile boolean idle;
+    private ExecutorService executorService;
+    // Do i own the executor?
+    private boolean ownsExecutor;
+
+    /**
+     * The last tick processed, only accessed by the wheel thread
+     */
+    private long tick;
+    /**
+     * Number of entries in the wheel, only accessed by the wheel thread
+     */
+    private int entries;
+
+    protected TimeSource timeSource = new SystemTimeSource();
+
+    public TimingWheelTimer() {
+        this(ZoneId.systemDefault());
+    }
+
+    public TimingWheelTimer(ZoneId zone) {
+        this(zone, DEFAULT_TICK_MILLIS);
+    }
+
+    /**
+     * @param tickMillis resolution of the wheel, tasks run up to this many ms after their execution time
+     */
+    public TimingWheelTimer(ZoneId zone, long tickMillis) {
+        super(zone);
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be greater than 0");
+        }
+        this.tickMillis = tickMillis;
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                wheel[level][slot] = new Bucket();
+            }
+        }
+    }
+
+    public void setTimeSource(TimeSource timeSource) {
+        this.timeSource = timeSource;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    @Override
+    public void init() {
+        ownsExecutor = true;
+        init(new OrderedThreadPoolExecutor(0, 1000, 30L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), false, timeSource));
+    }
+
+    @Override
+    public void init(ExecutorService executorService) {
+        init(executorService, Thread.MAX_PRIORITY);
+    }
+
+    public void init(ExecutorService executorService, int threadPriority) {
+        if (thread != null) {
+            throw new IllegalStateException("Timer already initialized");
+        }
+        this.executorService = executorService;
+        this.tick = timeSource.currentTimeMillis() / tickMillis;
+        this.running = true;
+        Thread t = new Thread(this::run, "Timing Wheel Timer");
+        t.setDaemon(false);
+        t.setPriority(threadPriority);
+        this.thread = t;
+        t.start();
+    }
+
+    /**
+     * The timing wheel does not use a {@link TimerThread}
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void init(TimerThread timer) {
+        throw new UnsupportedOperationException("The timing wheel timer does not run on a TimerThread");
+    }
+
+    @Override
+    public boolean isInitialized() {
+        return thread != null;
+    }
+
+    @Override
+    public void execute(Task command) {
+        if (executorService == null)
+            throw new IllegalStateException("Run init first");
+        executorService.execute(new TaskWrapper(command, this.currentTimeMillis()));
+    }
+
+    /**
+     * Hand the task to the wheel thread, see {@link RealTimeTimer#scheduleImpl(TimerTask)} for the checks made.
+     */
+    @Override
+    protected void scheduleImpl(TimerTask task) {
+        Thread t = thread;
+        if (t == null)
+            throw new IllegalStateException("Run init first");
+
+        if (task.state == TimerTask.CANCELLED || task.state == TimerTask.EXECUTED)
+            throw new IllegalStateException("Task already executed or cancelled");
+
+        if (!running)
+            throw new IllegalStateException("Timer already cancelled.");
+
+        long time;
+        synchronized (task.lock) {
+            if (task.state == TimerTask.VIRGIN) {
+                time = task.trigger.getFirstExecutionTime();
+
+                if (time < 0)
+                    throw new IllegalArgumentException("Illegal execution time.");
+
+                task.trigger.nextExecutionTime = time;
+                task.state = TimerTask.SCHEDULED;
+            } else {
+                time = task.trigger.nextExecutionTime;
+            }
+        }
+
+        size.incrementAndGet();
+        submissions.add(task);
+        // otherwise the task is picked up on the next tick
+        if (idle || time <= timeSource.currentTimeMillis()) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    @Override
+    void cancelled(TimerTask task) {
+        if (running) {
+            cancellations.add(task);
+        }
+    }
+
+    /**
+     * Terminates this timer, discarding any currently scheduled tasks. Does not interfere with a currently executing
+     * task. Once a timer has been terminated no more tasks may be scheduled on it, further calls have no effect.
+     *
+     * @return the tasks that were scheduled
+     */
+    @Override
+    public List<TimerTask> cancel() {
+        running = false;
+        Thread t = thread;
+        if (t != null && t != Thread.currentThread()) {
+            LockSupport.unpark(t);
+            boolean interrupted = false;
+            while (t.isAlive()) {
+                try {
+                    t.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        List<TimerTask> tasks = drainAll();
+        size.set(0);
+        cancellations.clear();
+
+        if (ownsExecutor && executorService != null)
+            executorService.shutdown();
+
+        return tasks;
+    }
+
+    /**
+     * Removes cancelled tasks from the wheel. Tasks cancelled through {@link Task#cancel()} are already removed by the
+     * wheel thread so this normally has nothing to do.
+     *
+     * @return the number of tasks removed
+     */
+    @Override
+    public int purge() {
+        return callOnWheel(() -> {
+            drainSubmissions();
+            drainCancellations();
+            int removed = 0;
+            for (Entry e : entries()) {
+                if (e.task.state == TimerTask.CANCELLED) {
+                    e.bucket.remove(e);
+                    release(e);
+                    removed++;
+                }
+            }
+            return removed;
+        });
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public List<TimerTask> getTasks() {
+        return callOnWheel(() -> {
+            drainSubmissions();
+            List<TimerTask> result = new ArrayList<>(entries);
+            for (Entry e : entries()) {
+                result.add(e.task);
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return timeSource.currentTimeMillis();
+    }
+
+    @Override
+    public TimeSource getTimeSource() {
+        return timeSource;
+    }
+
+    @Override
+    public TimingWheelTimer withZone(ZoneId zone) {
+        return new TimingWheelTimer(zone, tickMillis);
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                drainSubmissions();
+                drainCancellations();
+
+                long now = timeSource.currentTimeMillis();
+                long nowTick = now / tickMillis;
+                if (nowTick < tick || nowTick - tick > MAX_TICK_STEPS) {
+                    // the clock was changed, place every task again relative to the new time
+                    rebuild(nowTick);
+                } else {
+                    while (tick < nowTick) {
+                        advance(tick + 1);
+                    }
+                }
+                fireDue(now);
+                runRequests();
+                await(now);
+            }
+        } catch (Throwable t) {
+            LOG.error("Timing wheel timer failed", t);
+        } finally {
+            // Someone killed this Thread, behave as if Timer was cancelled
+            running = false;
+            runRequests();
+        }
+    }
+
+    private void await(long now) {
+        if (!running) {
+            return;
+        }
+        if (entries == 0) {
+            idle = true;
+            // check again as a task may have been submitted before idle was set
+            if (submissions.isEmpty() && requests.isEmpty() && running) {
+                LockSupport.park(this);
+            }
+            idle = false;
+        } else {
+            long wait = (tick + 1) * tickMillis - now;
+            if (wait > 0) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(wait));
+            }
+        }
+    }
+
+    private void drainSubmissions() {
+        TimerTask task;
+        while ((task = submissions.poll()) != null) {
+            if (task.state == TimerTask.CANCELLED) {
+                size.decrementAndGet();
+                continue;
+            }
+            Entry e = new Entry(task);
+            e.deadline = deadlineTick(task.trigger.nextExecutionTime);
+            task.wheelEntry = e;
+            entries++;
+            insert(e);
+        }
+    }
+
+    private void drainCancellations() {
+        TimerTask task;
+        while ((task = cancellations.poll()) != null) {
+            Entry e = task.wheelEntry;
+            // not in a bucket while it is being fired, the state is checked then
+            if (e != null && e.bucket != null) {
+                e.bucket.remove(e);
+                release(e);
+            }
+        }
+    }
+
+    private void runRequests() {
+        FutureTask<?> request;
+        while ((request = requests.poll()) != null) {
+            request.run();
+        }
+    }
+
+    /**
+     * Run a function with access to the wheel, on the wheel thread while it is running
+     */
+    private <T> T callOnWheel(Callable<T> callable) {
+        FutureTask<T> request = new FutureTask<>(callable);
+        Thread t = thread;
+        if (t == null || t == Thread.currentThread() || !t.isAlive()) {
+            request.run();
+        } else {
+            requests.add(request);
+            LockSupport.unpark(t);
+        }
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return request.get(100, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // the wheel thread may have exited without seeing the request, does nothing if it has run
+                    if (!t.isAlive()) {
+                        request.run();
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Tick of the execution time, rounded up so that a task never runs early
+     */
+    private long deadlineTick(long executionTime) {
+        return (executionTime + tickMillis - 1) / tickMillis;
+    }
+
+    /**
+     * Place an entry relative to the current tick. The level is the highest base {@link #SLOTS} digit in which its
+     * deadline differs from the current tick and the slot is the deadline's digit at that level, so an entry is
+     * cascaded to a lower level when the current tick reaches that slot.
+     */
+    private void insert(Entry e) {
+        long deadline = e.deadline;
+        if (deadline <= tick) {
+            due.add(e);
+            return;
+        }
+        int level = (63 - Long.numberOfLeadingZeros(deadline ^ tick)) / SLOT_BITS;
+        if (level >= LEVELS) {
+            overflow.add(e);
+        } else {
+            wheel[level][(int) (deadline >>> (level * SLOT_BITS)) & SLOT_MASK].add(e);
+        }
+    }
+
+    /**
+     * Move to the next tick, cascading the higher level slots that are reached from the top down
+     */
+    private void advance(long next) {
+        tick = next;
+        if ((next & ((1L << (LEVELS * SLOT_BITS)) - 1)) == 0) {
+            cascade(overflow);
+        }
+        for (int level = LEVELS - 1; level > 0; level--) {
+            int shift = level * SLOT_BITS;
+            if ((next & ((1L << shift) - 1)) == 0) {
+                cascade(wheel[level][(int) (next >>> shift) & SLOT_MASK]);
+            }
+        }
+        // entries in the level 0 slot are due at this tick
+        cascade(wheel[0][(int) next & SLOT_MASK]);
+    }
+
+    private void cascade(Bucket bucket) {
+        Entry e = bucket.takeAll();
+        while (e != null) {
+            Entry next = e.next;
+            e.next = null;
+            insert(e);
+            e = next;
+        }
+    }
+
+    private void rebuild(long nowTick) {
+        List<Entry> all = entries();
+        clearBuckets();
+        tick = nowTick;
+        for (Entry e : all) {
+            e.prev = e.next = null;
+            e.bucket = null;
+            insert(e);
+        }
+    }
+
+    private void fireDue(long now) {
+        Entry e = due.takeAll();
+        while (e != null) {
+            Entry next = e.next;
+            e.next = null;
+            fire(e, now);
+            e = next;
+        }
+    }
+
+    /**
+     * Run a due task and place it again if it repeats, as done by {@link TimerThread}
+     */
+    private void fire(Entry e, long now) {
+        TimerTask task = e.task;
+        long executionTime;
+        synchronized (task.lock) {
+            if (task.state == TimerTask.CANCELLED) {
+                release(e);
+                return;
+            }
+            executionTime = task.trigger.nextExecutionTime;
+            if (executionTime > now) {
+                // the clock went back a little
+                e.deadline = deadlineTick(executionTime);
+                insert(e);
+                return;
+            }
+            long next = task.trigger.calculateNextExecutionTime();
+            if (next <= 0) { // Non-repeating, remove
+                task.state = TimerTask.EXECUTED;
+                release(e);
+            } else {
+                // Repeating task, reschedule
+                task.trigger.nextExecutionTime = next;
+                e.deadline = deadlineTick(next);
+                insert(e);
+            }
+        }
+
+        try {
+            executorService.execute(new TaskWrapper(task, task.trigger.mostRecentExecutionTime()));
+        } catch (RejectedExecutionException ex) {
+            task.rejectedAsDelegate(new RejectedTaskReason(RejectedTaskReason.POOL_FULL, executionTime, task, executorService));
+        }
+    }
+
+    private void release(Entry e) {
+        if (e.task.wheelEntry == e) {
+            e.task.wheelEntry = null;
+        }
+        entries--;
+        size.decrementAndGet();
+    }
+
+    private List<Entry> entries() {
+        List<Entry> result = new ArrayList<>(entries);
+        due.collect(result);
+        for (Bucket[] level : wheel) {
+            for (Bucket bucket : level) {
+                bucket.collect(result);
+            }
+        }
+        overflow.collect(result);
+        return result;
+    }
+
+    private void clearBuckets() {
+        due.takeAll();
+        for (Bucket[] level : wheel) {
+            for (Bucket bucket : level) {
+                bucket.takeAll();
+            }
+        }
+        overflow.takeAll();
+    }
+
+    /**
+     * Remove all tasks once the wheel thread has stopped
+     */
+    private List<TimerTask> drainAll() {
+        List<TimerTask> result = new ArrayList<>();
+        for (Entry e : entries()) {
+            e.task.wheelEntry = null;
+            result.add(e.task);
+        }
+        clearBuckets();
+        entries = 0;
+        TimerTask task;
+        while ((task = submissions.poll()) != null) {
+            result.add(task);
+        }
+        return result;
+    }
+
+    /**
+     * A scheduled task's position in the wheel
+     */
+    static final class Entry {
+        private final TimerTask task;
+        private long deadline;
+        private Entry prev;
+        private Entry next;
+        private Bucket bucket;
+
+        private Entry(TimerTask task) {
+            this.task = task;
+        }
+    }
+
+    /**
+     * Doubly linked list of entries so that a cancelled entry can be unlinked in constant time
+     */
+    private static final class Bucket {
+        private Entry head;
+
+        private void add(Entry e) {
+            e.bucket = this;
+            e.prev = null;
+            e.next = head;
+            if (head != null) {
+                head.prev = e;
+            }
+            head = e;
+        }
+
+        private void remove(Entry e) {
+            if (e.prev != null) {
+                e.prev.next = e.next;
+            } else {
+                head = e.next;
+            }
+            if (e.next != null) {
+                e.next.prev = e.prev;
+            }
+            e.prev = e.next = null;
+            e.bucket = null;
+        }
+
+        /**
+         * Empty the bucket, the entries stay linked through {@link Entry#next}
+         *
+         * @return the first entry
+         */
+        private Entry takeAll() {
+            Entry first = head;
+            head = null;
+            for (Entry e = first; e != null; e = e.next) {
+                e.prev = null;
+                e.bucket = null;
+            }
+            return first;
+        }
+
+        private void collect(List<Entry> result) {
+            for (Entry e = head; e != null; e = e.next) {
+                result.add(e);
+            }
+        }
+    }
+}